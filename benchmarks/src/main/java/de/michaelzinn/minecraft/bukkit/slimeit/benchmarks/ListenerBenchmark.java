@@ -0,0 +1,129 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.main.BlockPunchListener;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.DropAggregator;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SoundScheduler;
+
+/**
+ * The full playerBreak and playerInteract paths, including the end of tick
+ * drop and sound flush. Events are reused and the world records nothing, so
+ * the allocation numbers are what the listener and VoxelWorld's blocks
+ * allocate.
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListenerBenchmark {
+
+	private VoxelWorld world;
+	private BlockPunchListener listener;
+	private DropAggregator drops;
+	private SoundScheduler sounds;
+	private ItemStack slimeBalls;
+	private final ItemStack[] hand = new ItemStack[1];
+
+	private BlockBreakEvent breakDirt;
+	private BlockBreakEvent breakMossyCobble;
+	private BlockBreakEvent breakStickyPiston;
+	private PlayerInteractEvent applySlime;
+	private PlayerInteractEvent scrapeSlime;
+	private PlayerInteractEvent clickDirt;
+
+	@Setup
+	public void setUp() {
+		world = new VoxelWorld();
+		// the records would grow with every invocation
+		world.recording = false;
+		drops = new DropAggregator(1, 4);
+		// the highest limit there is, this clicks way faster than any player
+		sounds = new SoundScheduler(1, 0xFFFF);
+		listener = new BlockPunchListener(null, new SlimeRules(), drops, sounds);
+		slimeBalls = new ItemStack(Material.SLIME_BALL, 64);
+		hand[0] = slimeBalls;
+		Player player = world.player(hand);
+
+		world.set(1, 1, 1, Material.DIRT, 0);
+		world.set(2, 1, 1, Material.COBBLESTONE, 0);
+		Block dirt = world.block(1, 1, 1);
+		Block cobble = world.block(2, 1, 1);
+		Block mossyCobble = world.block(3, 1, 1);
+		Block stickyBase = world.block(4, 1, 1);
+
+		breakDirt = new BlockBreakEvent(dirt, player);
+		breakMossyCobble = new BlockBreakEvent(mossyCobble, player);
+		breakStickyPiston = new BlockBreakEvent(stickyBase, player);
+		applySlime = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, slimeBalls, cobble, BlockFace.UP);
+		scrapeSlime = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, slimeBalls, cobble, BlockFace.UP);
+		clickDirt = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, slimeBalls, dirt, BlockFace.UP);
+	}
+
+	@Benchmark
+	public void breakIrrelevantBlock() {
+		breakDirt.setCancelled(false);
+		listener.playerBreak(breakDirt);
+	}
+
+	@Benchmark
+	public void breakSlimedBlock() {
+		world.set(3, 1, 1, Material.MOSSY_COBBLESTONE, 0);
+		breakMossyCobble.setCancelled(false);
+		listener.playerBreak(breakMossyCobble);
+		drops.run();
+	}
+
+	@Benchmark
+	public void breakExtendedStickyPiston() {
+		world.set(4, 1, 1, Material.PISTON_STICKY_BASE, 9);
+		world.set(4, 2, 1, Material.PISTON_EXTENSION, 9);
+		breakStickyPiston.setCancelled(false);
+		listener.playerBreak(breakStickyPiston);
+		drops.run();
+	}
+
+	@Benchmark
+	public void interactIrrelevantBlock() {
+		clickDirt.setCancelled(false);
+		listener.playerInteract(clickDirt);
+	}
+
+	/**
+	 * Right click with a slime ball, then left click to scrape it off again.
+	 */
+	@Benchmark
+	public void interactApplyAndScrape() {
+		hand[0] = slimeBalls;
+		slimeBalls.setAmount(64);
+		applySlime.setCancelled(false);
+		listener.playerInteract(applySlime);
+		scrapeSlime.setCancelled(false);
+		listener.playerInteract(scrapeSlime);
+		drops.run();
+		sounds.run();
+	}
+}
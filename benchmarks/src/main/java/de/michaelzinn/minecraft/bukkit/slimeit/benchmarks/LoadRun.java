@@ -0,0 +1,134 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.util.Random;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.BlockPunchListener;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.DropAggregator;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.InteractionLimiter;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SoundScheduler;
+
+/**
+ * Pushes millions of random clicks and breaks by many players through the
+ * real BlockPunchListener in a {@link VoxelWorld}, flushing drops and sounds
+ * every simulated tick, and prints the throughput.
+ * 
+ * The world is a field of cobblestone, sticky and non-sticky pistons in all
+ * orientations. Broken blocks are put back right away so the mix stays the
+ * same.
+ * 
+ * Run with java -cp target/benchmarks.jar
+ * de.michaelzinn.minecraft.bukkit.slimeit.benchmarks.LoadRun [events] [players]
+ * [events per tick]
+ * 
+ */
+public class LoadRun {
+
+	private static final int SIZE = 64;
+	private static final int FLOOR = 64;
+	private static final int LAYERS = 4;
+
+	public static void main(String[] args) {
+		long events = args.length > 0 ? Long.parseLong(args[0]) : 5000000;
+		int playerCount = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int perTick = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		VoxelWorld world = new VoxelWorld();
+		world.recording = false;
+		Random random = new Random(42);
+		for (int y = FLOOR; y < FLOOR + LAYERS; y++) {
+			for (int z = 0; z < SIZE; z++) {
+				for (int x = 0; x < SIZE; x++) {
+					place(world, random, x, y, z);
+				}
+			}
+		}
+
+		DropAggregator drops = new DropAggregator(1, 4);
+		SoundScheduler sounds = new SoundScheduler(1, 8);
+		BlockPunchListener listener = new BlockPunchListener(null, new SlimeRules(), drops, sounds);
+		// generous, but it still has to be asked every time like on a server
+		listener.setLimiter(new InteractionLimiter(1e9, Integer.MAX_VALUE, 300));
+
+		Player[] players = new Player[playerCount];
+		ItemStack[][] hands = new ItemStack[playerCount][];
+		for (int i = 0; i < playerCount; i++) {
+			hands[i] = new ItemStack[] { new ItemStack(Material.SLIME_BALL, 64) };
+			players[i] = world.player("player" + i, hands[i]);
+		}
+
+		System.out.println("Warming up...");
+		run(world, listener, drops, sounds, players, hands, random, Math.min(events, 500000), perTick);
+		world.clearRecords();
+
+		System.out.println("Running " + events + " events by " + playerCount + " players, " + perTick
+				+ " per tick...");
+		long start = System.nanoTime();
+		run(world, listener, drops, sounds, players, hands, random, events, perTick);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format("%,.0f events/s (%.2f s)", events / seconds, seconds));
+		System.out.println(String.format("%,d block changes (%,d with physics), %,d drops, %,d sounds",
+				world.changes, world.physics, world.drops, world.sounds));
+	}
+
+	private static void run(VoxelWorld world, BlockPunchListener listener, DropAggregator drops,
+			SoundScheduler sounds, Player[] players, ItemStack[][] hands, Random random, long events, int perTick) {
+		for (long i = 0; i < events; i++) {
+			int p = random.nextInt(players.length);
+			int x = random.nextInt(SIZE);
+			int y = FLOOR + random.nextInt(LAYERS);
+			int z = random.nextInt(SIZE);
+			Block block = world.block(x, y, z);
+			BlockFace face = BlockFaces.ALL[random.nextInt(6)];
+
+			int what = random.nextInt(20);
+			if (what < 9) {
+				ItemStack hand = hands[p][0];
+				if (hand == null || hand.getAmount() < 2) {
+					hands[p][0] = new ItemStack(Material.SLIME_BALL, 64);
+				}
+				listener.playerInteract(new PlayerInteractEvent(players[p], Action.RIGHT_CLICK_BLOCK, hands[p][0],
+						block, face));
+			}
+			else if (what < 18) {
+				listener.playerInteract(new PlayerInteractEvent(players[p], Action.LEFT_CLICK_BLOCK, hands[p][0],
+						block, face));
+			}
+			else {
+				listener.playerBreak(new BlockBreakEvent(block, players[p]));
+				if (block.getTypeId() == 0) {
+					place(world, random, x, y, z);
+				}
+			}
+
+			if (i % perTick == perTick - 1) {
+				drops.run();
+				sounds.run();
+			}
+		}
+	}
+
+	/**
+	 * Cobblestone most of the time, otherwise a retracted piston.
+	 */
+	private static void place(VoxelWorld world, Random random, int x, int y, int z) {
+		int kind = random.nextInt(8);
+		if (kind < 6) {
+			world.set(x, y, z, Material.COBBLESTONE, 0);
+		}
+		else {
+			world.set(x, y, z, kind == 6 ? Material.PISTON_BASE : Material.PISTON_STICKY_BASE, random.nextInt(6));
+		}
+	}
+}
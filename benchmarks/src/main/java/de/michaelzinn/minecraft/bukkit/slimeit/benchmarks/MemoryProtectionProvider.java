@@ -0,0 +1,129 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionCache;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider;
+
+/**
+ * Stand-in for a real protection plugin: cuboid regions that only their
+ * members may change, kept in memory. For checking {@link ProtectionCache}
+ * and the dispensers in WorldCheck.
+ * 
+ * Doesn't distinguish between actions.
+ * 
+ */
+public class MemoryProtectionProvider implements ProtectionProvider {
+
+	private final List<Region> regions = new CopyOnWriteArrayList<Region>();
+	private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+	/**
+	 * Protects a cuboid, the corners are inclusive.
+	 * 
+	 * @param world
+	 * @param min
+	 *            x, y, z
+	 * @param max
+	 *            x, y, z
+	 * @param members
+	 *            the players who may still change blocks in the region
+	 * @return the region, for {@link #remove(Region)}
+	 */
+	public Region protect(World world, int[] min, int[] max, UUID... members) {
+		Region region = new Region(world, min, max, members);
+		regions.add(region);
+		changed();
+		return region;
+	}
+
+	public void remove(Region region) {
+		if (regions.remove(region)) {
+			changed();
+		}
+	}
+
+	@Override
+	public Decision check(Player player, Block block, Action action) {
+		World world = block.getWorld();
+		int x = block.getX(), y = block.getY(), z = block.getZ();
+		int sx = x & ~15, sy = y & ~15, sz = z & ~15;
+		UUID id = player == null ? null : player.getUniqueId();
+
+		boolean allowed = true;
+		boolean wholeSection = true;
+		for (Region region : regions) {
+			if (!region.world.equals(world) || !region.intersects(sx, sy, sz, sx + 15, sy + 15, sz + 15)) {
+				continue;
+			}
+			if (!region.contains(sx, sy, sz) || !region.contains(sx + 15, sy + 15, sz + 15)) {
+				wholeSection = false;
+			}
+			if (region.contains(x, y, z) && !region.members.contains(id)) {
+				allowed = false;
+			}
+		}
+
+		if (wholeSection) {
+			return allowed ? Decision.ALLOW : Decision.DENY;
+		}
+		return allowed ? Decision.ALLOW_BLOCK : Decision.DENY_BLOCK;
+	}
+
+	@Override
+	public void addChangeListener(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeChangeListener(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return how many listeners get told about changes
+	 */
+	public int listeners() {
+		return listeners.size();
+	}
+
+	private void changed() {
+		for (ChangeListener listener : listeners) {
+			listener.protectionChanged();
+		}
+	}
+
+	public static class Region {
+		final World world;
+		final int minX, minY, minZ, maxX, maxY, maxZ;
+		final Set<UUID> members;
+
+		Region(World world, int[] min, int[] max, UUID[] members) {
+			this.world = world;
+			minX = Math.min(min[0], max[0]);
+			minY = Math.min(min[1], max[1]);
+			minZ = Math.min(min[2], max[2]);
+			maxX = Math.max(min[0], max[0]);
+			maxY = Math.max(min[1], max[1]);
+			maxZ = Math.max(min[2], max[2]);
+			this.members = new HashSet<UUID>(Arrays.asList(members));
+		}
+
+		boolean contains(int x, int y, int z) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+		}
+
+		boolean intersects(int x1, int y1, int z1, int x2, int y2, int z2) {
+			return x1 <= maxX && x2 >= minX && y1 <= maxY && y2 >= minY && z1 <= maxZ && z2 >= minZ;
+		}
+	}
+}
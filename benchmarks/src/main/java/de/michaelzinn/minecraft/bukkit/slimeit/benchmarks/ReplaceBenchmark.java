@@ -0,0 +1,69 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * BukkitPlus.replace on pistons. Each operation makes the piston sticky and
+ * non-sticky again, so the world is the same after every operation.
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplaceBenchmark {
+
+	private Block retracted;
+	private Block extendedBase;
+	private Block extension;
+
+	@Setup
+	public void setUp() {
+		VoxelWorld world = new VoxelWorld();
+		world.recording = false;
+		world.set(1, 1, 1, Material.PISTON_BASE, 1);
+		retracted = world.block(1, 1, 1);
+
+		// extended piston pointing up
+		world.set(4, 1, 1, Material.PISTON_BASE, 9);
+		world.set(4, 2, 1, Material.PISTON_EXTENSION, 1);
+		extendedBase = world.block(4, 1, 1);
+		extension = world.block(4, 2, 1);
+	}
+
+	@Benchmark
+	public void retractedPiston() {
+		BukkitPlus.replace(retracted, Thing.RETRACTED_STICKY_PISTON_BASE_UP);
+		BukkitPlus.replace(retracted, Thing.RETRACTED_NONSTICKY_PISTON_BASE_UP);
+	}
+
+	@Benchmark
+	public void extendedPistonFromBase() {
+		BukkitPlus.replace(extendedBase, Thing.EXTENDED_STICKY_PISTON_BASE_UP);
+		BukkitPlus.replace(extendedBase, Thing.EXTENDED_NONSTICKY_PISTON_BASE_UP);
+	}
+
+	@Benchmark
+	public void extendedPistonFromExtension() {
+		BukkitPlus.replace(extension, Thing.EXTENDED_STICKY_PISTON_EXTENSION_UP);
+		BukkitPlus.replace(extension, Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_UP);
+	}
+}
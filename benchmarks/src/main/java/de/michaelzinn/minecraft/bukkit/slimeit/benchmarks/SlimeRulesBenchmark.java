@@ -0,0 +1,84 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+
+/**
+ * Every SlimeRules query, on a block that can get slime and one that has
+ * slime.
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SlimeRulesBenchmark {
+
+	private SlimeRules slimeRules;
+	private Block cobble;
+	private Block mossyCobble;
+	private BlockFace face = BlockFace.UP;
+
+	@Setup
+	public void setUp() {
+		slimeRules = new SlimeRules();
+		VoxelWorld world = new VoxelWorld();
+		world.set(1, 1, 1, Material.COBBLESTONE, 0);
+		world.set(2, 1, 1, Material.MOSSY_COBBLESTONE, 0);
+		cobble = world.block(1, 1, 1);
+		mossyCobble = world.block(2, 1, 1);
+	}
+
+	@Benchmark
+	public boolean canGetSlimeOnIt() {
+		return slimeRules.canGetSlimeOnIt(cobble);
+	}
+
+	@Benchmark
+	public boolean canGetSlimeOnItFace() {
+		return slimeRules.canGetSlimeOnIt(cobble, face);
+	}
+
+	@Benchmark
+	public boolean hasSlimeOnIt() {
+		return slimeRules.hasSlimeOnIt(mossyCobble);
+	}
+
+	@Benchmark
+	public boolean hasSlimeOnItFace() {
+		return slimeRules.hasSlimeOnIt(mossyCobble, face);
+	}
+
+	@Benchmark
+	public Thing withSlime() {
+		return slimeRules.withSlime(cobble);
+	}
+
+	@Benchmark
+	public Thing withoutSlime() {
+		return slimeRules.withoutSlime(mossyCobble);
+	}
+
+	@Benchmark
+	public boolean missOnIrrelevantBlock() {
+		return slimeRules.hasSlimeOnIt(cobble, face);
+	}
+}
@@ -0,0 +1,68 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Thing.in and Thing.is
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThingBenchmark {
+
+	private static final TagQuery EXTENDED_STICKY_PISTON_BASE = TagQuery.of(EXTENDED, STICKY, PISTON, BASE);
+
+	private Block block;
+	private Material material = Material.SMOOTH_BRICK;
+	private byte data = 1;
+	private Thing thing = Thing.EXTENDED_STICKY_PISTON_BASE_UP;
+
+	@Setup
+	public void setUp() {
+		VoxelWorld world = new VoxelWorld();
+		world.set(1, 1, 1, Material.MOSSY_COBBLESTONE, 0);
+		block = world.block(1, 1, 1);
+	}
+
+	@Benchmark
+	public Thing inMaterialData() {
+		return Thing.in(material, data);
+	}
+
+	@Benchmark
+	public Thing inBlock() {
+		return Thing.in(block);
+	}
+
+	@Benchmark
+	public boolean isVarargs() {
+		return thing.is(EXTENDED, STICKY, PISTON, BASE);
+	}
+
+	@Benchmark
+	public boolean isQuery() {
+		return thing.is(EXTENDED_STICKY_PISTON_BASE);
+	}
+}
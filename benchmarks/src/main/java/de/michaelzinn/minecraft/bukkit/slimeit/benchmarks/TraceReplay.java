@@ -0,0 +1,203 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.BlockPunchListener;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.DropAggregator;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.EventRecorder;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.EventTraceReader;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SoundScheduler;
+
+/**
+ * Replays a trace recorded with /slimeit record against a {@link VoxelWorld}
+ * as fast as possible and prints events per second, the allocation rate and a
+ * checksum of the world afterwards.
+ * 
+ * The trace is loaded into arrays first, so reading it isn't measured. Before
+ * each event the block is set to what the trace says it was, so the replay
+ * works without a copy of the server's world. Drops and sounds are flushed
+ * whenever the recorded time passes a tick.
+ * 
+ * The checksum only depends on the trace and the plugin's behaviour, so a
+ * changed checksum for the same trace means the behaviour changed. Events
+ * where the world already disagreed with the trace (other than at blocks seen
+ * for the first time) are counted as diverged; some divergence is normal,
+ * e.g. from pistons or other plugins on the server.
+ * 
+ * Run with java -cp target/benchmarks.jar
+ * de.michaelzinn.minecraft.bukkit.slimeit.benchmarks.TraceReplay trace.bin
+ * [rounds]
+ * 
+ */
+public class TraceReplay {
+
+	private static final long TICK_NANOS = 50000000;
+
+	private int count;
+	private long[] nanos;
+	private int[] players;
+	private byte[] kinds;
+	private byte[] faces;
+	private int[] xs, ys, zs;
+	private int[] things;
+	private short[] itemTypes;
+	private byte[] itemAmounts;
+	private short[] itemDurabilities;
+	private boolean[] firstSeen;
+	private int playerCount;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: TraceReplay <trace.bin> [rounds]");
+			System.exit(2);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		TraceReplay replay = new TraceReplay();
+		replay.load(new File(args[0]));
+		System.out.println("Replaying " + replay.count + " events by " + replay.playerCount + " players, " + rounds
+				+ " rounds");
+		for (int round = 1; round <= rounds; round++) {
+			System.out.println(replay.replay(round));
+		}
+	}
+
+	void load(File file) throws IOException {
+		EventTraceReader reader = new EventTraceReader(file);
+		if (reader.getCount() > Integer.MAX_VALUE) {
+			throw new IOException("Too many events to replay at once");
+		}
+		final int size = (int) reader.getCount();
+		nanos = new long[size];
+		players = new int[size];
+		kinds = new byte[size];
+		faces = new byte[size];
+		xs = new int[size];
+		ys = new int[size];
+		zs = new int[size];
+		things = new int[size];
+		itemTypes = new short[size];
+		itemAmounts = new byte[size];
+		itemDurabilities = new short[size];
+		firstSeen = new boolean[size];
+		final Set<Long> seen = new HashSet<Long>();
+
+		reader.scan(new EventTraceReader.Visitor() {
+			@Override
+			public void visit(long time, int player, int kind, int face, int x, int y, int z, int blockType,
+					int blockData, int itemType, int itemAmount, int itemDurability) {
+				int i = count++;
+				nanos[i] = time;
+				players[i] = player;
+				kinds[i] = (byte) kind;
+				faces[i] = (byte) face;
+				xs[i] = x;
+				ys[i] = y;
+				zs[i] = z;
+				things[i] = blockType * Thing.DATA_VALUES + blockData;
+				itemTypes[i] = (short) itemType;
+				itemAmounts[i] = (byte) itemAmount;
+				itemDurabilities[i] = (short) itemDurability;
+				firstSeen[i] = seen.add((long) x << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFFF));
+				playerCount = Math.max(playerCount, player + 1);
+			}
+		});
+	}
+
+	/**
+	 * @return a line with the results
+	 */
+	String replay(int round) {
+		VoxelWorld world = new VoxelWorld();
+		world.recording = false;
+		DropAggregator drops = new DropAggregator(1, 4);
+		SoundScheduler sounds = new SoundScheduler(1, 8);
+		BlockPunchListener listener = new BlockPunchListener(null, new SlimeRules(), drops, sounds);
+
+		Player[] replayPlayers = new Player[playerCount];
+		ItemStack[][] hands = new ItemStack[playerCount][];
+		for (int i = 0; i < playerCount; i++) {
+			hands[i] = new ItemStack[1];
+			replayPlayers[i] = world.player("player" + i, hands[i]);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+
+		long nextTick = TICK_NANOS;
+		int diverged = 0;
+		for (int i = 0; i < count; i++) {
+			while (nanos[i] >= nextTick) {
+				drops.run();
+				sounds.run();
+				nextTick += TICK_NANOS;
+			}
+
+			Thing recorded = Thing.byId(things[i]);
+			Thing current = world.thing(xs[i], ys[i], zs[i]);
+			if (current != recorded) {
+				if (!firstSeen[i]) {
+					diverged++;
+				}
+				world.place(xs[i], ys[i], zs[i], recorded);
+			}
+			Block block = world.block(xs[i], ys[i], zs[i]);
+			int p = players[i];
+			hands[p][0] = hand(hands[p][0], i);
+
+			if (kinds[i] == EventRecorder.BREAK) {
+				listener.playerBreak(new BlockBreakEvent(block, replayPlayers[p]));
+			}
+			else {
+				BlockFace face = faces[i] == EventRecorder.NO_FACE ? BlockFace.SELF : BlockFaces.ALL[faces[i]];
+				Action action = kinds[i] == EventRecorder.LEFT_CLICK ? Action.LEFT_CLICK_BLOCK
+						: kinds[i] == EventRecorder.RIGHT_CLICK ? Action.RIGHT_CLICK_BLOCK : Action.PHYSICAL;
+				listener.playerInteract(new PlayerInteractEvent(replayPlayers[p], action, hands[p][0], block, face));
+			}
+		}
+		drops.run();
+		sounds.run();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		return String.format(
+				"round %d: %,.0f events/s, %.1f MB/s allocated (%.0f B/event), %d diverged, checksum %08x",
+				round, count / seconds, allocated / seconds / 1e6, (double) allocated / Math.max(1, count),
+				diverged, world.checksum());
+	}
+
+	/**
+	 * @return the item the player held at event i, reusing the current one if
+	 *         it's the same. An empty hand is air like on the server, never
+	 *         null.
+	 */
+	private ItemStack hand(ItemStack current, int i) {
+		if (itemAmounts[i] == 0) {
+			return current != null && current.getType() == Material.AIR ? current : new ItemStack(Material.AIR, 0);
+		}
+		if (current != null && current.getTypeId() == itemTypes[i] && current.getDurability() == itemDurabilities[i]) {
+			current.setAmount(itemAmounts[i] & 0xFF);
+			return current;
+		}
+		return new ItemStack(Material.getMaterial(itemTypes[i]), itemAmounts[i] & 0xFF, itemDurabilities[i]);
+	}
+}
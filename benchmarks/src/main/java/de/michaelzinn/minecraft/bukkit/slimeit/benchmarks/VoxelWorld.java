@@ -0,0 +1,798 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Dispenser;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * A world without a server, for running the real listeners headless in
+ * correctness checks and load runs.
+ * 
+ * Blocks are stored per chunk in two byte arrays (type and data, indexed y, z,
+ * x like the server does), chunks are created on first access. Block proxies
+ * get created once per position and reused, so getRelative() and getBlockAt()
+ * don't allocate after warm up. Blocks outside 0..255 are air and ignore
+ * changes. Like on the server, setting a block to the state it already has
+ * returns false and changes nothing.
+ * 
+ * Drops, sounds, effects and changes with physics are counted and, while
+ * recording is on, kept as {@link Drop}, {@link Played} and physicsAt for
+ * checks to look at.
+ * 
+ * Uses dynamic proxies so it doesn't have to implement the whole Bukkit API.
+ * The proxy dispatch adds a constant cost to every Bukkit call, so compare
+ * results between versions rather than reading them as server numbers.
+ * 
+ */
+public class VoxelWorld {
+
+	public static final int HEIGHT = 256;
+	private static final int CHUNK_VOLUME = 16 * 16 * HEIGHT;
+
+	/**
+	 * An item stack that got dropped.
+	 */
+	public static class Drop {
+		public final Location location;
+		public final Material type;
+		public final int amount;
+
+		Drop(Location location, ItemStack stack) {
+			this.location = location;
+			this.type = stack.getType();
+			this.amount = stack.getAmount();
+		}
+
+		@Override
+		public String toString() {
+			return amount + " " + type + " at " + location.getBlockX() + " " + location.getBlockY() + " "
+					+ location.getBlockZ();
+		}
+	}
+
+	/**
+	 * A sound or effect that got played.
+	 */
+	public static class Played {
+		public final Location location;
+		public final Object what;
+
+		Played(Location location, Object what) {
+			this.location = location;
+			this.what = what;
+		}
+
+		@Override
+		public String toString() {
+			return what + " at " + location.getBlockX() + " " + location.getBlockY() + " " + location.getBlockZ();
+		}
+	}
+
+	private static final TagQuery EXTENDED_PISTON = TagQuery.of(EXTENDED, PISTON);
+	private static final TagQuery STICKY_PISTON = TagQuery.of(STICKY, PISTON);
+
+	// the world the server finds, see makeCurrent()
+	private static volatile VoxelWorld current;
+
+	private final Map<Long, Column> columns = new HashMap<Long, Column>();
+	private final BlockState state;
+	private final UUID uid = UUID.randomUUID();
+	private final String name;
+
+	public final World world;
+
+	/** keep drops, sounds, effects and messages, not just count them */
+	public boolean recording = true;
+	public final List<Drop> dropped = new ArrayList<Drop>();
+	public final List<Played> played = new ArrayList<Played>();
+	public final List<String> messages = new ArrayList<String>();
+	/** blocks changed with physics, in order, with the state they got */
+	public final List<String> physicsAt = new ArrayList<String>();
+
+	public long drops;
+	public long sounds;
+	public long effects;
+	public long updates;
+	/** block changes that asked for physics */
+	public long physics;
+	/** block changes of any kind */
+	public long changes;
+
+	public VoxelWorld() {
+		this("voxel");
+	}
+
+	public VoxelWorld(String name) {
+		this.name = name;
+		world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class },
+				new WorldHandler());
+		state = (BlockState) Proxy.newProxyInstance(BlockState.class.getClassLoader(),
+				new Class<?>[] { BlockState.class }, new StateHandler(null));
+	}
+
+	/**
+	 * Lets Bukkit.getWorld() find this world, for code that looks worlds up by
+	 * UID or name, like undoing. The first call installs a server that knows
+	 * nothing but the current world.
+	 */
+	public void makeCurrent() {
+		current = this;
+		if (Bukkit.getServer() == null) {
+			Bukkit.setServer((Server) Proxy.newProxyInstance(Server.class.getClassLoader(),
+					new Class<?>[] { Server.class }, new ServerHandler()));
+		}
+	}
+
+	public Block block(int x, int y, int z) {
+		if (y < 0 || y >= HEIGHT) {
+			return (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] { Block.class },
+					new BlockHandler(null, x, y, z));
+		}
+		return column(x >> 4, z >> 4).block(x, y, z);
+	}
+
+	public void set(int x, int y, int z, Material material, int data) {
+		if (y < 0 || y >= HEIGHT) {
+			return;
+		}
+		Column column = column(x >> 4, z >> 4);
+		int i = index(x, y, z);
+		column.types[i] = (byte) material.getId();
+		column.data[i] = (byte) data;
+	}
+
+	public void set(int x, int y, int z, Thing thing) {
+		set(x, y, z, thing.material, thing.data);
+	}
+
+	/**
+	 * Like set(), but an extended piston gets its other half in front of or
+	 * behind it.
+	 */
+	public void place(int x, int y, int z, Thing thing) {
+		set(x, y, z, thing);
+		if (thing.is(EXTENDED_PISTON)) {
+			boolean sticky = thing.is(STICKY_PISTON);
+			if (thing.is(EXTENSION)) {
+				BlockFace back = thing.back;
+				set(x + back.getModX(), y + back.getModY(), z + back.getModZ(), sticky ? Material.PISTON_STICKY_BASE
+						: Material.PISTON_BASE, (thing.data & 7) | 8);
+			}
+			else {
+				BlockFace front = thing.front;
+				set(x + front.getModX(), y + front.getModY(), z + front.getModZ(), Material.PISTON_EXTENSION,
+						(thing.data & 7) | (sticky ? 8 : 0));
+			}
+		}
+	}
+
+	public Thing thing(int x, int y, int z) {
+		if (y < 0 || y >= HEIGHT) {
+			return Thing.AIR;
+		}
+		Column column = column(x >> 4, z >> 4);
+		int i = index(x, y, z);
+		return Thing.in(Material.getMaterial(column.types[i] & 0xFF), column.data[i]);
+	}
+
+	/**
+	 * Fills a cuboid, both corners included.
+	 */
+	public void fill(int x1, int y1, int z1, int x2, int y2, int z2, Material material, int data) {
+		for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
+			for (int z = Math.min(z1, z2); z <= Math.max(z1, z2); z++) {
+				for (int x = Math.min(x1, x2); x <= Math.max(x1, x2); x++) {
+					set(x, y, z, material, data);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return CRC32 of all blocks, chunks that are only air don't count
+	 */
+	public long checksum() {
+		List<Long> keys = new ArrayList<Long>(columns.keySet());
+		Collections.sort(keys);
+		CRC32 crc = new CRC32();
+		for (Long key : keys) {
+			Column column = columns.get(key);
+			if (column.isEmpty()) {
+				continue;
+			}
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				crc.update((int) (key >>> shift));
+			}
+			crc.update(column.types);
+			crc.update(column.data);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @return the chunks that have been touched so far
+	 */
+	public int chunkCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Forgets the recorded drops, sounds, effects and messages and resets the
+	 * counters.
+	 */
+	public void clearRecords() {
+		dropped.clear();
+		played.clear();
+		messages.clear();
+		physicsAt.clear();
+		drops = sounds = effects = updates = physics = changes = 0;
+	}
+
+	/**
+	 * A player standing at 0 64 0 with an empty inventory that allows
+	 * everything. Effects played for the player alone count like the world's.
+	 * 
+	 * @param hand
+	 *            the item in hand, changes by the plugin go to hand[0]
+	 */
+	public Player player(ItemStack[] hand) {
+		return player("voxel", hand);
+	}
+
+	public Player player(String name, ItemStack[] hand) {
+		PlayerHandler handler = new PlayerHandler(name, hand);
+		handler.inventory = (PlayerInventory) Proxy.newProxyInstance(PlayerInventory.class.getClassLoader(),
+				new Class<?>[] { PlayerInventory.class }, new InventoryHandler(hand));
+		return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class },
+				handler);
+	}
+
+	/**
+	 * The inventory of the container at x y z, created empty on first use.
+	 * From then on getState() of that block returns a {@link Dispenser} with
+	 * this inventory, whatever the block is.
+	 */
+	public Inventory inventory(int x, int y, int z) {
+		Column column = column(x >> 4, z >> 4);
+		int i = index(x, y, z);
+		Inventory inventory = column.inventories.get(i);
+		if (inventory == null) {
+			inventory = (Inventory) Proxy.newProxyInstance(Inventory.class.getClassLoader(),
+					new Class<?>[] { Inventory.class }, new InventoryHandler(new ItemStack[1]));
+			column.inventories.put(i, inventory);
+		}
+		return inventory;
+	}
+
+	private Column column(int chunkX, int chunkZ) {
+		long key = (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+		Column column = columns.get(key);
+		if (column == null) {
+			column = new Column(chunkX, chunkZ);
+			columns.put(key, column);
+		}
+		return column;
+	}
+
+	private static int index(int x, int y, int z) {
+		return (y << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	private static Object objectMethod(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		if (name.equals("equals")) {
+			return proxy == args[0];
+		}
+		if (name.equals("toString")) {
+			return "Voxel" + method.getDeclaringClass().getSimpleName();
+		}
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.TRUE;
+		}
+		if (type.isPrimitive() && type != void.class) {
+			return 0;
+		}
+		return null;
+	}
+
+	/**
+	 * One chunk, all 256 blocks high.
+	 */
+	private class Column {
+		final int chunkX;
+		final int chunkZ;
+		final byte[] types = new byte[CHUNK_VOLUME];
+		final byte[] data = new byte[CHUNK_VOLUME];
+		final Block[] blocks = new Block[CHUNK_VOLUME];
+		// by index, only containers
+		final Map<Integer, Inventory> inventories = new HashMap<Integer, Inventory>();
+		final Chunk chunk;
+
+		Column(int chunkX, int chunkZ) {
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+			chunk = (Chunk) Proxy.newProxyInstance(Chunk.class.getClassLoader(), new Class<?>[] { Chunk.class },
+					new ChunkHandler(this));
+		}
+
+		boolean isEmpty() {
+			for (byte type : types) {
+				if (type != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Block block(int x, int y, int z) {
+			int i = index(x, y, z);
+			Block block = blocks[i];
+			if (block == null) {
+				block = (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] { Block.class },
+						new BlockHandler(this, x, y, z));
+				blocks[i] = block;
+			}
+			return block;
+		}
+	}
+
+	private void drop(Location location, ItemStack stack) {
+		drops++;
+		if (recording) {
+			dropped.add(new Drop(location, stack));
+		}
+	}
+
+	private class WorldHandler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.startsWith("dropItem")) {
+				drop((Location) args[0], (ItemStack) args[1]);
+				return null;
+			}
+			if (name.equals("playSound")) {
+				sounds++;
+				if (recording) {
+					played.add(new Played((Location) args[0], args[1]));
+				}
+				return null;
+			}
+			if (name.equals("playEffect")) {
+				effects++;
+				if (recording) {
+					played.add(new Played((Location) args[0], args[1]));
+				}
+				return null;
+			}
+			if (name.equals("getBlockAt")) {
+				if (args.length == 3) {
+					return block((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+				}
+				Location location = (Location) args[0];
+				return block(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+			}
+			if (name.equals("getChunkAt")) {
+				return column((Integer) args[0], (Integer) args[1]).chunk;
+			}
+			if (name.equals("getLoadedChunks")) {
+				Chunk[] chunks = new Chunk[columns.size()];
+				int i = 0;
+				for (Column column : columns.values()) {
+					chunks[i++] = column.chunk;
+				}
+				return chunks;
+			}
+			if (name.equals("isChunkLoaded")) {
+				return columns.containsKey((long) (Integer) args[0] << 32 | (Integer) args[1] & 0xFFFFFFFFL);
+			}
+			if (name.equals("getMaxHeight")) {
+				return HEIGHT;
+			}
+			if (name.equals("getPlayers")) {
+				return Collections.emptyList();
+			}
+			if (name.equals("getName")) {
+				return VoxelWorld.this.name;
+			}
+			if (name.equals("getUID")) {
+				return uid;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private static class ServerHandler implements InvocationHandler {
+		private final Logger logger = Logger.getLogger("VoxelWorld");
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			VoxelWorld world = current;
+			if (name.equals("getWorld")) {
+				return world == null ? null : world.world;
+			}
+			if (name.equals("getWorlds")) {
+				return world == null ? Collections.<World> emptyList() : Collections.singletonList(world.world);
+			}
+			if (name.equals("getOnlinePlayers")) {
+				return Collections.emptyList();
+			}
+			if (name.equals("getLogger")) {
+				return logger;
+			}
+			if (method.getReturnType() == String.class && method.getParameterTypes().length == 0) {
+				return "VoxelWorld";
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private class ChunkHandler implements InvocationHandler {
+		private final Column column;
+
+		ChunkHandler(Column column) {
+			this.column = column;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getX")) {
+				return column.chunkX;
+			}
+			if (name.equals("getZ")) {
+				return column.chunkZ;
+			}
+			if (name.equals("getWorld")) {
+				return world;
+			}
+			if (name.equals("getBlock")) {
+				return column.block(column.chunkX << 4 | (Integer) args[0], (Integer) args[1], column.chunkZ << 4
+						| (Integer) args[2]);
+			}
+			if (name.equals("getChunkSnapshot")) {
+				return Proxy.newProxyInstance(ChunkSnapshot.class.getClassLoader(),
+						new Class<?>[] { ChunkSnapshot.class }, new SnapshotHandler(column));
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	/**
+	 * Copies the blocks of the chunk when created, like the server does.
+	 */
+	private class SnapshotHandler implements InvocationHandler {
+		private final int chunkX;
+		private final int chunkZ;
+		private final byte[] types;
+		private final byte[] data;
+
+		SnapshotHandler(Column column) {
+			chunkX = column.chunkX;
+			chunkZ = column.chunkZ;
+			types = column.types.clone();
+			data = column.data.clone();
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getBlockTypeId")) {
+				return types[index((Integer) args[0], (Integer) args[1], (Integer) args[2])] & 0xFF;
+			}
+			if (name.equals("getBlockData")) {
+				return data[index((Integer) args[0], (Integer) args[1], (Integer) args[2])] & 0xF;
+			}
+			if (name.equals("isSectionEmpty")) {
+				int from = (Integer) args[0] << 12;
+				for (int i = from; i < from + 4096; i++) {
+					if (types[i] != 0) {
+						return Boolean.FALSE;
+					}
+				}
+				return Boolean.TRUE;
+			}
+			if (name.equals("getX")) {
+				return chunkX;
+			}
+			if (name.equals("getZ")) {
+				return chunkZ;
+			}
+			if (name.equals("getWorldName")) {
+				return VoxelWorld.this.name;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private class StateHandler implements InvocationHandler {
+		// null unless it's a container
+		private final Inventory inventory;
+
+		StateHandler(Inventory inventory) {
+			this.inventory = inventory;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("update")) {
+				updates++;
+				return Boolean.TRUE;
+			}
+			if (method.getName().equals("getInventory")) {
+				return inventory;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private class BlockHandler implements InvocationHandler {
+		// null outside the world
+		private final Column column;
+		private final int i;
+		private final int x, y, z;
+
+		BlockHandler(Column column, int x, int y, int z) {
+			this.column = column;
+			this.i = column == null ? -1 : index(x, y, z);
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		private boolean set(int type, byte data, boolean applyPhysics) {
+			// like CraftBukkit, writing the same state again changes nothing
+			if (column == null || type() == type && data() == data) {
+				return false;
+			}
+			column.types[i] = (byte) type;
+			column.data[i] = data;
+			changes++;
+			if (applyPhysics) {
+				physics++;
+				if (recording) {
+					physicsAt.add(x + " " + y + " " + z + " " + type + ":" + data);
+				}
+			}
+			return true;
+		}
+
+		private int type() {
+			return column == null ? 0 : column.types[i] & 0xFF;
+		}
+
+		private byte data() {
+			return column == null ? 0 : column.data[i];
+		}
+
+		private boolean physics(Object[] args) {
+			return args.length < 2 || (Boolean) args[args.length - 1];
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getType")) {
+				return Material.getMaterial(type());
+			}
+			if (name.equals("getTypeId")) {
+				return type();
+			}
+			if (name.equals("getData")) {
+				return data();
+			}
+			if (name.equals("getRelative")) {
+				if (args.length == 3) {
+					return block(x + (Integer) args[0], y + (Integer) args[1], z + (Integer) args[2]);
+				}
+				BlockFace face = (BlockFace) args[0];
+				int distance = args.length == 2 ? (Integer) args[1] : 1;
+				return block(x + face.getModX() * distance, y + face.getModY() * distance, z + face.getModZ()
+						* distance);
+			}
+			if (name.equals("setType")) {
+				set(((Material) args[0]).getId(), (byte) 0, physics(args));
+				return null;
+			}
+			if (name.equals("setTypeId")) {
+				return set((Integer) args[0], (byte) 0, physics(args));
+			}
+			if (name.equals("setData")) {
+				set(type(), (Byte) args[0], physics(args));
+				return null;
+			}
+			if (name.equals("setTypeIdAndData")) {
+				return set((Integer) args[0], (Byte) args[1], (Boolean) args[2]);
+			}
+			if (name.equals("isLiquid")) {
+				int type = type();
+				return type >= 8 && type <= 11;
+			}
+			if (name.equals("getState")) {
+				Inventory inventory = column == null ? null : column.inventories.get(i);
+				if (inventory != null) {
+					return Proxy.newProxyInstance(Dispenser.class.getClassLoader(),
+							new Class<?>[] { Dispenser.class }, new StateHandler(inventory));
+				}
+				return state;
+			}
+			if (name.equals("getWorld")) {
+				return world;
+			}
+			if (name.equals("getChunk")) {
+				return column(x >> 4, z >> 4).chunk;
+			}
+			if (name.equals("getLocation") && (args == null || args.length == 0)) {
+				return new Location(world, x, y, z);
+			}
+			if (name.equals("getX")) {
+				return x;
+			}
+			if (name.equals("getY")) {
+				return y;
+			}
+			if (name.equals("getZ")) {
+				return z;
+			}
+			if (name.equals("toString")) {
+				return "VoxelBlock " + x + " " + y + " " + z;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private class PlayerHandler implements InvocationHandler {
+		private final UUID id = UUID.randomUUID();
+		private final String playerName;
+		private final ItemStack[] hand;
+		PlayerInventory inventory;
+
+		PlayerHandler(String name, ItemStack[] hand) {
+			this.playerName = name;
+			this.hand = hand;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getItemInHand")) {
+				// the server never returns null
+				return hand[0] == null ? new ItemStack(Material.AIR, 0) : hand[0];
+			}
+			if (name.equals("setItemInHand")) {
+				hand[0] = (ItemStack) args[0];
+				return null;
+			}
+			if (name.equals("getInventory")) {
+				return inventory;
+			}
+			if (name.equals("getWorld")) {
+				return world;
+			}
+			if (name.equals("getLocation") || name.equals("getEyeLocation")) {
+				return new Location(world, 0, 64, 0);
+			}
+			if (name.equals("getUniqueId")) {
+				return id;
+			}
+			if (name.equals("getName")) {
+				return playerName;
+			}
+			if (name.equals("playEffect")) {
+				effects++;
+				if (recording) {
+					played.add(new Played((Location) args[0], args[1]));
+				}
+				return null;
+			}
+			if (name.equals("sendMessage")) {
+				if (recording) {
+					messages.add(playerName + ": " + args[0]);
+				}
+				return null;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	/**
+	 * Counts items per material, ignoring data and stack sizes. The slot of a
+	 * material is its ordinal, its items share the durability of the first one.
+	 * The item in hand is separate.
+	 */
+	private static class InventoryHandler implements InvocationHandler {
+		private static final Material[] MATERIALS = Material.values();
+
+		private final int[] amounts = new int[MATERIALS.length];
+		private final short[] durabilities = new short[MATERIALS.length];
+		private final ItemStack[] hand;
+
+		InventoryHandler(ItemStack[] hand) {
+			this.hand = hand;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("addItem") || name.equals("removeItem")) {
+				int sign = name.equals("addItem") ? 1 : -1;
+				HashMap<Integer, ItemStack> leftovers = new HashMap<Integer, ItemStack>();
+				ItemStack[] stacks = (ItemStack[]) args[0];
+				for (int i = 0; i < stacks.length; i++) {
+					int ordinal = stacks[i].getType().ordinal();
+					int amount = stacks[i].getAmount();
+					if (sign < 0 && amounts[ordinal] < amount) {
+						leftovers.put(i, new ItemStack(stacks[i].getType(), amount - amounts[ordinal]));
+						amount = amounts[ordinal];
+					}
+					if (sign > 0 && amounts[ordinal] == 0) {
+						durabilities[ordinal] = stacks[i].getDurability();
+					}
+					amounts[ordinal] += sign * amount;
+				}
+				return leftovers;
+			}
+			if (name.equals("containsAtLeast")) {
+				return amounts[((ItemStack) args[0]).getType().ordinal()] >= (Integer) args[1];
+			}
+			if (name.equals("first")) {
+				int ordinal = ((Material) args[0]).ordinal();
+				return amounts[ordinal] > 0 ? ordinal : -1;
+			}
+			if (name.equals("getItem")) {
+				int slot = (Integer) args[0];
+				return amounts[slot] == 0 ? null : new ItemStack(MATERIALS[slot], amounts[slot], durabilities[slot]);
+			}
+			if (name.equals("setItem")) {
+				int slot = (Integer) args[0];
+				ItemStack stack = (ItemStack) args[1];
+				amounts[slot] = 0;
+				durabilities[slot] = 0;
+				if (stack != null) {
+					amounts[stack.getType().ordinal()] = stack.getAmount();
+					durabilities[stack.getType().ordinal()] = stack.getDurability();
+				}
+				return null;
+			}
+			if (name.equals("getItemInHand")) {
+				// the server never returns null
+				return hand[0] == null ? new ItemStack(Material.AIR, 0) : hand[0];
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+}
@@ -0,0 +1,902 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.benchmarks;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.BlockPunchListener;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ChangeJournal;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.DispenserSlimer;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.DropAggregator;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.EventRecorder;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.FaceRenderer;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.FaceSlimeStore;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.HandlerTrace;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.JournalReader;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionCache;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRuleTable;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SoundScheduler;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.UndoHistory;
+
+/**
+ * Drives the real BlockPunchListener through a {@link VoxelWorld} and checks
+ * what every built in slime rule does to the world:
+ * 
+ * - right clicking each face with a slime ball adds slime exactly where the
+ * rule allows it and costs one slime ball
+ * 
+ * - left clicking each face scrapes slime off exactly where the rule has it
+ * and drops one slime ball in front of that face
+ * 
+ * - breaking a slimed block drops the block without slime plus a slime ball
+ * 
+ * - breaking either part of an extended sticky piston, in all six
+ * orientations, removes both parts and drops a piston and a slime ball. The
+ * neighbours of both parts get physics, after both are gone
+ * 
+ * - a pickaxe cracks stone bricks, cracked bricks drop smooth bricks
+ * 
+ * - the handler trace sees what a click turned the block into, and nothing
+ * while it's disabled
+ * 
+ * - clicks with an empty hand change nothing, also when replayed from a
+ * recorded trace
+ * 
+ * - dispensers with slime balls or shears do what a player clicking the face
+ * that points at the dispenser would do, once per block and tick, and no more
+ * than the per chunk cap, scraping wears the shears until they break
+ * 
+ * - dispensers don't change protected blocks, no matter where they are
+ * 
+ * - the protection cache listens to the current provider only, once
+ * 
+ * - blocks without a rule keep slime on single faces, scraping gives the slime
+ * ball back and breaking drops one per slimed face, unless the block is
+ * protected. Adding slime cancels the click, so doors and levers stay as they
+ * are
+ * 
+ * - slimed faces follow blocks moved by pistons and drop when they explode
+ * 
+ * - adding and scraping slime on faces gets journaled and can be undone
+ * 
+ * - slimed faces show particles only to players in front of them and in
+ * range, no more than the budget, and not at all without slime nearby
+ * 
+ * Run with java -cp target/benchmarks.jar
+ * de.michaelzinn.minecraft.bukkit.slimeit.benchmarks.WorldCheck, exits with 1
+ * if anything failed. mvn verify runs it.
+ * 
+ */
+public class WorldCheck {
+
+	private static final TagQuery EXTENDED_PISTON = TagQuery.of(EXTENDED, PISTON);
+	private static final TagQuery STICKY_PISTON = TagQuery.of(STICKY, PISTON);
+
+	// where the block under test goes, away from chunk borders on purpose
+	private static final int X = 8, Y = 64, Z = 8;
+
+	private static final int DISPENSERS_PER_CHUNK = 4;
+	private static final ItemStack ONE_SLIME_BALL = new ItemStack(Material.SLIME_BALL, 1);
+
+	private final List<String> failures = new ArrayList<String>();
+	private int checks;
+
+	private VoxelWorld world;
+	private DropAggregator drops;
+	private SoundScheduler sounds;
+	private BlockPunchListener listener;
+	private DispenserSlimer dispensers;
+	private FaceSlimeStore faces;
+	private final ItemStack[] hand = new ItemStack[1];
+	private Player player;
+
+	public static void main(String[] args) {
+		WorldCheck check = new WorldCheck();
+		check.run();
+		System.out.println(check.checks + " checks, " + check.failures.size() + " failed");
+		for (String failure : check.failures) {
+			System.out.println(" - " + failure);
+		}
+		System.exit(check.failures.isEmpty() ? 0 : 1);
+	}
+
+	void run() {
+		SlimeRules rules = new SlimeRules();
+		SlimeRuleTable table = rules.table();
+		int ruleCount = 0;
+		Thing anySide = null;
+		Thing slimedUp = null;
+		for (Material material : Material.values()) {
+			if (!material.isBlock()) {
+				continue;
+			}
+			for (int data = 0; data < Thing.DATA_VALUES; data++) {
+				Thing thing = Thing.in(material, (byte) data);
+				long rule = table.rule(thing);
+				if (SlimeRuleTable.canGetSlime(rule)) {
+					ruleCount++;
+					for (BlockFace face : BlockFaces.ALL) {
+						checkApply(thing, rule, face);
+						checkDispenserApply(thing, rule, face);
+					}
+					if (anySide == null && SlimeRuleTable.canGetSlime(rule, BlockFace.UP)
+							&& SlimeRuleTable.canGetSlime(rule, BlockFace.DOWN)) {
+						anySide = thing;
+					}
+				}
+				if (SlimeRuleTable.hasSlime(rule)) {
+					for (BlockFace face : BlockFaces.ALL) {
+						checkScrape(thing, rule, face);
+						checkDispenserScrape(thing, rule, face);
+					}
+					if (slimedUp == null && SlimeRuleTable.hasSlime(rule, BlockFace.UP)) {
+						slimedUp = thing;
+					}
+					checkBreakSlimed(thing, rule);
+				}
+			}
+		}
+		check(ruleCount > 0, "there are no slime rules to check");
+
+		for (BlockFace face : BlockFaces.ALL) {
+			checkBreakExtendedStickyPiston(face, true);
+			checkBreakExtendedStickyPiston(face, false);
+		}
+		checkCracking();
+		checkEmptyHand(Thing.in(Material.COBBLESTONE, (byte) 0));
+		if (anySide != null) {
+			checkDispenserBatch(anySide, table.rule(anySide));
+			checkDispenserProtection(anySide, table.rule(anySide));
+			checkProviderSwap();
+			checkTrace(anySide, table.rule(anySide));
+		}
+		if (slimedUp != null) {
+			checkShearsBreak(slimedUp);
+		}
+
+		Thing noRule = Thing.in(Material.STONE, (byte) 0);
+		check(table.rule(noRule) == 0, noRule + " has a slime rule, can't check slimed faces with it");
+		for (BlockFace face : BlockFaces.ALL) {
+			checkFaces(noRule, face);
+		}
+		checkBreakFaces(noRule);
+		checkBreakFaces(Thing.in(Material.SMOOTH_BRICK, (byte) 3));
+		checkBreakFacesOfPiston();
+		checkFacesMoved(noRule);
+		checkUndoFaces(noRule);
+		checkFaceParticles(noRule);
+	}
+
+	/**
+	 * A fresh world with the thing at X Y Z, extended pistons get their other
+	 * half.
+	 */
+	private Block setUp(Thing thing) {
+		world = new VoxelWorld();
+		drops = new DropAggregator(1, 64);
+		sounds = new SoundScheduler(1, 0xFFFF);
+		listener = new BlockPunchListener(null, new SlimeRules(), drops, sounds);
+		dispensers = new DispenserSlimer(new SlimeRules(), drops, sounds, DISPENSERS_PER_CHUNK);
+		hand[0] = new ItemStack(Material.SLIME_BALL, 64);
+		player = world.player("checker", hand);
+		if (faces != null) {
+			listener.setFaces(faces);
+			faces.setDrops(drops);
+		}
+
+		world.place(X, Y, Z, thing);
+		return world.block(X, Y, Z);
+	}
+
+	private void flush() {
+		if (faces != null) {
+			faces.run();
+		}
+		dispensers.run();
+		drops.run();
+		sounds.run();
+	}
+
+	private void checkApply(Thing thing, long rule, BlockFace face) {
+		Block block = setUp(thing);
+		PlayerInteractEvent event = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, hand[0], block, face);
+		listener.playerInteract(event);
+		flush();
+
+		String what = "adding slime to " + thing + " on " + face;
+		if (SlimeRuleTable.canGetSlime(rule, face)) {
+			Thing expected = SlimeRuleTable.withSlime(rule);
+			check(Thing.in(block) == expected, what + " gives " + Thing.in(block) + ", not " + expected);
+			check(hand[0] != null && hand[0].getAmount() == 63, what + " doesn't cost one slime ball");
+			checkPistonHalves(block, what);
+		}
+		else {
+			check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+			check(hand[0].getAmount() == 64, what + " costs a slime ball");
+		}
+	}
+
+	private void checkScrape(Thing thing, long rule, BlockFace face) {
+		Block block = setUp(thing);
+		PlayerInteractEvent event = new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, null, block, face);
+		listener.playerInteract(event);
+		flush();
+
+		String what = "scraping " + thing + " on " + face;
+		if (SlimeRuleTable.hasSlime(rule, face)) {
+			Thing expected = SlimeRuleTable.withoutSlime(rule);
+			check(Thing.in(block) == expected, what + " gives " + Thing.in(block) + ", not " + expected);
+			checkDrops(what, block.getRelative(face), Material.SLIME_BALL);
+			checkPistonHalves(block, what);
+		}
+		else {
+			check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+			checkDrops(what, null);
+		}
+	}
+
+	private void checkBreakSlimed(Thing thing, long rule) {
+		if (thing.is(EXTENDED_PISTON)) {
+			// see checkBreakExtendedStickyPiston
+			return;
+		}
+		Block block = setUp(thing);
+		BlockBreakEvent event = new BlockBreakEvent(block, player);
+		listener.playerBreak(event);
+		flush();
+
+		String what = "breaking " + thing;
+		check(event.isCancelled(), what + " doesn't cancel the vanilla drop");
+		check(Thing.in(block) == Thing.AIR, what + " leaves " + Thing.in(block));
+		checkDrops(what, block, SlimeRuleTable.withoutSlime(rule).material, Material.SLIME_BALL);
+	}
+
+	private void checkBreakExtendedStickyPiston(BlockFace facing, boolean fromBase) {
+		Thing base = Thing.in(Material.PISTON_STICKY_BASE, (byte) (BlockFaces.index(facing) | 8));
+		Block baseBlock = setUp(base);
+		Block extension = baseBlock.getRelative(facing);
+		Block broken = fromBase ? baseBlock : extension;
+		BlockBreakEvent event = new BlockBreakEvent(broken, player);
+		listener.playerBreak(event);
+		flush();
+
+		String what = "breaking the " + (fromBase ? "base" : "extension") + " of a sticky piston facing " + facing;
+		check(Thing.in(baseBlock) == Thing.AIR, what + " leaves the base as " + Thing.in(baseBlock));
+		check(Thing.in(extension) == Thing.AIR, what + " leaves the extension as " + Thing.in(extension));
+		checkDrops(what + " (base)", baseBlock, Material.PISTON_BASE);
+		checkDrops(what + " (extension)", extension, Material.SLIME_BALL);
+
+		String air = " " + Material.AIR.getId() + ":0";
+		String basePhysics = baseBlock.getX() + " " + baseBlock.getY() + " " + baseBlock.getZ() + air;
+		String extensionPhysics = extension.getX() + " " + extension.getY() + " " + extension.getZ() + air;
+		check(world.physicsAt.contains(basePhysics) && world.physicsAt.contains(extensionPhysics), what
+				+ " applies physics only at " + world.physicsAt);
+		check(world.physicsAt.size() == 2, what + " applies physics at " + world.physicsAt);
+	}
+
+	private void checkCracking() {
+		Block block = setUp(Thing.STONE_BRICK_BLOCK);
+		hand[0] = new ItemStack(Material.IRON_PICKAXE);
+		listener.playerInteract(new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, hand[0], block,
+				BlockFace.UP));
+		flush();
+		check(Thing.in(block) == Thing.CRACKED_STONE_BRICK_BLOCK, "a pickaxe turns stone bricks into "
+				+ Thing.in(block));
+
+		BlockBreakEvent event = new BlockBreakEvent(block, player);
+		listener.playerBreak(event);
+		flush();
+		check(Thing.in(block) == Thing.AIR, "breaking cracked bricks leaves " + Thing.in(block));
+		checkDrops("breaking cracked bricks", block, Material.SMOOTH_BRICK);
+	}
+
+	/**
+	 * Clicks with an empty hand get recorded, then the trace gets replayed.
+	 */
+	private void checkEmptyHand(Thing thing) {
+		Block block = setUp(thing);
+		hand[0] = null;
+		try {
+			File trace = File.createTempFile("slimeit-trace", ".bin");
+			trace.deleteOnExit();
+			EventRecorder recorder = new EventRecorder(Logger.getLogger("WorldCheck"), trace, 1, 0);
+			listener.setRecorder(recorder);
+			listener.playerInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, block,
+					BlockFace.UP));
+			listener.playerInteract(new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, null, block,
+					BlockFace.UP));
+			recorder.close();
+			flush();
+			check(Thing.in(block) == thing, "clicking " + thing + " with an empty hand changes it to "
+					+ Thing.in(block));
+			checkDrops("clicking " + thing + " with an empty hand", null);
+
+			TraceReplay replay = new TraceReplay();
+			replay.load(trace);
+			String result = replay.replay(1);
+			check(result.contains(" 0 diverged"), "replaying clicks with an empty hand: " + result);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't record a trace", e);
+		}
+	}
+
+	/**
+	 * Puts a dispenser on the face of block, facing it, with two slime balls.
+	 * 
+	 * @return the dispenser or null if something's already there (the other
+	 *         half of a piston)
+	 */
+	private Block placeDispenser(Block block, BlockFace face) {
+		Block dispenser = block.getRelative(face);
+		if (dispenser.getTypeId() != 0) {
+			return null;
+		}
+		world.set(dispenser.getX(), dispenser.getY(), dispenser.getZ(), Material.DISPENSER,
+				BlockFaces.index(face.getOppositeFace()));
+		world.inventory(dispenser.getX(), dispenser.getY(), dispenser.getZ()).addItem(
+				new ItemStack(Material.SLIME_BALL, 2));
+		return dispenser;
+	}
+
+	/**
+	 * @return the event, after the slimer saw it
+	 */
+	private BlockDispenseEvent dispense(Block dispenser, Material item) {
+		BlockDispenseEvent event = new BlockDispenseEvent(dispenser, new ItemStack(item, 1), null);
+		dispensers.dispense(event);
+		return event;
+	}
+
+	/**
+	 * @return the durability of the shears in the dispenser, -1 without
+	 */
+	private int shears(Block dispenser) {
+		Inventory inventory = world.inventory(dispenser.getX(), dispenser.getY(), dispenser.getZ());
+		int slot = inventory.first(Material.SHEARS);
+		return slot < 0 ? -1 : inventory.getItem(slot).getDurability();
+	}
+
+	private int slimeBalls(Block dispenser) {
+		Inventory inventory = world.inventory(dispenser.getX(), dispenser.getY(), dispenser.getZ());
+		return inventory.containsAtLeast(ONE_SLIME_BALL, 2) ? 2 : inventory.containsAtLeast(ONE_SLIME_BALL, 1) ? 1
+				: 0;
+	}
+
+	private void checkDispenserApply(Thing thing, long rule, BlockFace face) {
+		Block block = setUp(thing);
+		Block dispenser = placeDispenser(block, face);
+		if (dispenser == null) {
+			return;
+		}
+		BlockDispenseEvent event = dispense(dispenser, Material.SLIME_BALL);
+		flush();
+
+		String what = "a dispenser adding slime to " + thing + " on " + face;
+		boolean allowed = SlimeRuleTable.canGetSlime(rule, face);
+		check(event.isCancelled() == allowed, what + (allowed ? " dispenses the slime ball" : " doesn't dispense"));
+		if (allowed) {
+			Thing expected = SlimeRuleTable.withSlime(rule);
+			check(Thing.in(block) == expected, what + " gives " + Thing.in(block) + ", not " + expected);
+			check(slimeBalls(dispenser) == 1, what + " leaves " + slimeBalls(dispenser) + " of 2 slime balls");
+			checkPistonHalves(block, what);
+		}
+		else {
+			check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+			check(slimeBalls(dispenser) == 2, what + " takes a slime ball");
+		}
+	}
+
+	private void checkDispenserScrape(Thing thing, long rule, BlockFace face) {
+		Block block = setUp(thing);
+		Block dispenser = placeDispenser(block, face);
+		if (dispenser == null) {
+			return;
+		}
+		world.inventory(dispenser.getX(), dispenser.getY(), dispenser.getZ()).addItem(
+				new ItemStack(Material.SHEARS, 1));
+		BlockDispenseEvent event = dispense(dispenser, Material.SHEARS);
+		flush();
+
+		String what = "a dispenser scraping " + thing + " on " + face;
+		boolean allowed = SlimeRuleTable.hasSlime(rule, face);
+		check(event.isCancelled() == allowed, what + (allowed ? " dispenses the shears" : " doesn't dispense"));
+		if (allowed) {
+			Thing expected = SlimeRuleTable.withoutSlime(rule);
+			check(Thing.in(block) == expected, what + " gives " + Thing.in(block) + ", not " + expected);
+			checkDrops(what, dispenser, Material.SLIME_BALL);
+			checkPistonHalves(block, what);
+			check(shears(dispenser) == 1, what + " leaves the shears at durability " + shears(dispenser));
+		}
+		else {
+			check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+			checkDrops(what, null);
+			check(shears(dispenser) == 0, what + " wears the shears");
+		}
+	}
+
+	/**
+	 * Slimes the block twice, with the trace disabled and enabled.
+	 */
+	private void checkTrace(Thing thing, long rule) {
+		final boolean[] enabled = { false };
+		final List<String> traced = new ArrayList<String>();
+		Block block = setUp(thing);
+		listener.setTrace(new HandlerTrace() {
+			@Override
+			public boolean isEnabled(Handler handler) {
+				return enabled[0];
+			}
+
+			@Override
+			public void begin(Handler handler) {
+				traced.add(handler.name());
+			}
+
+			@Override
+			public void end(String branch, Thing before, Thing after, int blocksTouched) {
+				traced.add(branch + " " + before + " " + after + " " + blocksTouched);
+			}
+
+			@Override
+			public void tickBudgetExceeded(long nanos, long budgetNanos, String culprit, String location) {
+			}
+		});
+		listener.playerInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, hand[0], block,
+				BlockFace.UP));
+		flush();
+		check(traced.isEmpty(), "a disabled trace sees " + traced);
+
+		Thing slimed = SlimeRuleTable.withSlime(rule);
+		world.set(X, Y, Z, thing);
+		enabled[0] = true;
+		listener.playerInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, hand[0], block,
+				BlockFace.UP));
+		flush();
+		String expected = "[INTERACT, APPLY " + thing + " " + slimed + " 1]";
+		check(traced.toString().equals(expected), "sliming " + thing + " traces " + traced + ", not " + expected);
+	}
+
+	/**
+	 * Shears on their last point of durability break after scraping.
+	 */
+	private void checkShearsBreak(Thing thing) {
+		Block block = setUp(thing);
+		Block dispenser = placeDispenser(block, BlockFace.UP);
+		world.inventory(dispenser.getX(), dispenser.getY(), dispenser.getZ()).addItem(
+				new ItemStack(Material.SHEARS, 1, Material.SHEARS.getMaxDurability()));
+		dispense(dispenser, Material.SHEARS);
+		flush();
+		check(Thing.in(block) != thing, "worn out shears in a dispenser don't scrape " + thing);
+		check(shears(dispenser) == -1, "worn out shears in a dispenser don't break, durability "
+				+ shears(dispenser));
+	}
+
+	/**
+	 * A region around the block keeps out a dispenser, also one in a region of
+	 * its own, the block changes once the region is gone.
+	 */
+	private void checkDispenserProtection(Thing thing, long rule) {
+		Block block = setUp(thing);
+		Block dispenser = placeDispenser(block, BlockFace.UP);
+		MemoryProtectionProvider provider = new MemoryProtectionProvider();
+		MemoryProtectionProvider.Region around = provider.protect(block.getWorld(), new int[] { X, Y, Z },
+				new int[] { X, Y, Z });
+		ProtectionCache protection = new ProtectionCache(10, 16);
+		protection.setProvider(provider);
+		dispensers.setProtection(protection);
+		boolean cancelled = dispense(dispenser, Material.SLIME_BALL).isCancelled();
+		flush();
+		check(!cancelled && Thing.in(block) == thing, "a dispenser outside a region around " + thing
+				+ " changes it to " + Thing.in(block));
+
+		provider.protect(block.getWorld(), new int[] { X, Y + 1, Z }, new int[] { X, Y + 1, Z });
+		cancelled = dispense(dispenser, Material.SLIME_BALL).isCancelled();
+		flush();
+		check(!cancelled && Thing.in(block) == thing, "a dispenser in another region than " + thing
+				+ " changes it to " + Thing.in(block));
+
+		provider.remove(around);
+		cancelled = dispense(dispenser, Material.SLIME_BALL).isCancelled();
+		flush();
+		check(cancelled && Thing.in(block) == SlimeRuleTable.withSlime(rule), "a dispenser in a region next to "
+				+ thing + " changes it to " + Thing.in(block));
+	}
+
+	/**
+	 * Switching providers back and forth leaves one listener on the current
+	 * one and none on the other.
+	 */
+	private void checkProviderSwap() {
+		MemoryProtectionProvider first = new MemoryProtectionProvider();
+		MemoryProtectionProvider second = new MemoryProtectionProvider();
+		ProtectionCache protection = new ProtectionCache(10, 16);
+		protection.setProvider(first);
+		protection.setProvider(first);
+		protection.setProvider(second);
+		protection.setProvider(first);
+		check(first.listeners() == 1 && second.listeners() == 0, "switching providers leaves "
+				+ first.listeners() + " and " + second.listeners() + " listeners");
+		protection.setProvider(null);
+		check(first.listeners() == 0, "removing the provider leaves " + first.listeners() + " listeners");
+	}
+
+	/**
+	 * Two dispensers on one block change it once, a row of blocks in one
+	 * chunk only gets as many changes as the cap allows.
+	 */
+	private void checkDispenserBatch(Thing thing, long rule) {
+		Block block = setUp(thing);
+		Block below = placeDispenser(block, BlockFace.DOWN);
+		Block above = placeDispenser(block, BlockFace.UP);
+		boolean bothCancelled = dispense(below, Material.SLIME_BALL).isCancelled();
+		bothCancelled &= dispense(above, Material.SLIME_BALL).isCancelled();
+		check(bothCancelled, "two dispensers on " + thing + " don't both get cancelled");
+		flush();
+		check(Thing.in(block) == SlimeRuleTable.withSlime(rule), "two dispensers turn " + thing + " into "
+				+ Thing.in(block));
+		int used = 4 - slimeBalls(below) - slimeBalls(above);
+		check(used == 1, "two dispensers on one block use " + used + " slime balls");
+
+		setUp(thing);
+		int count = DISPENSERS_PER_CHUNK + 2;
+		Block[] row = new Block[count];
+		for (int i = 0; i < count; i++) {
+			world.set(i, Y, Z, thing);
+			row[i] = world.block(i, Y, Z);
+			dispense(placeDispenser(row[i], BlockFace.UP), Material.SLIME_BALL);
+		}
+		flush();
+		int changed = 0;
+		for (Block target : row) {
+			if (Thing.in(target) == SlimeRuleTable.withSlime(rule)) {
+				changed++;
+			}
+		}
+		check(changed == DISPENSERS_PER_CHUNK, count + " dispensers in one chunk change " + changed
+				+ " blocks, not " + DISPENSERS_PER_CHUNK);
+	}
+
+	/**
+	 * Starts the face store on the first call, it never saves anything since
+	 * no chunk unloads.
+	 */
+	private void useFaces() {
+		if (faces != null) {
+			return;
+		}
+		try {
+			File directory = Files.createTempDirectory("slimeit-faces").toFile();
+			directory.deleteOnExit();
+			faces = new FaceSlimeStore(Logger.getLogger("WorldCheck"), directory);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't create a directory for the face store", e);
+		}
+	}
+
+	/**
+	 * Slime on one face of a block without a rule, twice, then scraped off.
+	 */
+	private void checkFaces(Thing thing, BlockFace face) {
+		useFaces();
+		Block block = setUp(thing);
+		String what = "adding slime to " + thing + " on " + face;
+		for (int i = 0; i < 2; i++) {
+			PlayerInteractEvent event = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, hand[0], block,
+					face);
+			listener.playerInteract(event);
+			flush();
+			check(event.isCancelled() == (i == 0), what + (i == 0 ? " doesn't cancel" : " again cancels")
+					+ " the click");
+		}
+		check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+		check(faces.faces(block) == BlockFaces.bit(face), what + " leaves the faces " + faces.faces(block));
+		check(hand[0].getAmount() == 63, what + " twice doesn't cost exactly one slime ball");
+
+		what = "scraping " + thing + " on " + face;
+		BlockFace other = BlockFaces.ALL[(BlockFaces.index(face) + 1) % BlockFaces.ALL.length];
+		listener.playerInteract(new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, null, block, other));
+		flush();
+		check(faces.faces(block) == BlockFaces.bit(face), what + " scrapes " + other + " instead");
+		checkDrops(what + " on " + other, null);
+		listener.playerInteract(new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, null, block, face));
+		flush();
+		check(faces.faces(block) == 0, what + " leaves the faces " + faces.faces(block));
+		check(Thing.in(block) == thing, what + " changes it to " + Thing.in(block));
+		checkDrops(what, block.getRelative(face), Material.SLIME_BALL);
+	}
+
+	/**
+	 * Passes the event through both break handlers like the server would, the
+	 * second one only sees it if nobody cancelled it.
+	 */
+	private BlockBreakEvent breakBlock(Block block) {
+		BlockBreakEvent event = new BlockBreakEvent(block, player);
+		listener.playerBreak(event);
+		if (!event.isCancelled()) {
+			listener.blockBroken(event);
+		}
+		flush();
+		return event;
+	}
+
+	/**
+	 * Breaking a block with slime on some faces drops the block like vanilla
+	 * plus one slime ball per face, unless the player may not break it.
+	 */
+	private void checkBreakFaces(Thing thing) {
+		useFaces();
+		Block block = setUp(thing);
+		faces.add(block, BlockFace.UP);
+		faces.add(block, BlockFace.NORTH);
+		faces.add(block, BlockFace.WEST);
+		BlockBreakEvent event = new BlockBreakEvent(block, player);
+		listener.playerBreak(event);
+		String what = "breaking " + thing + " with three slimed faces";
+		check(faces.faces(block) != 0, what + " clears the faces before the break went through");
+		listener.blockBroken(event);
+		flush();
+
+		check(!event.isCancelled(), what + " cancels the vanilla drop");
+		check(faces.faces(block) == 0, what + " leaves the faces " + faces.faces(block));
+		checkDrops(what, block, Material.SLIME_BALL, Material.SLIME_BALL, Material.SLIME_BALL);
+
+		block = setUp(thing);
+		faces.add(block, BlockFace.UP);
+		listener.setProtection(denyAll());
+		event = breakBlock(block);
+		what = "breaking a protected " + thing + " with a slimed face";
+		check(event.isCancelled(), what + " isn't cancelled");
+		check(faces.faces(block) == BlockFaces.bit(BlockFace.UP), what + " leaves the faces " + faces.faces(block));
+		checkDrops(what, null);
+	}
+
+	/**
+	 * Both halves of an extended sticky piston get broken by the listener,
+	 * their slimed faces still drop.
+	 */
+	private void checkBreakFacesOfPiston() {
+		useFaces();
+		Block base = setUp(Thing.in(Material.PISTON_STICKY_BASE, (byte) (BlockFaces.index(BlockFace.UP) | 8)));
+		Block extension = base.getRelative(BlockFace.UP);
+		faces.add(base, BlockFace.NORTH);
+		faces.add(extension, BlockFace.NORTH);
+		breakBlock(base);
+
+		String what = "breaking an extended sticky piston with slimed faces";
+		check(faces.faces(base) == 0, what + " leaves the faces " + faces.faces(base) + " on the base");
+		check(faces.faces(extension) == 0, what + " leaves the faces " + faces.faces(extension)
+				+ " on the extension");
+		checkDrops(what + " (base)", base, Material.PISTON_BASE, Material.SLIME_BALL);
+		checkDrops(what + " (extension)", extension, Material.SLIME_BALL, Material.SLIME_BALL);
+	}
+
+	/**
+	 * A piston pushes a slimed block and pulls it back, then it explodes.
+	 */
+	private void checkFacesMoved(Thing thing) {
+		useFaces();
+		Block block = setUp(thing);
+		faces.add(block, BlockFace.UP);
+		world.set(X - 1, Y, Z, Material.PISTON_STICKY_BASE, BlockFaces.index(BlockFace.EAST));
+		Block piston = world.block(X - 1, Y, Z);
+		Block pushed = block.getRelative(BlockFace.EAST);
+		// left behind by a block that's gone
+		faces.add(pushed, BlockFace.DOWN);
+
+		faces.pistonExtend(new BlockPistonExtendEvent(piston, Collections.singletonList(block), BlockFace.EAST));
+		check(faces.faces(block) == 0, "a pushed block leaves the faces " + faces.faces(block) + " behind");
+		check(faces.faces(pushed) == BlockFaces.bit(BlockFace.UP), "a pushed block arrives with the faces "
+				+ faces.faces(pushed));
+
+		faces.pistonRetract(new BlockPistonRetractEvent(piston, Collections.singletonList(pushed), BlockFace.WEST));
+		check(faces.faces(pushed) == 0, "a pulled block leaves the faces " + faces.faces(pushed) + " behind");
+		check(faces.faces(block) == BlockFaces.bit(BlockFace.UP), "a pulled block arrives with the faces "
+				+ faces.faces(block));
+
+		faces.entityExplode(new EntityExplodeEvent(null, block.getLocation(), Collections.singletonList(block), 1));
+		flush();
+		check(faces.faces(block) == 0, "an exploded block leaves the faces " + faces.faces(block));
+		checkDrops("an exploded block with a slimed face", block, Material.SLIME_BALL);
+	}
+
+	/**
+	 * Slime added to a face and scraped off again, each undone right away.
+	 */
+	private void checkUndoFaces(Thing thing) {
+		useFaces();
+		Block block = setUp(thing);
+		world.makeCurrent();
+		UndoHistory undo = new UndoHistory(16, 16);
+		undo.setFaces(faces);
+		listener.setUndo(undo);
+		File directory;
+		ChangeJournal journal;
+		try {
+			directory = Files.createTempDirectory("slimeit-journal").toFile();
+			journal = new ChangeJournal(Logger.getLogger("WorldCheck"), directory, 64, 1);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't create a journal", e);
+		}
+		listener.setJournal(journal);
+		undo.setJournal(journal);
+
+		listener.playerInteract(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, hand[0], block,
+				BlockFace.UP));
+		flush();
+		check(undo.size(player) == 1, "adding slime to a face leaves " + undo.size(player) + " edits to undo");
+		undo.undo(player, 1);
+		undo.run();
+		check(faces.faces(block) == 0, "undoing slime on a face leaves the faces " + faces.faces(block));
+		check(player.getInventory().containsAtLeast(ONE_SLIME_BALL, 1),
+				"undoing slime on a face doesn't give the slime ball back");
+
+		faces.add(block, BlockFace.UP);
+		listener.playerInteract(new PlayerInteractEvent(player, Action.LEFT_CLICK_BLOCK, null, block, BlockFace.UP));
+		flush();
+		check(undo.size(player) == 1, "scraping a face leaves " + undo.size(player) + " edits to undo");
+		undo.undo(player, 1);
+		undo.run();
+		check(faces.faces(block) == BlockFaces.bit(BlockFace.UP), "undoing scraping a face leaves the faces "
+				+ faces.faces(block));
+		check(!player.getInventory().containsAtLeast(ONE_SLIME_BALL, 1),
+				"undoing scraping a face doesn't take the slime ball back");
+
+		journal.close();
+		final int[] faceRecords = new int[1];
+		long records;
+		try {
+			records = new JournalReader(directory).scan(Long.MIN_VALUE, Long.MAX_VALUE, JournalReader.ANY_WORLD,
+					Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+					new JournalReader.Visitor() {
+						@Override
+						public void visit(long time, int player, int world, int x, int y, int z, int before,
+								int after) {
+							if ((before & after & ChangeJournal.FACES) != 0) {
+								faceRecords[0]++;
+							}
+						}
+					});
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't read the journal", e);
+		}
+		check(records == 4 && faceRecords[0] == 4, "two face edits and their undos make " + records
+				+ " journal records, " + faceRecords[0] + " of them face records");
+	}
+
+	private static ProtectionCache denyAll() {
+		ProtectionCache protection = new ProtectionCache(10, 16);
+		protection.setProvider(new ProtectionProvider() {
+			@Override
+			public Decision check(Player player, Block block, Action action) {
+				return Decision.DENY;
+			}
+
+			@Override
+			public void addChangeListener(ChangeListener listener) {
+			}
+
+			@Override
+			public void removeChangeListener(ChangeListener listener) {
+			}
+		});
+		return protection;
+	}
+
+	/**
+	 * The player stands at 0 64 0, the renderer has a radius of 8, draws every
+	 * other tick and at most 2 particles per pass.
+	 */
+	private void checkFaceParticles(Thing thing) {
+		useFaces();
+		setUp(thing);
+		FaceRenderer renderer = new FaceRenderer(faces, 8, 2, 20);
+		List<Player> players = Collections.singletonList(player);
+		for (int tick = 0; tick < 4; tick++) {
+			renderer.render(players);
+		}
+		check(world.effects == 0, "particles without slimed faces: " + world.effects);
+		check(renderer.getSkipped() == 1, "a player without slimed faces nearby gets queried "
+				+ (2 - renderer.getSkipped()) + " times");
+
+		// west faces the player, east doesn't, the last one is out of range
+		world.set(4, 64, 0, thing);
+		faces.add(world.block(4, 64, 0), BlockFace.WEST);
+		faces.add(world.block(4, 64, 0), BlockFace.EAST);
+		world.set(12, 64, 0, thing);
+		faces.add(world.block(12, 64, 0), BlockFace.WEST);
+		renderer.render(players);
+		renderer.render(players);
+		check(world.effects == 1, "one visible face shows " + world.effects + " particles");
+		for (VoxelWorld.Played played : world.played) {
+			check(played.location.getX() < 4, "particle for the west face at " + played.location);
+		}
+
+		world.effects = 0;
+		for (int z = -2; z <= 2; z++) {
+			world.set(-3, 64, z, thing);
+			faces.add(world.block(-3, 64, z), BlockFace.EAST);
+		}
+		renderer.render(players);
+		renderer.render(players);
+		check(world.effects == 2, "the budget of 2 particles per pass allows " + world.effects);
+		world.effects = 0;
+		for (int pass = 0; pass < 3; pass++) {
+			renderer.render(players);
+			renderer.render(players);
+		}
+		check(renderer.getThrottled() > 0, "6 visible faces with a budget of 2 aren't throttled");
+		check(world.effects == 6, "6 visible faces show " + world.effects + " particles in 3 passes");
+	}
+
+	/**
+	 * Both halves of an extended piston have to agree on being sticky.
+	 */
+	private void checkPistonHalves(Block block, String what) {
+		Thing thing = Thing.in(block);
+		if (thing.isnt(EXTENDED_PISTON)) {
+			return;
+		}
+		Thing base = Thing.in(BukkitPlus.getPistonBase(block));
+		Thing extension = Thing.in(BukkitPlus.getPistonExtension(block));
+		check(base.is(STICKY_PISTON) == extension.is(STICKY_PISTON), what + " leaves " + base + " with "
+				+ extension);
+	}
+
+	/**
+	 * @param at
+	 *            where the drops are expected, null to expect none at all
+	 */
+	private void checkDrops(String what, Block at, Material... expected) {
+		if (at == null) {
+			check(world.dropped.isEmpty(), what + " drops " + world.dropped);
+			return;
+		}
+		List<Material> found = new ArrayList<Material>();
+		for (VoxelWorld.Drop drop : world.dropped) {
+			if (drop.location.getBlockX() == at.getX() && drop.location.getBlockY() == at.getY()
+					&& drop.location.getBlockZ() == at.getZ()) {
+				for (int i = 0; i < drop.amount; i++) {
+					found.add(drop.type);
+				}
+			}
+		}
+		for (Material material : expected) {
+			check(found.remove(material), what + " doesn't drop " + material + " at " + at.getX() + " "
+					+ at.getY() + " " + at.getZ() + ", all drops: " + world.dropped);
+		}
+		check(found.isEmpty(), what + " also drops " + found);
+	}
+
+	private void check(boolean ok, String failure) {
+		checks++;
+		if (!ok) {
+			failures.add(failure);
+		}
+	}
+}
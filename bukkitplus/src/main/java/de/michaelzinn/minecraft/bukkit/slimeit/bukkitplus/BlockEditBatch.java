@@ -0,0 +1,176 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+
+/**
+ * Changes several blocks as one unit, e.g. both parts of a piston.
+ * 
+ * Queue the changes with set() and apply them with commit(). All writes but
+ * the last one happen without physics, so no physics (or lighting) update
+ * ever sees a half converted structure. The last write applies physics once
+ * the whole structure is in its final state. Bukkit has no way to notify the
+ * neighbours of a block without changing it, so the other blocks then get
+ * their old state back without physics and their new state again with
+ * physics, one at a time.
+ * 
+ * The original state of every block is recorded, if a write fails all blocks
+ * are restored.
+ * 
+ * Not thread safe, use it on the main thread like any other block change.
+ * 
+ */
+public class BlockEditBatch {
+
+	private final List<Edit> edits = new ArrayList<Edit>(2);
+
+	public BlockEditBatch set(Block block, Thing thing) {
+		return set(block, thing.material, thing.data);
+	}
+
+	/**
+	 * Queues a change. Queueing the same block again replaces the earlier
+	 * change.
+	 * 
+	 * @param block
+	 * @param material
+	 * @param data
+	 * @return this, for chaining
+	 */
+	public BlockEditBatch set(Block block, Material material, byte data) {
+		return set(block, -1, material.getId(), data);
+	}
+
+	/**
+	 * Like {@link #set(Block, Thing)}, for a block whose state the caller
+	 * already read, so it doesn't get read again.
+	 * 
+	 * @param block
+	 * @param oldState
+	 *            the current state of the block, see BlockStates
+	 * @param thing
+	 * @return this, for chaining
+	 */
+	public BlockEditBatch set(Block block, int oldState, Thing thing) {
+		return set(block, oldState, thing.material.getId(), thing.data);
+	}
+
+	/**
+	 * @param oldState
+	 *            the current state of the block, -1 to read it
+	 */
+	private BlockEditBatch set(Block block, int oldState, int typeId, byte data) {
+		for (Edit edit : edits) {
+			if (edit.isAt(block)) {
+				edit.typeId = typeId;
+				edit.data = data;
+				return this;
+			}
+		}
+		edits.add(new Edit(block, oldState < 0 ? BlockStates.of(block) : oldState, typeId, data));
+		return this;
+	}
+
+	/**
+	 * @return the number of queued blocks
+	 */
+	public int size() {
+		return edits.size();
+	}
+
+	/**
+	 * Applies all changes.
+	 * 
+	 * @return true if all blocks got changed, false if something failed and
+	 *         everything got rolled back
+	 */
+	public boolean commit() {
+		int last = edits.size() - 1;
+		int written = 0;
+		try {
+			for (; written <= last; written++) {
+				Edit edit = edits.get(written);
+				// false if nothing changed, only then is there anything to check
+				if (!edit.block.setTypeIdAndData(edit.typeId, edit.data, written == last) && !edit.isApplied()) {
+					break;
+				}
+			}
+		} catch (RuntimeException e) {
+			// handled by the rollback below
+		}
+
+		if (written > last) {
+			applyPhysics(last);
+			edits.clear();
+			return true;
+		}
+
+		rollback(written);
+		edits.clear();
+		return false;
+	}
+
+	/**
+	 * Rewrites the blocks before index with physics, so their neighbours see
+	 * the finished structure. The change itself already worked, so this keeps
+	 * going if a block can't be written.
+	 */
+	private void applyPhysics(int index) {
+		for (int i = 0; i < index; i++) {
+			Edit edit = edits.get(i);
+			if (edit.typeId == edit.oldTypeId && edit.data == edit.oldData) {
+				continue;
+			}
+			try {
+				edit.block.setTypeIdAndData(edit.oldTypeId, edit.oldData, false);
+				edit.block.setTypeIdAndData(edit.typeId, edit.data, true);
+			} catch (RuntimeException e) {
+				// keep notifying the others
+			}
+		}
+	}
+
+	/**
+	 * Restores the original state of all blocks up to (including) index, in
+	 * reverse order and without physics.
+	 */
+	private void rollback(int index) {
+		for (int i = Math.min(index, edits.size() - 1); i >= 0; i--) {
+			Edit edit = edits.get(i);
+			try {
+				edit.block.setTypeIdAndData(edit.oldTypeId, edit.oldData, false);
+			} catch (RuntimeException e) {
+				// keep restoring the others
+			}
+		}
+	}
+
+	private static class Edit {
+		final Block block;
+		final int oldTypeId;
+		final byte oldData;
+
+		int typeId;
+		byte data;
+
+		Edit(Block block, int oldState, int typeId, byte data) {
+			this.block = block;
+			this.oldTypeId = BlockStates.typeId(oldState);
+			this.oldData = BlockStates.data(oldState);
+			this.typeId = typeId;
+			this.data = data;
+		}
+
+		boolean isAt(Block other) {
+			return block.getX() == other.getX() && block.getY() == other.getY() && block.getZ() == other.getZ()
+					&& block.getWorld().equals(other.getWorld());
+		}
+
+		boolean isApplied() {
+			return block.getTypeId() == typeId && block.getData() == data;
+		}
+	}
+}
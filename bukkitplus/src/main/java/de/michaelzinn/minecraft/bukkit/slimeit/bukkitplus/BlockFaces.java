@@ -0,0 +1,83 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import org.bukkit.block.BlockFace;
+
+/**
+ * Helpers to store sets of the six axis aligned block faces in an int instead
+ * of a Set<BlockFace>.
+ * 
+ * The bit of a face is 1 << its Minecraft orientation index (down, up, north,
+ * south, west, east), which is also what piston data values use.
+ * 
+ */
+public final class BlockFaces {
+
+	/**
+	 * The six axis aligned faces, ordered by their orientation index.
+	 */
+	public static final BlockFace[] ALL = {
+			BlockFace.DOWN,
+			BlockFace.UP,
+			BlockFace.NORTH,
+			BlockFace.SOUTH,
+			BlockFace.WEST,
+			BlockFace.EAST
+	};
+
+	/**
+	 * Mask that contains all six faces.
+	 */
+	public static final int ALL_MASK = 0x3F;
+
+	private BlockFaces() {
+	}
+
+	/**
+	 * @param face
+	 * @return the orientation index (0-5) or -1 for anything that isn't one of
+	 *         the six axis aligned faces
+	 */
+	public static int index(BlockFace face) {
+		if (face == null) {
+			return -1;
+		}
+		switch (face) {
+		case DOWN:
+			return 0;
+		case UP:
+			return 1;
+		case NORTH:
+			return 2;
+		case SOUTH:
+			return 3;
+		case WEST:
+			return 4;
+		case EAST:
+			return 5;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * @param face
+	 * @return the bit of that face or 0 if it isn't one of the six axis aligned
+	 *         faces
+	 */
+	public static int bit(BlockFace face) {
+		int index = index(face);
+		return index < 0 ? 0 : 1 << index;
+	}
+
+	public static int mask(BlockFace... faces) {
+		int mask = 0;
+		for (BlockFace face : faces) {
+			mask |= bit(face);
+		}
+		return mask;
+	}
+
+	public static boolean contains(int mask, BlockFace face) {
+		return (mask & bit(face)) != 0;
+	}
+}
@@ -0,0 +1,138 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import java.util.Arrays;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.Block;
+
+/**
+ * Helpers to read the state of a block (material id and data value) into one
+ * int instead of asking the block for its type and data again and again.
+ * 
+ * The state is typeId << 4 | data, which is the same number as Thing.id, so
+ * Thing.byId(state) turns it into a Thing and SlimeRuleTable.rule(int) takes
+ * it directly. Read the state once per block and event, then hand it to
+ * everything that needs to know what the block was.
+ * 
+ * Every Block getter goes through the world (and on a real server through the
+ * chunk), while a state is just a number that can be compared, stored in
+ * arrays and passed around for free.
+ * 
+ */
+public final class BlockStates {
+
+	/**
+	 * The state of air.
+	 */
+	public static final int AIR = 0;
+
+	private static final int SECTION_HEIGHT = 16;
+
+	private BlockStates() {
+	}
+
+	/**
+	 * Reads the type and data of the block, two block reads.
+	 * 
+	 * @param block
+	 * @return the packed state
+	 */
+	public static int of(Block block) {
+		return of(block.getTypeId(), block.getData());
+	}
+
+	/**
+	 * @param typeId
+	 * @param data
+	 *            only the lower four bits are used
+	 * @return the packed state
+	 */
+	public static int of(int typeId, int data) {
+		return typeId << 4 | data & 0xF;
+	}
+
+	/**
+	 * @param state
+	 * @return the material id
+	 */
+	public static int typeId(int state) {
+		return state >>> 4;
+	}
+
+	/**
+	 * @param state
+	 * @return the data value
+	 */
+	public static byte data(int state) {
+		return (byte) (state & 0xF);
+	}
+
+	/**
+	 * @param state
+	 * @return the Thing with that state, null for material ids Bukkit doesn't
+	 *         know
+	 */
+	public static Thing thing(int state) {
+		return Thing.byId(state);
+	}
+
+	/**
+	 * Reads the states of a cuboid within the chunk into states, ordered by y,
+	 * then z, then x (x changes fastest), so the state of x y z ends up at
+	 * ((y - minY) * (maxZ - minZ) + z - minZ) * (maxX - minX) + x - minX.
+	 * 
+	 * Empty sections are filled with air without reading them. Only touches
+	 * the snapshot, so it's safe off the main thread.
+	 * 
+	 * @param snapshot
+	 * @param minX
+	 *            chunk local, inclusive
+	 * @param minY
+	 *            inclusive
+	 * @param minZ
+	 *            chunk local, inclusive
+	 * @param maxX
+	 *            chunk local, exclusive
+	 * @param maxY
+	 *            exclusive
+	 * @param maxZ
+	 *            chunk local, exclusive
+	 * @param states
+	 *            gets the states, has to be at least as big as the cuboid
+	 * @return the number of states written
+	 */
+	public static int read(ChunkSnapshot snapshot, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+			int[] states) {
+		if (minX < 0 || minZ < 0 || maxX > 16 || maxZ > 16 || minY < 0 || minX > maxX || minY > maxY
+				|| minZ > maxZ) {
+			throw new IllegalArgumentException("Not a cuboid within a chunk: " + minX + " " + minY + " " + minZ
+					+ " to " + maxX + " " + maxY + " " + maxZ);
+		}
+		int sizeX = maxX - minX;
+		int layer = sizeX * (maxZ - minZ);
+		int size = layer * (maxY - minY);
+		if (states.length < size) {
+			throw new IllegalArgumentException("Need room for " + size + " states, got " + states.length);
+		}
+
+		int i = 0;
+		for (int y = minY; y < maxY;) {
+			int sectionEnd = Math.min(maxY, (y / SECTION_HEIGHT + 1) * SECTION_HEIGHT);
+			if (snapshot.isSectionEmpty(y / SECTION_HEIGHT)) {
+				int end = i + (sectionEnd - y) * layer;
+				Arrays.fill(states, i, end, AIR);
+				i = end;
+				y = sectionEnd;
+				continue;
+			}
+			for (; y < sectionEnd; y++) {
+				for (int z = minZ; z < maxZ; z++) {
+					for (int x = minX; x < maxX; x++) {
+						states[i++] = of(snapshot.getBlockTypeId(x, y, z), snapshot.getBlockData(x, y, z));
+					}
+				}
+			}
+		}
+		return size;
+	}
+}
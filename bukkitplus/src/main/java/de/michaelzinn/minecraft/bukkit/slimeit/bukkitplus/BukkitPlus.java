@@ -0,0 +1,194 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+
+/**
+ * The beginning of the BukkitPlus library.
+ * 
+ * Eventually, this should me moved out of the SlimeIt plugin into its own
+ * library.
+ * 
+ * Use this as a static import to get convenient access to the methods.
+ * 
+ * @author Michael Zinn (@RedNifre)
+ * 
+ */
+public class BukkitPlus {
+
+	private static final TagQuery EXTENDED_PISTON = TagQuery.of(EXTENDED, PISTON);
+	private static final TagQuery STICKY_PISTON = TagQuery.of(STICKY, PISTON);
+	private static final TagQuery PISTON_BASE = TagQuery.of(PISTON, BASE);
+	private static final TagQuery ANY_PISTON = TagQuery.of(PISTON);
+	private static final TagQuery ANY_EXTENSION = TagQuery.of(EXTENSION);
+
+	/**
+	 * Replaces a block in a smart way: Tries to preserve orientation, if
+	 * possible. When replacing a piston with another piston, tries to preserve
+	 * extension and orientation. When replacing any part of an extended piston
+	 * with something other than a piston, it replaces the base with newMaterial
+	 * and the extension with air.
+	 * 
+	 * @param block
+	 * @param newMaterial
+	 */
+	public static boolean replace(Block block, Material newMaterial) {
+		// TODO later, this should attempt to replace while keeping the
+		// orientation.
+		return replace(block, Thing.in(newMaterial, (byte) 0));
+	}
+
+	/**
+	 * Like {@link #replace(Block, Material)}, but with a specific thing.
+	 * 
+	 * @param block
+	 * @param newBlock
+	 * @return false if the change failed and got rolled back
+	 */
+	public static boolean replace(Block block, Thing newBlock) {
+		BlockEditBatch batch = new BlockEditBatch();
+		replace(batch, block, newBlock);
+		return batch.commit();
+	}
+
+	/**
+	 * Like {@link #replace(Block, Thing)}, for a block whose state the caller
+	 * already read (see BlockStates).
+	 * 
+	 * @param block
+	 * @param oldState
+	 *            the current state of the block
+	 * @param newBlock
+	 * @return false if the change failed and got rolled back
+	 */
+	public static boolean replace(Block block, int oldState, Thing newBlock) {
+		BlockEditBatch batch = new BlockEditBatch();
+		replace(batch, block, oldState, newBlock);
+		return batch.commit();
+	}
+
+	/**
+	 * Queues the changes {@link #replace(Block, Thing)} would make, so they can
+	 * be committed together with other changes. For pistons, the base is
+	 * queued last so it gets the physics update.
+	 * 
+	 * @param batch
+	 * @param block
+	 * @param newBlock
+	 */
+	public static void replace(BlockEditBatch batch, Block block, Thing newBlock) {
+		replace(batch, block, BlockStates.of(block), newBlock);
+	}
+
+	/**
+	 * Like {@link #replace(BlockEditBatch, Block, Thing)}, for a block whose
+	 * state the caller already read. The block isn't read again, the other
+	 * part of an extended piston is read once.
+	 * 
+	 * @param batch
+	 * @param block
+	 * @param oldState
+	 *            the current state of the block
+	 * @param newBlock
+	 */
+	public static void replace(BlockEditBatch batch, Block block, int oldState, Thing newBlock) {
+		Thing oldBlock = BlockStates.thing(oldState);
+
+		if (oldBlock != null && oldBlock.is(ANY_PISTON)) {
+			if (oldBlock.is(EXTENDED_PISTON)) {
+				// only the other part needs to be read
+				boolean isBase = oldBlock.is(PISTON_BASE);
+				Block other = block.getRelative(isBase ? oldBlock.front : oldBlock.back);
+				int otherState = BlockStates.of(other);
+				Block base = isBase ? block : other;
+				Block extension = isBase ? other : block;
+				int baseState = isBase ? oldState : otherState;
+				int extensionState = isBase ? otherState : oldState;
+
+				if (newBlock.is(ANY_PISTON)) {
+					// replace keeping orientation and extension state
+					// data bit 8 of the extension is the sticky flag
+					boolean sticky = newBlock.is(STICKY_PISTON);
+					Material material = sticky ? Material.PISTON_STICKY_BASE : Material.PISTON_BASE;
+					batch.set(extension, extensionState, Thing.byId(sticky ? extensionState | 8 : extensionState & ~8));
+					batch.set(base, baseState, Thing.in(material, BlockStates.data(baseState)));
+				}
+				else {
+					// remove the extension
+					batch.set(extension, extensionState, Thing.AIR);
+					batch.set(base, baseState, Thing.in(newBlock.material, (byte) 0)); // TODO preserve
+																						// orientation?
+				}
+			}
+			else if (newBlock.is(ANY_PISTON)) {
+				Material material = newBlock.is(STICKY_PISTON) ? Material.PISTON_STICKY_BASE : Material.PISTON_BASE;
+				batch.set(block, oldState, Thing.in(material, BlockStates.data(oldState)));
+			}
+			else {
+				batch.set(block, oldState, Thing.in(newBlock.material, (byte) 0));
+			}
+		} else {
+			// TODO needs to be well defined for all rotatable blocks
+			// just copying the data won't cut it.
+			batch.set(block, oldState, newBlock);
+		}
+	}
+
+	/**
+	 * 
+	 * @param pistonPart
+	 * @return the extension or null if there's no extension
+	 */
+	public static Block getPistonExtension(Block pistonPart) {
+		return getPistonExtension(pistonPart, Thing.in(pistonPart));
+	}
+
+	/**
+	 * Like {@link #getPistonExtension(Block)}, without reading the block.
+	 * 
+	 * @param pistonPart
+	 * @param thing
+	 *            what pistonPart is
+	 * @return the extension or null if there's no extension
+	 */
+	public static Block getPistonExtension(Block pistonPart, Thing thing) {
+		if (thing.isnt(EXTENDED_PISTON)) {
+			return null;
+		}
+
+		if (thing.is(ANY_EXTENSION)) {
+			return pistonPart;
+		}
+
+		// so it's an extended base
+		return pistonPart.getRelative(thing.front);
+	}
+
+	public static Block getPistonBase(Block block) {
+		return getPistonBase(block, Thing.in(block));
+	}
+
+	/**
+	 * Like {@link #getPistonBase(Block)}, without reading the block.
+	 * 
+	 * @param block
+	 * @param thing
+	 *            what block is
+	 * @return the base or null if it's not a piston
+	 */
+	public static Block getPistonBase(Block block, Thing thing) {
+		if (thing.isnt(ANY_PISTON)) {
+			return null;
+		}
+
+		if (thing.is(PISTON_BASE)) {
+			return block;
+		}
+
+		// so it's an extension...
+		return block.getRelative(thing.back);
+	}
+
+}
@@ -0,0 +1,42 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag;
+
+/**
+ * A set of tags compiled into a bitmask. Create these once (as constants) and
+ * pass them to {@link Thing#is(TagQuery)}, which then is a single AND and
+ * compare.
+ * 
+ * Example: <code>TagQuery STICKY_PISTON = TagQuery.of(STICKY, PISTON);</code>
+ * 
+ */
+public final class TagQuery {
+
+	final long mask;
+
+	private TagQuery(long mask) {
+		this.mask = mask;
+	}
+
+	public static TagQuery of(Tag... tags) {
+		return new TagQuery(Tag.mask(tags));
+	}
+
+	/**
+	 * @param tagMask
+	 * @return true if tagMask contains all tags of this query
+	 */
+	public boolean matches(long tagMask) {
+		return (tagMask & mask) == mask;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof TagQuery && ((TagQuery) obj).mask == mask;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (mask ^ (mask >>> 32));
+	}
+}
@@ -0,0 +1,432 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.material.MaterialData;
+
+/**
+ * The type of a block is defined both by its material (e.g. stone brick) AND
+ * the data value (e.g. differentiating between normal, mossy and cracked). This
+ * class combines these two into one which simplifies things like using material
+ * + data as a key in a Map.
+ * 
+ * Useful to express things like "mossy cobblestone wall"
+ * 
+ * This is meant to be part of a BukkitPlus library later on (something that
+ * simplifies Bukkit), so don't add anything specific about SlimeIt here.
+ * 
+ * All Things (one per material id and data value 0-15) are created once when
+ * the class is loaded and stored in a flat array, so looking one up is a
+ * single array access. The tagged ones come from src/main/things/things.txt,
+ * which gets turned into ThingDefinitions (with precomputed tag masks) at
+ * build time, everything else is UNDEFINED. The registry never changes afterwards, so Thing.in()
+ * may be called from any thread, e.g. async chunk scanners.
+ * 
+ * @author Michael Zinn (@RedNifre)
+ * 
+ */
+public class Thing {
+
+	/**
+	 * Number of data values per material that get their own Thing. Block data
+	 * is a nibble, so 16.
+	 */
+	public static final int DATA_VALUES = 16;
+
+	private static final Thing[] definitions = new Thing[(maxMaterialId() + 1) * DATA_VALUES];
+	private static final Map<String, Thing> names = new HashMap<String, Thing>();
+
+	public final Material material;
+	public final byte data;
+
+	/**
+	 * Dense index of this Thing in the registry, (material id * 16) + data.
+	 * Useful as an index into primitive lookup tables.
+	 */
+	public final int id;
+
+	public enum Tag {
+		// Special
+		UNDEFINED, // not yet handled correctly
+		AIR, // both air blocks and void blocks/blocks above the world
+
+		// shapes
+		BLOCK, WALL, STAIRS, SLAB, // wall is also used for glass pane, fence
+									// and iron bars
+		// directions, they set the front and back faces (see ThingProcessor in
+		// thing-generator)
+		DOWN,
+		UP,
+		NORTH,
+		SOUTH,
+		WEST,
+		EAST,
+
+		// pistons
+		PISTON,
+		BASE, EXTENSION,
+		NONSTICKY, STICKY,
+		RETRACTED, EXTENDED,
+
+		// tools
+		SWORD, PICKAXE, AXE, SHOVEL, HOE, SHEARS, FISHINGROD,
+
+		// materials:
+		DIRT, WOOD, STONE, IRON, GOLD, DIAMOND, OBSIDIAN,
+		PUMPKIN,
+
+		// modifiers
+		COBBLE,
+		BRICK,
+		MOSSY,
+		CRACKED,
+		CHISELED,
+		GLOWING,
+
+		;
+
+		/**
+		 * The bit of this tag in a tag mask.
+		 */
+		public final long mask = 1L << ordinal();
+
+		public static long mask(Tag... tags) {
+			long mask = 0;
+			for (Tag tag : tags) {
+				mask |= tag.mask;
+			}
+			return mask;
+		}
+	}
+
+	// see BlockFaces
+	private int frontFaces;
+	private int backFaces;
+
+	public BlockFace front;
+	public BlockFace back;
+
+	private long tagMask;
+
+	/**
+	 * Only for debugging output, use is() to check for tags.
+	 */
+	public final Set<Tag> TAGS = EnumSet.noneOf(Tag.class);
+
+	public static Thing in(ItemStack stack) {
+		return in(stack.getType(), (byte) 0); // ???
+	}
+
+	public static Thing in(Block block) {
+		return in(block.getType(), block.getData());
+	}
+
+	public static Thing in(MaterialData materialData) {
+		return in(materialData.getItemType(), materialData.getData());
+	}
+
+	public static Thing in(Material material, byte data) {
+		if ((data & ~(DATA_VALUES - 1)) != 0) {
+			// Data values outside of the nibble range (e.g. item durability)
+			// aren't part of the registry. Don't cache them, the registry
+			// has to stay immutable.
+			return new Thing(material, data, false).tag(UNDEFINED);
+		}
+		return definitions[(material.getId() * DATA_VALUES) + data];
+	}
+
+	/**
+	 * @param id
+	 *            see {@link #id}
+	 * @return the Thing with that id or null if the id is out of range or no
+	 *         material has that id
+	 */
+	public static Thing byId(int id) {
+		if (id < 0 || id >= definitions.length) {
+			return null;
+		}
+		return definitions[id];
+	}
+
+	/**
+	 * @param name
+	 *            the name of one of the constants below, e.g.
+	 *            "MOSSY_COBBLE_STONE_WALL"
+	 * @return the Thing or null if there is no constant with that name
+	 */
+	public static Thing named(String name) {
+		return names.get(name);
+	}
+
+	/**
+	 * @return the number of ids in the registry, all ids are smaller than
+	 *         this.
+	 */
+	public static int count() {
+		return definitions.length;
+	}
+
+	private static int maxMaterialId() {
+		int max = 0;
+		for (Material material : Material.values()) {
+			max = Math.max(max, material.getId());
+		}
+		return max;
+	}
+
+	private Thing(Material material, int data) {
+		this(material, data, true);
+	}
+
+	/**
+	 * Creates and registers a thing from things.txt.
+	 * 
+	 * @param index
+	 *            one of the constants of ThingDefinitions
+	 */
+	private static Thing defined(int index) {
+		Thing thing = new Thing(ThingDefinitions.MATERIALS[index], ThingDefinitions.DATA[index]);
+		thing.tagMask = ThingDefinitions.TAG_MASKS[index];
+		thing.frontFaces = ThingDefinitions.FRONT_FACES[index];
+		thing.backFaces = ThingDefinitions.BACK_FACES[index];
+		thing.front = ThingDefinitions.FRONT[index];
+		thing.back = ThingDefinitions.BACK[index];
+		for (Tag tag : Tag.values()) {
+			if ((thing.tagMask & tag.mask) != 0) {
+				thing.TAGS.add(tag);
+			}
+		}
+		names.put(ThingDefinitions.NAMES[index], thing);
+		return thing;
+	}
+
+	/**
+	 * @param register
+	 *            false for Things that aren't part of the registry, they get
+	 *            the id -1
+	 */
+	private Thing(Material material, int data, boolean register) {
+		this.material = material;
+		this.data = (byte) data;
+
+		if (!register) {
+			this.id = -1;
+			return;
+		}
+
+		this.id = (material.getId() * DATA_VALUES) + data;
+
+		if (definitions[id] == null) {
+			definitions[id] = this;
+		}
+		else {
+			throw new RuntimeException("Duplicate MaterialData definition!");
+		}
+	}
+
+	private Thing tag(Tag tag) {
+		TAGS.add(tag);
+		tagMask |= tag.mask;
+		return this;
+	}
+
+	public boolean isnt(Tag... tags) {
+		return !is(tags);
+	}
+
+	/**
+	 * Prefer {@link #is(TagQuery)} with a constant query in code that runs
+	 * often.
+	 * 
+	 * @param tags
+	 * @return true if it matches all tags
+	 */
+	public boolean is(Tag... tags) {
+		long mask = Tag.mask(tags);
+		return (tagMask & mask) == mask;
+	}
+
+	public boolean isnt(TagQuery query) {
+		return !query.matches(tagMask);
+	}
+
+	/**
+	 * @param query
+	 * @return true if it matches all tags of the query
+	 */
+	public boolean is(TagQuery query) {
+		return query.matches(tagMask);
+	}
+
+	/**
+	 * @return all tags as a bitmask, see {@link Tag#mask}
+	 */
+	public long tagMask() {
+		return tagMask;
+	}
+
+	public boolean isnt(Block block) {
+		return !is(block);
+	}
+
+	public boolean is(Block block) {
+		return material.equals(block.getType()) && data == block.getData();
+	}
+
+	public boolean isFrontFace(BlockFace face) {
+		return BlockFaces.contains(frontFaces, face);
+	}
+
+	public boolean isBackFace(BlockFace face) {
+		return BlockFaces.contains(backFaces, face);
+	}
+
+	/**
+	 * @return the front faces as a mask, see {@link BlockFaces}
+	 */
+	public int frontFaces() {
+		return frontFaces;
+	}
+
+	/**
+	 * @return the back faces as a mask, see {@link BlockFaces}
+	 */
+	public int backFaces() {
+		return backFaces;
+	}
+
+	/**
+	 * Turns the block into this thing.
+	 * 
+	 * @param block
+	 * @return false if the change failed and got rolled back
+	 */
+	public boolean applyTo(Block block) {
+		return new BlockEditBatch().set(block, this).commit();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof Thing) {
+			Thing m = (Thing) obj;
+			return (m.material == this.material) && (m.data == this.data);
+		}
+		return super.equals(obj);
+	}
+
+	@Override
+	public String toString() {
+		return material + ":" + data;
+	}
+
+	@Override
+	public int hashCode() {
+		// FIXME Questionable, but can be fixed later, since it doesn't get
+		// persisted (at least I hope so)
+		return (material.getId() << 8) | data;
+	}
+
+	// Definitions of concrete things that exist in Minecraft, see things.txt.
+	// Note that the name equals the tags the object will get
+
+	//@formatter:off
+
+	// Special
+	public static final Thing AIR = defined(ThingDefinitions.AIR);
+
+	// Stone
+	public static final Thing STONE_BLOCK          = defined(ThingDefinitions.STONE_BLOCK);
+	public static final Thing CHISELED_STONE_BLOCK = defined(ThingDefinitions.CHISELED_STONE_BLOCK);
+
+	// cobble
+	public static final Thing COBBLE_STONE_BLOCK       = defined(ThingDefinitions.COBBLE_STONE_BLOCK);
+	public static final Thing MOSSY_COBBLE_STONE_BLOCK = defined(ThingDefinitions.MOSSY_COBBLE_STONE_BLOCK);
+	public static final Thing COBBLE_STONE_WALL        = defined(ThingDefinitions.COBBLE_STONE_WALL);
+	public static final Thing MOSSY_COBBLE_STONE_WALL  = defined(ThingDefinitions.MOSSY_COBBLE_STONE_WALL);
+
+	// stone bricks
+	public static final Thing STONE_BRICK_BLOCK         = defined(ThingDefinitions.STONE_BRICK_BLOCK);
+	public static final Thing MOSSY_STONE_BRICK_BLOCK   = defined(ThingDefinitions.MOSSY_STONE_BRICK_BLOCK);
+	public static final Thing CRACKED_STONE_BRICK_BLOCK = defined(ThingDefinitions.CRACKED_STONE_BRICK_BLOCK);
+
+	// pistons
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_DOWN  = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_DOWN);
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_UP    = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_UP);
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_NORTH = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_NORTH);
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_SOUTH = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_SOUTH);
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_WEST  = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_WEST);
+	public static final Thing RETRACTED_NONSTICKY_PISTON_BASE_EAST  = defined(ThingDefinitions.RETRACTED_NONSTICKY_PISTON_BASE_EAST);
+
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_DOWN  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_DOWN);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_UP    = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_UP);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_NORTH = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_NORTH);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_SOUTH = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_SOUTH);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_WEST  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_WEST);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_BASE_EAST  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_BASE_EAST);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_DOWN  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_DOWN);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_UP    = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_UP);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_NORTH = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_NORTH);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_SOUTH = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_SOUTH);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_WEST  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_WEST);
+	public static final Thing EXTENDED_NONSTICKY_PISTON_EXTENSION_EAST  = defined(ThingDefinitions.EXTENDED_NONSTICKY_PISTON_EXTENSION_EAST);
+
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_DOWN  = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_DOWN);
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_UP    = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_UP);
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_NORTH = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_NORTH);
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_SOUTH = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_SOUTH);
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_WEST  = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_WEST);
+	public static final Thing RETRACTED_STICKY_PISTON_BASE_EAST  = defined(ThingDefinitions.RETRACTED_STICKY_PISTON_BASE_EAST);
+
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_DOWN  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_DOWN);
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_UP    = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_UP);
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_NORTH = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_NORTH);
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_SOUTH = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_SOUTH);
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_WEST  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_WEST);
+	public static final Thing EXTENDED_STICKY_PISTON_BASE_EAST  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_BASE_EAST);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_DOWN  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_DOWN);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_UP    = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_UP);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_NORTH = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_NORTH);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_SOUTH = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_SOUTH);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_WEST  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_WEST);
+	public static final Thing EXTENDED_STICKY_PISTON_EXTENSION_EAST  = defined(ThingDefinitions.EXTENDED_STICKY_PISTON_EXTENSION_EAST);
+
+	// == items ==
+
+	// tools
+	public static final Thing    WOOD_PICKAXE = defined(ThingDefinitions.WOOD_PICKAXE);
+	public static final Thing   STONE_PICKAXE = defined(ThingDefinitions.STONE_PICKAXE);
+	public static final Thing    IRON_PICKAXE = defined(ThingDefinitions.IRON_PICKAXE);
+	public static final Thing    GOLD_PICKAXE = defined(ThingDefinitions.GOLD_PICKAXE);
+	public static final Thing DIAMOND_PICKAXE = defined(ThingDefinitions.DIAMOND_PICKAXE);
+
+	//@formatter:on
+
+	static {
+		// things.txt may define things that don't need a constant
+		for (int index = 0; index < ThingDefinitions.COUNT; index++) {
+			if (!names.containsKey(ThingDefinitions.NAMES[index])) {
+				defined(index);
+			}
+		}
+
+		// pre-populate everything that isn't defined above, so the registry
+		// never has to change after this point.
+		for (Material material : Material.values()) {
+			for (int data = 0; data < DATA_VALUES; data++) {
+				int id = (material.getId() * DATA_VALUES) + data;
+				if (definitions[id] == null) {
+					new Thing(material, data).tag(UNDEFINED);
+				}
+			}
+		}
+	}
+}
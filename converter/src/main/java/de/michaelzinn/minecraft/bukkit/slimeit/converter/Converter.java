@@ -0,0 +1,279 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.converter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRuleParser;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRuleTable;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRules;
+
+/**
+ * Adds or removes slime on a whole map (or an area of it) without a server,
+ * e.g. to age a city or to clean the moss off a spawn:
+ * 
+ * <pre>
+ * java -jar converter/target/converter.jar &lt;world folder&gt; add|remove [options]
+ * </pre>
+ * 
+ * Reads each region file of the world folder into memory in one go, changes
+ * the blocks through the slime rules (see SlimeTransform) and writes each
+ * changed region back atomically. The regions are spread over a fork join
+ * pool, one region per task.
+ * 
+ * Only run it on a copy of the world or while no server uses it, the server
+ * would overwrite the changes with the chunks it has in memory.
+ * 
+ */
+public class Converter {
+
+	// the world border, also keeps the area math away from overflows
+	private static final int BORDER = 30000000;
+
+	private static final Pattern REGION_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+	private static final String USAGE = "Usage: java -jar converter.jar <world folder> add|remove [options]\n"
+			+ "  --area <x1> <z1> <x2> <z2>  only these blocks, inclusive, default the whole world\n"
+			+ "  --y <min> <max>             only these heights, inclusive, default all\n"
+			+ "  --chance <0..1>             share of the matching blocks to change, default 1\n"
+			+ "  --seed <n>                  picks the random share, default 0\n"
+			+ "  --rules <file>              a slimerules.txt, default the built in rules\n"
+			+ "  --threads <n>               default one per processor\n"
+			+ "  --dry-run                   count what would change, write nothing";
+
+	private final File[] regionFiles;
+	private final SlimeTransform transform;
+	private final boolean dryRun;
+
+	private final AtomicInteger changedRegions = new AtomicInteger();
+	private final AtomicInteger chunks = new AtomicInteger();
+	private final AtomicInteger unknownChunks = new AtomicInteger();
+	private final AtomicInteger failedRegions = new AtomicInteger();
+
+	public Converter(File[] regionFiles, SlimeTransform transform, boolean dryRun) {
+		this.regionFiles = regionFiles;
+		this.transform = transform;
+		this.dryRun = dryRun;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2 || !(args[1].equals("add") || args[1].equals("remove"))) {
+			fail(USAGE);
+		}
+		File world = new File(args[0]);
+		boolean add = args[1].equals("add");
+		int[] min = { -BORDER, 0, -BORDER };
+		int[] max = { BORDER, 255, BORDER };
+		double chance = 1;
+		long seed = 0;
+		File rules = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean dryRun = false;
+
+		try {
+			for (int i = 2; i < args.length; i++) {
+				String option = args[i];
+				if (option.equals("--area")) {
+					int x1 = Integer.parseInt(args[++i]), z1 = Integer.parseInt(args[++i]);
+					int x2 = Integer.parseInt(args[++i]), z2 = Integer.parseInt(args[++i]);
+					min[0] = Math.max(Math.min(x1, x2), -BORDER);
+					min[2] = Math.max(Math.min(z1, z2), -BORDER);
+					max[0] = Math.min(Math.max(x1, x2), BORDER);
+					max[2] = Math.min(Math.max(z1, z2), BORDER);
+				}
+				else if (option.equals("--y")) {
+					int y1 = Integer.parseInt(args[++i]), y2 = Integer.parseInt(args[++i]);
+					min[1] = Math.max(Math.min(y1, y2), 0);
+					max[1] = Math.min(Math.max(y1, y2), 255);
+				}
+				else if (option.equals("--chance")) {
+					chance = Double.parseDouble(args[++i]);
+				}
+				else if (option.equals("--seed")) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (option.equals("--rules")) {
+					rules = new File(args[++i]);
+				}
+				else if (option.equals("--threads")) {
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (option.equals("--dry-run")) {
+					dryRun = true;
+				}
+				else {
+					fail("Unknown option " + option + "\n" + USAGE);
+				}
+			}
+		} catch (NumberFormatException e) {
+			fail("Not a number: " + e.getMessage() + "\n" + USAGE);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			fail("Missing value for " + args[args.length - 1] + "\n" + USAGE);
+		}
+		if (!(chance > 0 && chance <= 1)) {
+			fail("The chance has to be more than 0 and at most 1, not " + chance);
+		}
+
+		File regionFolder = new File(world, "region");
+		if (!regionFolder.isDirectory()) {
+			fail(regionFolder + " doesn't exist, is " + world + " a world folder?");
+		}
+
+		// builds the Thing registry before the threads need it
+		System.out.println("Registered " + Thing.count() + " things");
+		SlimeRuleTable table = rules == null ? SlimeRules.builtIn() : parse(rules);
+		System.out.println(table.canGetSlimeCount() + " things can get slime, " + table.hasSlimeCount()
+				+ " have slime");
+
+		final SlimeTransform transform = new SlimeTransform(table, add, chance, seed, min, max);
+		File[] regionFiles = regionFolder.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				Matcher matcher = REGION_NAME.matcher(name);
+				return matcher.matches()
+						&& transform.touchesRegion(Integer.parseInt(matcher.group(1)),
+								Integer.parseInt(matcher.group(2)));
+			}
+		});
+		Arrays.sort(regionFiles);
+
+		Converter converter = new Converter(regionFiles, transform, dryRun);
+		System.exit(converter.run(threads) ? 0 : 1);
+	}
+
+	/**
+	 * Converts all regions and prints a summary.
+	 * 
+	 * @return false if a region failed
+	 */
+	public boolean run(int threads) {
+		System.out.println((dryRun ? "Counting " : "Converting ") + regionFiles.length + " regions with "
+				+ threads + " threads");
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		SlimeTransform.Counts counts;
+		try {
+			counts = pool.invoke(new Regions(0, regionFiles.length));
+		} finally {
+			pool.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format("%d regions (%d changed, %d failed), %d chunks (%d unknown format)",
+				regionFiles.length, changedRegions.get(), failedRegions.get(), chunks.get(),
+				unknownChunks.get()));
+		System.out.println(String.format("%d blocks, %d %s in %.1f s, %.0f blocks/s", counts.blocks,
+				counts.changed, dryRun ? "would change" : "changed", seconds, counts.blocks / Math.max(seconds,
+						1e-9)));
+		return failedRegions.get() == 0;
+	}
+
+	/**
+	 * Converts one region.
+	 */
+	SlimeTransform.Counts convert(File file) {
+		SlimeTransform.Counts counts = new SlimeTransform.Counts();
+		int regionChunks = 0;
+		try {
+			RegionFile region = new RegionFile(file);
+			Matcher matcher = REGION_NAME.matcher(file.getName());
+			matcher.matches();
+			int regionX = Integer.parseInt(matcher.group(1));
+			int regionZ = Integer.parseInt(matcher.group(2));
+
+			for (int index = 0; index < RegionFile.CHUNKS; index++) {
+				if (!region.has(index)
+						|| !transform.touchesChunk(regionX << 5 | index & 31, regionZ << 5 | index >> 5)) {
+					continue;
+				}
+				Nbt.Compound chunk = region.read(index);
+				if (chunk == null) {
+					continue;
+				}
+				regionChunks++;
+				long changedBefore = counts.changed;
+				if (!transform.apply(chunk, counts)) {
+					unknownChunks.incrementAndGet();
+					continue;
+				}
+				if (counts.changed != changedBefore && !dryRun) {
+					region.write(index, chunk);
+				}
+			}
+			if (region.isChanged()) {
+				region.save();
+				changedRegions.incrementAndGet();
+			}
+			System.out.println(String.format("%s: %d chunks, %d blocks, %d changed", file.getName(),
+					regionChunks, counts.blocks, counts.changed));
+		} catch (IOException e) {
+			failedRegions.incrementAndGet();
+			System.err.println(file.getName() + " failed, left as it was: " + e);
+		}
+		chunks.addAndGet(regionChunks);
+		return counts;
+	}
+
+	/**
+	 * Splits the regions in halves until there is one left.
+	 */
+	private class Regions extends RecursiveTask<SlimeTransform.Counts> {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		Regions(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected SlimeTransform.Counts compute() {
+			if (to - from <= 1) {
+				return from < to ? convert(regionFiles[from]) : new SlimeTransform.Counts();
+			}
+			int middle = (from + to) >>> 1;
+			Regions left = new Regions(from, middle);
+			left.fork();
+			SlimeTransform.Counts counts = new Regions(middle, to).compute();
+			counts.add(left.join());
+			return counts;
+		}
+	}
+
+	private static SlimeRuleTable parse(File file) {
+		SlimeRuleParser parser = new SlimeRuleParser();
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			try {
+				SlimeRuleTable table = parser.parse(reader);
+				System.out.println("Loaded " + parser.getRuleCount() + " slime rules from " + file);
+				return table;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			fail("Couldn't read " + file + ": " + e);
+		} catch (ParseException e) {
+			fail("Invalid slime rule in line " + e.getErrorOffset() + " of " + file + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	private static void fail(String message) {
+		System.err.println(message);
+		System.exit(2);
+	}
+}
@@ -0,0 +1,295 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.converter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough NBT to read a chunk, change some arrays and write it back
+ * without losing anything.
+ * 
+ * Tags become plain Java objects: Byte, Short, Integer, Long, Float, Double,
+ * byte[], String, TagList, Compound (a LinkedHashMap, so the order survives),
+ * int[] and long[]. Writing picks the tag type from the class, which is
+ * unambiguous for all of them.
+ * 
+ * The compression around it (zlib or gzip in region files) is up to the
+ * caller.
+ * 
+ */
+public final class Nbt {
+
+	static final byte END = 0;
+	static final byte BYTE = 1;
+	static final byte SHORT = 2;
+	static final byte INT = 3;
+	static final byte LONG = 4;
+	static final byte FLOAT = 5;
+	static final byte DOUBLE = 6;
+	static final byte BYTE_ARRAY = 7;
+	static final byte STRING = 8;
+	static final byte LIST = 9;
+	static final byte COMPOUND = 10;
+	static final byte INT_ARRAY = 11;
+	static final byte LONG_ARRAY = 12;
+
+	// vanilla gives up at the same depth
+	private static final int MAX_DEPTH = 512;
+
+	private Nbt() {
+	}
+
+	/**
+	 * A compound tag, keeps the order of its entries.
+	 */
+	public static class Compound extends LinkedHashMap<String, Object> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * @return the compound called name, null if there is none
+		 */
+		public Compound compound(String name) {
+			Object tag = get(name);
+			return tag instanceof Compound ? (Compound) tag : null;
+		}
+
+		/**
+		 * @return the list called name, null if there is none
+		 */
+		public TagList list(String name) {
+			Object tag = get(name);
+			return tag instanceof TagList ? (TagList) tag : null;
+		}
+
+		/**
+		 * @return the byte array called name, null if there is none
+		 */
+		public byte[] bytes(String name) {
+			Object tag = get(name);
+			return tag instanceof byte[] ? (byte[]) tag : null;
+		}
+
+		/**
+		 * @return the number called name, fallback if there is none
+		 */
+		public int getInt(String name, int fallback) {
+			Object tag = get(name);
+			return tag instanceof Number ? ((Number) tag).intValue() : fallback;
+		}
+	}
+
+	/**
+	 * A list tag, remembers the type of its elements even when it's empty.
+	 */
+	public static class TagList extends ArrayList<Object> {
+		private static final long serialVersionUID = 1L;
+
+		public final byte elementType;
+
+		public TagList(byte elementType) {
+			this.elementType = elementType;
+		}
+	}
+
+	/**
+	 * Reads a named root tag, which has to be a compound.
+	 */
+	public static Compound read(DataInput in) throws IOException {
+		byte type = in.readByte();
+		if (type != COMPOUND) {
+			throw new IOException("The root tag is of type " + type + ", not a compound");
+		}
+		in.readUTF(); // the name of the root, always empty in chunks
+		return (Compound) readPayload(in, COMPOUND, 0);
+	}
+
+	/**
+	 * Writes root as a named root tag with an empty name.
+	 */
+	public static void write(DataOutput out, Compound root) throws IOException {
+		out.writeByte(COMPOUND);
+		out.writeUTF("");
+		writePayload(out, root);
+	}
+
+	private static Object readPayload(DataInput in, byte type, int depth) throws IOException {
+		if (depth > MAX_DEPTH) {
+			throw new IOException("Tags nested deeper than " + MAX_DEPTH);
+		}
+		switch (type) {
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case BYTE_ARRAY: {
+			byte[] array = new byte[length(in)];
+			in.readFully(array);
+			return array;
+		}
+		case STRING:
+			return in.readUTF();
+		case LIST: {
+			byte elementType = in.readByte();
+			int length = length(in);
+			TagList list = new TagList(elementType);
+			for (int i = 0; i < length; i++) {
+				list.add(readPayload(in, elementType, depth + 1));
+			}
+			return list;
+		}
+		case COMPOUND: {
+			Compound compound = new Compound();
+			while (true) {
+				byte entryType = in.readByte();
+				if (entryType == END) {
+					return compound;
+				}
+				String name = in.readUTF();
+				compound.put(name, readPayload(in, entryType, depth + 1));
+			}
+		}
+		case INT_ARRAY: {
+			int[] array = new int[length(in)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.readInt();
+			}
+			return array;
+		}
+		case LONG_ARRAY: {
+			long[] array = new long[length(in)];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = in.readLong();
+			}
+			return array;
+		}
+		default:
+			throw new IOException("Unknown tag type " + type);
+		}
+	}
+
+	private static int length(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Negative length " + length);
+		}
+		return length;
+	}
+
+	private static void writePayload(DataOutput out, Object tag) throws IOException {
+		switch (typeOf(tag)) {
+		case BYTE:
+			out.writeByte((Byte) tag);
+			break;
+		case SHORT:
+			out.writeShort((Short) tag);
+			break;
+		case INT:
+			out.writeInt((Integer) tag);
+			break;
+		case LONG:
+			out.writeLong((Long) tag);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) tag);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) tag);
+			break;
+		case BYTE_ARRAY: {
+			byte[] array = (byte[]) tag;
+			out.writeInt(array.length);
+			out.write(array);
+			break;
+		}
+		case STRING:
+			out.writeUTF((String) tag);
+			break;
+		case LIST: {
+			TagList list = (TagList) tag;
+			out.writeByte(list.isEmpty() ? list.elementType : typeOf(list.get(0)));
+			out.writeInt(list.size());
+			for (Object element : list) {
+				writePayload(out, element);
+			}
+			break;
+		}
+		case COMPOUND:
+			for (Map.Entry<String, Object> entry : ((Compound) tag).entrySet()) {
+				out.writeByte(typeOf(entry.getValue()));
+				out.writeUTF(entry.getKey());
+				writePayload(out, entry.getValue());
+			}
+			out.writeByte(END);
+			break;
+		case INT_ARRAY: {
+			int[] array = (int[]) tag;
+			out.writeInt(array.length);
+			for (int value : array) {
+				out.writeInt(value);
+			}
+			break;
+		}
+		case LONG_ARRAY: {
+			long[] array = (long[]) tag;
+			out.writeInt(array.length);
+			for (long value : array) {
+				out.writeLong(value);
+			}
+			break;
+		}
+		default:
+			throw new IllegalStateException();
+		}
+	}
+
+	private static byte typeOf(Object tag) {
+		if (tag instanceof Byte) {
+			return BYTE;
+		}
+		if (tag instanceof Short) {
+			return SHORT;
+		}
+		if (tag instanceof Integer) {
+			return INT;
+		}
+		if (tag instanceof Long) {
+			return LONG;
+		}
+		if (tag instanceof Float) {
+			return FLOAT;
+		}
+		if (tag instanceof Double) {
+			return DOUBLE;
+		}
+		if (tag instanceof byte[]) {
+			return BYTE_ARRAY;
+		}
+		if (tag instanceof String) {
+			return STRING;
+		}
+		if (tag instanceof TagList) {
+			return LIST;
+		}
+		if (tag instanceof Compound) {
+			return COMPOUND;
+		}
+		if (tag instanceof int[]) {
+			return INT_ARRAY;
+		}
+		if (tag instanceof long[]) {
+			return LONG_ARRAY;
+		}
+		throw new IllegalArgumentException("Not an NBT tag: " + (tag == null ? null : tag.getClass()));
+	}
+}
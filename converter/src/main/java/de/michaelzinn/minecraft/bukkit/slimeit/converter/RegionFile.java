@@ -0,0 +1,333 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.converter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * One Anvil region file (r.x.z.mca) of 32x32 chunks, read into memory in one
+ * go. It isn't memory mapped, Windows can't replace a file that is mapped.
+ * 
+ * <pre>
+ * 1024 * 4 bytes: sector offset (3 bytes) and sector count (1 byte) per chunk
+ * 1024 * 4 bytes: last modification per chunk, seconds
+ * sectors of 4096 bytes: length (int), compression (1 gzip, 2 zlib), data
+ * </pre>
+ * 
+ * Changed chunks are kept in memory until save(), which writes the whole
+ * region into a temporary file next to it (unchanged chunks are copied as
+ * they are) and moves that over the original, so a crash leaves either the
+ * old or the new region, never half of one.
+ * 
+ * Chunks that can't be read (a broken length or compression) read as
+ * missing, but save() copies their sectors over byte for byte, so nothing
+ * gets lost. If an entry points outside the file, save() fails and leaves
+ * the region as it was.
+ * 
+ * Not thread safe, use one per region and thread.
+ * 
+ */
+public class RegionFile {
+
+	public static final int CHUNKS = 1024;
+	static final int SECTOR = 4096;
+	static final int HEADER_SECTORS = 2;
+	// the sector count is a single byte
+	static final int MAX_SECTORS = 255;
+
+	static final byte GZIP = 1;
+	static final byte ZLIB = 2;
+
+	private final File file;
+	// the whole file as it was when this was opened
+	private final ByteBuffer map;
+	private final int[] offsets = new int[CHUNKS];
+	private final int[] timestamps = new int[CHUNKS];
+	// compressed payload (compression byte and data) of replaced chunks
+	private final byte[][] replaced = new byte[CHUNKS][];
+	private int replacedCount;
+
+	public RegionFile(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			// the most the header can address
+			if (size > (long) (HEADER_SECTORS + CHUNKS * MAX_SECTORS) * SECTOR + SECTOR) {
+				throw new IOException(file + " is too big for a region file");
+			}
+			map = ByteBuffer.allocate((int) size);
+			while (map.hasRemaining()) {
+				if (channel.read(map) < 0) {
+					throw new IOException(file + " got shorter while reading it");
+				}
+			}
+			map.clear();
+		} finally {
+			raf.close();
+		}
+		if (map.capacity() >= HEADER_SECTORS * SECTOR) {
+			for (int i = 0; i < CHUNKS; i++) {
+				offsets[i] = map.getInt(i * 4);
+				timestamps[i] = map.getInt(SECTOR + i * 4);
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param index
+	 *            (chunkZ & 31) * 32 + (chunkX & 31)
+	 */
+	public boolean has(int index) {
+		return replaced[index] != null || offsets[index] != 0;
+	}
+
+	/**
+	 * @return the chunk, null if the region doesn't have it
+	 */
+	public Nbt.Compound read(int index) throws IOException {
+		InputStream in;
+		if (replaced[index] != null) {
+			byte[] payload = replaced[index];
+			in = decompress(payload[0], new ByteArrayInputStream(payload, 1, payload.length - 1));
+		}
+		else {
+			ByteBuffer stored = stored(index);
+			if (stored == null) {
+				return null;
+			}
+			in = decompress(stored.get(), new ByteBufferInputStream(stored));
+		}
+		DataInputStream nbt = new DataInputStream(new BufferedInputStream(in));
+		try {
+			return Nbt.read(nbt);
+		} finally {
+			nbt.close();
+		}
+	}
+
+	/**
+	 * Replaces the chunk, written on save().
+	 */
+	public void write(int index, Nbt.Compound chunk) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+		bytes.write(ZLIB);
+		DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+		Nbt.write(out, chunk);
+		out.close();
+		byte[] payload = bytes.toByteArray();
+		if (sectors(payload.length) > MAX_SECTORS) {
+			throw new IOException("Chunk " + index + " of " + file + " doesn't fit into " + MAX_SECTORS
+					+ " sectors anymore");
+		}
+		if (replaced[index] == null) {
+			replacedCount++;
+		}
+		replaced[index] = payload;
+		timestamps[index] = (int) (System.currentTimeMillis() / 1000);
+	}
+
+	/**
+	 * @return true if a chunk was replaced since this was opened
+	 */
+	public boolean isChanged() {
+		return replacedCount > 0;
+	}
+
+	/**
+	 * Writes the region with the replaced chunks into a temporary file and
+	 * moves it over the original. Does nothing if nothing changed.
+	 * 
+	 * @throws IOException
+	 *             also if a chunk entry points outside the file, the region
+	 *             is left as it was then
+	 */
+	public void save() throws IOException {
+		if (!isChanged()) {
+			return;
+		}
+		int[] newOffsets = new int[CHUNKS];
+		int sector = HEADER_SECTORS;
+		for (int i = 0; i < CHUNKS; i++) {
+			int count;
+			int length = payloadLength(i);
+			if (length > 0) {
+				count = sectors(length);
+			}
+			else if (offsets[i] == 0) {
+				continue;
+			}
+			else if (sectorsAsStored(i) != null) {
+				count = offsets[i] & 0xFF;
+			}
+			else {
+				throw new IOException("Chunk " + i + " of " + file + " points outside the file");
+			}
+			newOffsets[i] = sector << 8 | count;
+			sector += count;
+		}
+
+		File temporary = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temporary, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR);
+			for (int i = 0; i < CHUNKS; i++) {
+				header.putInt(i * 4, newOffsets[i]);
+				header.putInt(SECTOR + i * 4, newOffsets[i] == 0 ? 0 : timestamps[i]);
+			}
+			writeFully(channel, header);
+
+			ByteBuffer length = ByteBuffer.allocate(4);
+			ByteBuffer zeros = ByteBuffer.allocate(SECTOR);
+			for (int i = 0; i < CHUNKS; i++) {
+				if (newOffsets[i] == 0) {
+					continue;
+				}
+				if (payloadLength(i) == 0) {
+					// can't be read, keep it the way it is
+					writeFully(channel, sectorsAsStored(i));
+					continue;
+				}
+				ByteBuffer payload = replaced[i] != null ? ByteBuffer.wrap(replaced[i]) : stored(i);
+				int size = payload.remaining();
+				length.clear();
+				length.putInt(size).flip();
+				writeFully(channel, length);
+				writeFully(channel, payload);
+				// pad to the end of the sector
+				zeros.clear();
+				zeros.limit((newOffsets[i] & 0xFF) * SECTOR - 4 - size);
+				writeFully(channel, zeros);
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return compression byte and data of the chunk as stored in the file,
+	 *         null if there is none or it's broken
+	 */
+	private ByteBuffer stored(int index) {
+		int entry = offsets[index];
+		if (entry == 0) {
+			return null;
+		}
+		long start = (long) (entry >>> 8) * SECTOR;
+		long end = start + (entry & 0xFF) * SECTOR;
+		if (start < HEADER_SECTORS * SECTOR || start + 5 > map.capacity()) {
+			return null;
+		}
+		int length = map.getInt((int) start);
+		if (length < 1 || start + 4 + length > Math.min(end, map.capacity())) {
+			return null;
+		}
+		ByteBuffer stored = map.duplicate();
+		stored.position((int) start + 4);
+		stored.limit((int) start + 4 + length);
+		return stored.slice();
+	}
+
+	/**
+	 * @return the sectors of the chunk as they are in the file, including
+	 *         the length, null if they aren't all in the file
+	 */
+	private ByteBuffer sectorsAsStored(int index) {
+		int entry = offsets[index];
+		long start = (long) (entry >>> 8) * SECTOR;
+		long end = start + (entry & 0xFF) * SECTOR;
+		if (entry == 0 || start < HEADER_SECTORS * SECTOR || end <= start || end > map.capacity()) {
+			return null;
+		}
+		ByteBuffer sectors = map.duplicate();
+		sectors.position((int) start);
+		sectors.limit((int) end);
+		return sectors.slice();
+	}
+
+	private int payloadLength(int index) {
+		if (replaced[index] != null) {
+			return replaced[index].length;
+		}
+		ByteBuffer stored = stored(index);
+		return stored == null ? 0 : stored.remaining();
+	}
+
+	private static int sectors(int payloadLength) {
+		return (4 + payloadLength + SECTOR - 1) / SECTOR;
+	}
+
+	private InputStream decompress(byte compression, InputStream in) throws IOException {
+		switch (compression) {
+		case GZIP:
+			return new GZIPInputStream(in);
+		case ZLIB:
+			return new InflaterInputStream(in);
+		default:
+			throw new IOException("Unknown compression " + compression + " in " + file);
+		}
+	}
+
+	/**
+	 * Reads straight from the buffer instead of copying the chunk first.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, read);
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
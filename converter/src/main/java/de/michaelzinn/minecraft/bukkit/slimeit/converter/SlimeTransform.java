@@ -0,0 +1,219 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.converter;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.SlimeRuleTable;
+
+/**
+ * Adds or removes slime on the blocks of a chunk the way the plugin would,
+ * through the slime rules, within an area and optionally only for a random
+ * share of the blocks.
+ * 
+ * Works on pre 1.13 chunks (Level.Sections with Blocks, Add and Data), other
+ * chunks are left alone. Slime rules only swap blocks that look and behave
+ * the same, so heightmaps and light stay valid.
+ * 
+ * Extended pistons are skipped, their two halves could end up in different
+ * chunks, areas or random picks and disagree on being sticky.
+ * 
+ * The random picks only depend on the position and the seed, so running the
+ * same transform again picks the same blocks, no matter how the regions are
+ * split across threads.
+ * 
+ * Immutable, safe to share between threads.
+ * 
+ */
+public class SlimeTransform {
+
+	private static final TagQuery EXTENDED_PISTON = TagQuery.of(EXTENDED, PISTON);
+
+	private static final int SECTION_BLOCKS = 16 * 16 * 16;
+
+	private final SlimeRuleTable table;
+	private final boolean add;
+	private final double chance;
+	private final long seed;
+	private final int minX, minY, minZ;
+	private final int maxX, maxY, maxZ;
+
+	/**
+	 * @param table
+	 * @param add
+	 *            true to add slime, false to remove it
+	 * @param chance
+	 *            share of the matching blocks that get changed, 1 for all
+	 * @param seed
+	 *            for the random picks
+	 * @param min
+	 *            smallest x, y, z of the area, inclusive
+	 * @param max
+	 *            largest x, y, z of the area, inclusive
+	 */
+	public SlimeTransform(SlimeRuleTable table, boolean add, double chance, long seed, int[] min, int[] max) {
+		this.table = table;
+		this.add = add;
+		this.chance = chance;
+		this.seed = seed;
+		minX = min[0];
+		minY = min[1];
+		minZ = min[2];
+		maxX = max[0];
+		maxY = max[1];
+		maxZ = max[2];
+	}
+
+	/**
+	 * @return true if the region at region coordinates x z has blocks in the
+	 *         area
+	 */
+	public boolean touchesRegion(int regionX, int regionZ) {
+		return overlaps(regionX << 9, regionZ << 9, 512);
+	}
+
+	/**
+	 * @return true if the chunk at chunk coordinates x z has blocks in the
+	 *         area
+	 */
+	public boolean touchesChunk(int chunkX, int chunkZ) {
+		return overlaps(chunkX << 4, chunkZ << 4, 16);
+	}
+
+	private boolean overlaps(int x, int z, int size) {
+		return x + size > minX && x <= maxX && z + size > minZ && z <= maxZ;
+	}
+
+	/**
+	 * Changes the chunk in place.
+	 * 
+	 * @param chunk
+	 *            the root compound of the chunk
+	 * @param counts
+	 *            gets the blocks looked at and changed added
+	 * @return false if the chunk has a format this doesn't know
+	 */
+	public boolean apply(Nbt.Compound chunk, Counts counts) {
+		Nbt.Compound level = chunk.compound("Level");
+		Nbt.TagList sections = level == null ? null : level.list("Sections");
+		if (sections == null) {
+			return false;
+		}
+		for (Object tag : sections) {
+			if (!isKnownSection(tag)) {
+				return false;
+			}
+		}
+
+		int chunkX = level.getInt("xPos", 0);
+		int chunkZ = level.getInt("zPos", 0);
+		for (Object tag : sections) {
+			Nbt.Compound section = (Nbt.Compound) tag;
+			byte[] blocks = section.bytes("Blocks");
+			byte[] data = section.bytes("Data");
+			byte[] extra = section.bytes("Add");
+			int sectionY = section.getInt("Y", 0) << 4;
+			if (sectionY + 16 <= minY || sectionY > maxY) {
+				continue;
+			}
+			byte[] newExtra = apply(chunkX << 4, sectionY, chunkZ << 4, blocks, extra, data, counts);
+			if (newExtra != extra) {
+				section.put("Add", newExtra);
+			}
+		}
+		return true;
+	}
+
+	private static boolean isKnownSection(Object tag) {
+		if (!(tag instanceof Nbt.Compound)) {
+			return false;
+		}
+		Nbt.Compound section = (Nbt.Compound) tag;
+		byte[] blocks = section.bytes("Blocks");
+		byte[] data = section.bytes("Data");
+		byte[] extra = section.bytes("Add");
+		return blocks != null && blocks.length == SECTION_BLOCKS && data != null && data.length == SECTION_BLOCKS / 2
+				&& (extra == null || extra.length == SECTION_BLOCKS / 2);
+	}
+
+	/**
+	 * @return the Add array, a new one if a block needed it and there was
+	 *         none
+	 */
+	private byte[] apply(int baseX, int baseY, int baseZ, byte[] blocks, byte[] extra, byte[] data, Counts counts) {
+		int fromX = Math.max(minX - baseX, 0), toX = Math.min(maxX - baseX, 15);
+		int fromY = Math.max(minY - baseY, 0), toY = Math.min(maxY - baseY, 15);
+		int fromZ = Math.max(minZ - baseZ, 0), toZ = Math.min(maxZ - baseZ, 15);
+		for (int y = fromY; y <= toY; y++) {
+			for (int z = fromZ; z <= toZ; z++) {
+				int row = y << 8 | z << 4;
+				for (int x = fromX; x <= toX; x++) {
+					int i = row | x;
+					counts.blocks++;
+					int typeId = blocks[i] & 0xFF;
+					if (extra != null) {
+						typeId |= nibble(extra, i) << 8;
+					}
+					long rule = table.rule(BlockStates.of(typeId, nibble(data, i)));
+					if (rule == 0 || (add ? !SlimeRuleTable.canGetSlime(rule) : !SlimeRuleTable.hasSlime(rule))) {
+						continue;
+					}
+					Thing after = add ? SlimeRuleTable.withSlime(rule) : SlimeRuleTable.withoutSlime(rule);
+					if (after.is(EXTENDED_PISTON) || !picked(baseX + x, baseY + y, baseZ + z)) {
+						continue;
+					}
+
+					int newTypeId = BlockStates.typeId(after.id);
+					blocks[i] = (byte) newTypeId;
+					if (extra == null && newTypeId > 0xFF) {
+						extra = new byte[SECTION_BLOCKS / 2];
+					}
+					if (extra != null) {
+						setNibble(extra, i, newTypeId >>> 8);
+					}
+					setNibble(data, i, BlockStates.data(after.id));
+					counts.changed++;
+				}
+			}
+		}
+		return extra;
+	}
+
+	/**
+	 * @return true if the block at x y z is one of the random share
+	 */
+	private boolean picked(int x, int y, int z) {
+		if (chance >= 1) {
+			return true;
+		}
+		// splitmix64 of the position, so neighbours don't correlate
+		long hash = seed + ((long) x * 0x9E3779B97F4A7C15L ^ (long) z * 0xC2B2AE3D27D4EB4FL ^ y);
+		hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+		hash ^= hash >>> 31;
+		return (hash >>> 11) * 0x1.0p-53 < chance;
+	}
+
+	private static int nibble(byte[] nibbles, int i) {
+		return nibbles[i >> 1] >> ((i & 1) << 2) & 0xF;
+	}
+
+	private static void setNibble(byte[] nibbles, int i, int value) {
+		int shift = (i & 1) << 2;
+		nibbles[i >> 1] = (byte) (nibbles[i >> 1] & ~(0xF << shift) | (value & 0xF) << shift);
+	}
+
+	/**
+	 * Blocks looked at and changed, one per thread.
+	 */
+	public static class Counts {
+		public long blocks;
+		public long changed;
+
+		public void add(Counts other) {
+			blocks += other.blocks;
+			changed += other.changed;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Precomputed answers to "does SlimeIt care about this block at all?" and
+ * "which break handler is responsible for it?", so BlockPunchListener can
+ * return right away for the vast majority of blocks (dirt, stone, logs...).
+ * 
+ * Built from one SlimeRuleTable and immutable, like the table.
+ * 
+ */
+class BlockDispatch {
+
+	/**
+	 * What happens when a Thing is broken.
+	 */
+	enum BreakCase {
+		NONE, CRACKED_BRICKS, STICKY_PISTON_EXTENSION, EXTENDED_STICKY_PISTON_BASE, SLIMED
+	}
+
+	private static final TagQuery CRACKED_STONE_BRICKS = TagQuery.of(CRACKED, STONE, BRICK, BLOCK);
+	private static final TagQuery STICKY_PISTON_EXTENSION = TagQuery.of(STICKY, PISTON, EXTENSION);
+	private static final TagQuery EXTENDED_STICKY_PISTON_BASE = TagQuery.of(EXTENDED, STICKY, PISTON, BASE);
+
+	final SlimeRuleTable table;
+
+	private final BreakCase[] breakCases = new BreakCase[Thing.count()];
+
+	// bitsets over material ids
+	private final long[] breakMaterials = new long[(Thing.count() / Thing.DATA_VALUES + 63) / 64];
+	private final long[] interactMaterials = new long[breakMaterials.length];
+
+	BlockDispatch(SlimeRuleTable table) {
+		this.table = table;
+
+		for (int id = 0; id < breakCases.length; id++) {
+			Thing thing = Thing.byId(id);
+			if (thing == null) {
+				breakCases[id] = BreakCase.NONE;
+				continue;
+			}
+
+			long rule = table.rule(thing);
+			BreakCase breakCase;
+			if (thing.is(CRACKED_STONE_BRICKS)) {
+				breakCase = BreakCase.CRACKED_BRICKS;
+			}
+			else if (thing.is(STICKY_PISTON_EXTENSION)) {
+				breakCase = BreakCase.STICKY_PISTON_EXTENSION;
+			}
+			else if (thing.is(EXTENDED_STICKY_PISTON_BASE)) {
+				breakCase = BreakCase.EXTENDED_STICKY_PISTON_BASE;
+			}
+			else if (SlimeRuleTable.hasSlime(rule)) {
+				breakCase = BreakCase.SLIMED;
+			}
+			else {
+				breakCase = BreakCase.NONE;
+			}
+			breakCases[id] = breakCase;
+
+			int materialId = id / Thing.DATA_VALUES;
+			if (breakCase != BreakCase.NONE) {
+				set(breakMaterials, materialId);
+			}
+			// stone bricks can get cracked with a pickaxe
+			if (rule != 0 || thing == Thing.STONE_BRICK_BLOCK) {
+				set(interactMaterials, materialId);
+			}
+		}
+	}
+
+	BreakCase breakCase(Thing thing) {
+		return thing.id < 0 ? BreakCase.NONE : breakCases[thing.id];
+	}
+
+	/**
+	 * @param materialId
+	 * @return false if breaking a block of that material is none of SlimeIt's
+	 *         business, whatever its data value
+	 */
+	boolean isBreakRelevant(int materialId) {
+		return isSet(breakMaterials, materialId);
+	}
+
+	/**
+	 * @param materialId
+	 * @return false if clicking a block of that material is none of SlimeIt's
+	 *         business, whatever its data value
+	 */
+	boolean isInteractRelevant(int materialId) {
+		return isSet(interactMaterials, materialId);
+	}
+
+	private static void set(long[] bits, int index) {
+		bits[index >>> 6] |= 1L << index;
+	}
+
+	private static boolean isSet(long[] bits, int index) {
+		int word = index >>> 6;
+		return word < bits.length && (bits[word] & (1L << index)) != 0;
+	}
+}
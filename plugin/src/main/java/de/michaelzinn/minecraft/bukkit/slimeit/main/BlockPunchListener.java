@@ -0,0 +1,599 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus.*;
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Sound;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockEditBatch;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.BlockDispatch.BreakCase;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.HandlerTrace.Handler;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider.Action;
+
+/**
+ * Handles what happens when the player left clicks, right clicks or destroys a
+ * block.
+ * 
+ * Protection plugins are asked through the {@link ProtectionCache}, see
+ * {@link ProtectionProvider}.
+ * 
+ * @author Michael Zinn (@RedNifre)
+ * 
+ */
+public class BlockPunchListener implements Listener {
+
+	private static final TagQuery ANY_PICKAXE = TagQuery.of(PICKAXE);
+	private static final TagQuery ANY_PISTON = TagQuery.of(PISTON);
+
+	// private final SlimeIt plugin;
+	SlimeRules slimeRules;
+	DropAggregator drops;
+	SoundScheduler sounds;
+	InteractionLimiter limiter;
+	SlimeIndex index;
+	ProtectionCache protection;
+	ChangeJournal journal;
+	UndoHistory undo;
+	Metrics metrics;
+	TickWatchdog watchdog;
+	HandlerTrace trace;
+	EventRecorder recorder;
+	FaceSlimeStore faces;
+
+	// true if anything above needs the handlers measured
+	private boolean measuring;
+
+	// what the current handler did, for the trace
+	private String branch;
+	private int touched;
+	// the block of the current event and what the handler turned it into
+	private Block subject;
+	private Thing after;
+
+	private static final Sound[] SLIME_WALK = { Sound.SLIME_WALK, Sound.SLIME_WALK2 };
+
+	// rebuilt whenever the slime rules change
+	private BlockDispatch dispatch;
+
+	SlimeIt plugin;
+
+	public BlockPunchListener(SlimeIt main) {
+		this(main, main.slimeRules, main.drops, main.sounds);
+	}
+
+	/**
+	 * @param main
+	 *            may be null when running without a server, e.g. in the
+	 *            benchmarks
+	 * @param slimeRules
+	 * @param drops
+	 *            needs to be run every tick
+	 * @param sounds
+	 *            needs to be run every tick
+	 */
+	public BlockPunchListener(SlimeIt main, SlimeRules slimeRules, DropAggregator drops, SoundScheduler sounds) {
+		plugin = main;
+		this.slimeRules = slimeRules;
+		this.drops = drops;
+		this.sounds = sounds;
+	}
+
+	/**
+	 * @param limiter
+	 *            null to allow any number of interactions
+	 */
+	public void setLimiter(InteractionLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * @param index
+	 *            gets told about every block this listener changes, may be
+	 *            null
+	 */
+	public void setIndex(SlimeIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * @param journal
+	 *            records every block this listener changes, may be null
+	 */
+	public void setJournal(ChangeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @param undo
+	 *            remembers the slime a player added or scraped, may be null
+	 */
+	public void setUndo(UndoHistory undo) {
+		this.undo = undo;
+	}
+
+	/**
+	 * @param protection
+	 *            asked before any block gets changed, null to allow everything
+	 */
+	public void setProtection(ProtectionCache protection) {
+		this.protection = protection;
+	}
+
+	/**
+	 * @param metrics
+	 *            records how long the handlers take, null to not measure
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+		updateMeasuring();
+	}
+
+	/**
+	 * @param watchdog
+	 *            gets the time of every handled event, may be null
+	 */
+	public void setWatchdog(TickWatchdog watchdog) {
+		this.watchdog = watchdog;
+		updateMeasuring();
+	}
+
+	/**
+	 * @param trace
+	 *            gets told about every handled event, may be null
+	 */
+	public void setTrace(HandlerTrace trace) {
+		this.trace = trace;
+		updateMeasuring();
+	}
+
+	/**
+	 * @param recorder
+	 *            gets every event before it is handled, null to not record
+	 */
+	public void setRecorder(EventRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * @param faces
+	 *            keeps slime on blocks the slime rules don't know, null to
+	 *            only use the rules
+	 */
+	public void setFaces(FaceSlimeStore faces) {
+		this.faces = faces;
+	}
+
+	private void updateMeasuring() {
+		measuring = metrics != null || watchdog != null || trace != null;
+	}
+
+	/**
+	 * Tells the index and the journal about a block this listener changed.
+	 * 
+	 * @param before
+	 *            what the block was before the change
+	 * @param after
+	 *            what the block is now
+	 */
+	private void changed(Player player, Block block, Thing before, Thing after) {
+		touched++;
+		if (block == subject) {
+			this.after = after;
+		}
+		if (index != null) {
+			index.update(block, after.id);
+		}
+		if (journal != null) {
+			journal.record(player, block, before, after);
+		}
+	}
+
+	/**
+	 * Like changed(), and lets the player undo the change.
+	 * 
+	 * @param slimeBalls
+	 *            slime balls the player got, negative if they paid
+	 */
+	private void changedUndoable(Player player, Block block, Thing before, Thing after, int slimeBalls) {
+		changed(player, block, before, after);
+		if (undo != null) {
+			undo.record(player, block, before, after, slimeBalls);
+		}
+	}
+
+	/**
+	 * Like changedUndoable(), for slime on single faces.
+	 * 
+	 * @param before
+	 *            the face mask before the change, see BlockFaces
+	 * @param after
+	 *            the face mask now
+	 */
+	private void changedFaces(Player player, Block block, int before, int after, int slimeBalls) {
+		touched++;
+		if (journal != null) {
+			journal.recordFaces(player, block, before, after);
+		}
+		if (undo != null) {
+			undo.recordFaces(player, block, before, after, slimeBalls);
+		}
+	}
+
+	/**
+	 * What replace() turned the block into. That's the new thing, except for
+	 * pistons replaced with something else, those lose their orientation.
+	 */
+	static Thing replaced(Block block, Thing before, Thing thing) {
+		return before.is(ANY_PISTON) && thing.isnt(ANY_PISTON) ? Thing.in(block) : thing;
+	}
+
+	/**
+	 * @return false if the block is protected
+	 */
+	private boolean isAllowed(Player player, Block block, Action action) {
+		return protection == null || protection.mayEdit(player, block, action);
+	}
+
+	/**
+	 * @return false if the block is protected or the player is clicking too
+	 *         fast
+	 */
+	private boolean mayEdit(Player player, Block block) {
+		return isAllowed(player, block, Action.BUILD) && (limiter == null || limiter.tryAcquire(player));
+	}
+
+	/**
+	 * @return the dispatch table for the current slime rules
+	 */
+	private BlockDispatch dispatch() {
+		SlimeRuleTable table = slimeRules.table();
+		BlockDispatch current = dispatch;
+		if (current == null || current.table != table) {
+			current = new BlockDispatch(table);
+			dispatch = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Replaces the block, measuring how long it takes.
+	 */
+	private boolean timedReplace(Block block, int state, Thing thing) {
+		Metrics current = metrics;
+		if (current == null) {
+			return replace(block, state, thing);
+		}
+		long start = System.nanoTime();
+		boolean replaced = replace(block, state, thing);
+		current.replace.record(System.nanoTime() - start);
+		return replaced;
+	}
+
+	/**
+	 * Runs the handler and tells the metrics, watchdog and trace about it.
+	 * 
+	 * @param state
+	 *            what the block is, see BlockStates
+	 */
+	private void measure(Event event, Block block, int state, Player player, Handler handler) {
+		Thing before = Thing.byId(state);
+		HandlerTrace currentTrace = trace;
+		if (currentTrace != null && !currentTrace.isEnabled(handler)) {
+			currentTrace = null;
+		}
+		if (currentTrace != null) {
+			currentTrace.begin(handler);
+		}
+		branch = "NONE";
+		touched = 0;
+		subject = block;
+		after = before;
+
+		long start = System.nanoTime();
+		if (handler == Handler.BREAK) {
+			handleBreak((BlockBreakEvent) event, block, state);
+		}
+		else {
+			handleInteract((PlayerInteractEvent) event, block, state);
+		}
+		long nanos = System.nanoTime() - start;
+
+		Metrics currentMetrics = metrics;
+		if (currentMetrics != null) {
+			(handler == Handler.BREAK ? currentMetrics.playerBreak : currentMetrics.playerInteract).record(nanos);
+		}
+		TickWatchdog currentWatchdog = watchdog;
+		if (currentWatchdog != null) {
+			currentWatchdog.record(nanos, handler == Handler.BREAK ? "playerBreak" : "playerInteract", player, block);
+		}
+		if (currentTrace != null) {
+			currentTrace.end(branch, before, after, touched);
+		}
+		subject = null;
+	}
+
+	@EventHandler(ignoreCancelled = true)
+	public void playerBreak(BlockBreakEvent event) {
+		Block block = event.getBlock();
+		if (block == null) {
+			return;
+		}
+		EventRecorder currentRecorder = recorder;
+		if (currentRecorder != null) {
+			currentRecorder.recordBreak(event.getPlayer(), block);
+		}
+		int typeId = block.getTypeId();
+		if (!dispatch().isBreakRelevant(typeId)) {
+			protectFaces(event, block);
+			return;
+		}
+		// the only time the block gets read, everything below gets the state
+		int state = BlockStates.of(typeId, block.getData());
+
+		if (measuring) {
+			measure(event, block, state, event.getPlayer(), Handler.BREAK);
+		}
+		else {
+			handleBreak(event, block, state);
+		}
+	}
+
+	private void handleBreak(BlockBreakEvent event, Block block, int state) {
+		// blocks with slime should drop as items without slime + 1 slimeball
+
+		Thing thingInBlock = Thing.byId(state);
+		BreakCase breakCase = dispatch().breakCase(thingInBlock);
+		branch = breakCase.name();
+		if (breakCase == BreakCase.NONE) {
+			protectFaces(event, block);
+			return;
+		}
+
+		if (!isAllowed(event.getPlayer(), block, Action.BREAK)) {
+			event.setCancelled(true);
+			branch = "PROTECTED";
+			return;
+		}
+
+		switch (breakCase) {
+		case CRACKED_BRICKS:
+			breakCrackedBricks(event, block, thingInBlock);
+			break;
+		case STICKY_PISTON_EXTENSION:
+			breakStickyPistonExtension(event, block, thingInBlock);
+			break;
+		case EXTENDED_STICKY_PISTON_BASE:
+			breakExtendedStickyPistonBase(event, block, thingInBlock);
+			break;
+		case SLIMED:
+			breakSlimed(event, block, thingInBlock, slimeRules.rule(state));
+			break;
+		case NONE:
+			break;
+		}
+	}
+
+	private void breakCrackedBricks(BlockBreakEvent event, Block block, Thing before) {
+		event.setCancelled(true);
+		if (!new BlockEditBatch().set(block, before.id, Thing.AIR).commit()) {
+			return;
+		}
+		changed(event.getPlayer(), block, before, Thing.AIR);
+		breakFaces(event.getPlayer(), block);
+		drops.drop(block.getLocation(), Material.SMOOTH_BRICK, event.getPlayer());
+	}
+
+	// piston head
+	private void breakStickyPistonExtension(BlockBreakEvent event, Block block, Thing extensionBefore) {
+		event.setCancelled(true);
+		Block base = getPistonBase(block, extensionBefore);
+		int baseState = BlockStates.of(base);
+		if (!new BlockEditBatch().set(block, extensionBefore.id, Thing.AIR).set(base, baseState, Thing.AIR)
+				.commit()) {
+			return;
+		}
+		changed(event.getPlayer(), base, Thing.byId(baseState), Thing.AIR);
+		changed(event.getPlayer(), block, extensionBefore, Thing.AIR);
+		breakFaces(event.getPlayer(), base);
+		breakFaces(event.getPlayer(), block);
+		drops.drop(base.getLocation(), Material.PISTON_BASE, event.getPlayer());
+		drops.drop(block.getLocation(), Material.SLIME_BALL, event.getPlayer());
+	}
+
+	private void breakExtendedStickyPistonBase(BlockBreakEvent event, Block block, Thing baseBefore) {
+		event.setCancelled(true);
+		Block extension = getPistonExtension(block, baseBefore);
+		int extensionState = BlockStates.of(extension);
+		if (!new BlockEditBatch().set(extension, extensionState, Thing.AIR).set(block, baseBefore.id, Thing.AIR)
+				.commit()) {
+			return;
+		}
+		changed(event.getPlayer(), block, baseBefore, Thing.AIR);
+		changed(event.getPlayer(), extension, Thing.byId(extensionState), Thing.AIR);
+		breakFaces(event.getPlayer(), block);
+		breakFaces(event.getPlayer(), extension);
+		drops.drop(block.getLocation(), Material.PISTON_BASE, event.getPlayer());
+		drops.drop(extension.getLocation(), Material.SLIME_BALL, event.getPlayer());
+	}
+
+	/**
+	 * Keeps players from breaking the slimed faces of blocks they may not
+	 * break, the faces of blocks that do break get cleared in blockBroken().
+	 */
+	private void protectFaces(BlockBreakEvent event, Block block) {
+		if (faces != null && faces.faces(block) != 0 && !isAllowed(event.getPlayer(), block, Action.BREAK)) {
+			event.setCancelled(true);
+			branch = "PROTECTED";
+		}
+	}
+
+	/**
+	 * Clears the faces of a block that broke the vanilla way, once no other
+	 * plugin can cancel the break anymore.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBroken(BlockBreakEvent event) {
+		if (faces != null && event.getBlock() != null) {
+			breakFaces(event.getPlayer(), event.getBlock());
+		}
+	}
+
+	// slime on faces the rules don't know, one slime ball per face
+	private void breakFaces(Player player, Block block) {
+		if (faces == null) {
+			return;
+		}
+		int slimed = faces.clear(block);
+		if (slimed != 0) {
+			drops.drop(block.getLocation(), Material.SLIME_BALL, Integer.bitCount(slimed), player);
+			if (journal != null) {
+				journal.recordFaces(player, block, slimed, 0);
+			}
+		}
+	}
+
+	// simple cases, break according to slimeRules
+	private void breakSlimed(BlockBreakEvent event, Block block, Thing before, long rule) {
+		event.setCancelled(true);
+		Location location = block.getLocation();
+		if (!new BlockEditBatch().set(block, before.id, Thing.AIR).commit()) {
+			return;
+		}
+		changed(event.getPlayer(), block, before, Thing.AIR);
+		breakFaces(event.getPlayer(), block);
+		drops.drop(location, SlimeRuleTable.withoutSlime(rule).material, event.getPlayer());
+		drops.drop(location, Material.SLIME_BALL, event.getPlayer());
+	}
+
+	private static void useSlimeBall(Player player, ItemStack playerHand) {
+		int targetAmount = playerHand.getAmount() - 1;
+		if (targetAmount <= 0) {
+			player.setItemInHand(null);
+		} else {
+			playerHand.setAmount(targetAmount);
+		}
+	}
+
+	@EventHandler(ignoreCancelled = true)
+	public void playerInteract(PlayerInteractEvent event) {
+		Block block = event.getClickedBlock();
+		if (block == null) {
+			return;
+		}
+		EventRecorder currentRecorder = recorder;
+		if (currentRecorder != null) {
+			currentRecorder.recordInteract(event.getPlayer(), event.getAction(), event.getBlockFace(), block);
+		}
+		int typeId = block.getTypeId();
+		if (!dispatch().isInteractRelevant(typeId) && (faces == null || !isFaceRelevant(event, block))) {
+			return;
+		}
+		// the only time the block gets read, everything below gets the state
+		int state = BlockStates.of(typeId, block.getData());
+
+		if (measuring) {
+			measure(event, block, state, event.getPlayer(), Handler.INTERACT);
+		}
+		else {
+			handleInteract(event, block, state);
+		}
+	}
+
+	/**
+	 * @return true if the click might add or scrape slime on the face store
+	 */
+	private boolean isFaceRelevant(PlayerInteractEvent event, Block block) {
+		switch (event.getAction()) {
+		case LEFT_CLICK_BLOCK:
+			return faces.faces(block) != 0;
+		case RIGHT_CLICK_BLOCK:
+			ItemStack hand = event.getPlayer().getItemInHand();
+			return hand != null && hand.getType() == Material.SLIME_BALL;
+		default:
+			return false;
+		}
+	}
+
+	private void handleInteract(PlayerInteractEvent event, Block block, int state) {
+		BlockFace face = event.getBlockFace();
+		Player player = event.getPlayer();
+		ItemStack playerHand = player.getItemInHand();
+
+		Thing thing = Thing.byId(state);
+		long rule = slimeRules.rule(state);
+
+		switch (event.getAction()) {
+
+		case LEFT_CLICK_BLOCK:
+			if (thing == Thing.STONE_BRICK_BLOCK) {
+				if (Thing.in(playerHand).is(ANY_PICKAXE) && mayEdit(player, block)
+						&& new BlockEditBatch().set(block, state, Thing.CRACKED_STONE_BRICK_BLOCK).commit()) {
+					branch = "CRACK";
+					changedUndoable(player, block, thing, Thing.CRACKED_STONE_BRICK_BLOCK, 0);
+				}
+			}
+			else if (SlimeRuleTable.hasSlime(rule, face) && mayEdit(player, block)
+					&& timedReplace(block, state, SlimeRuleTable.withoutSlime(rule))) {
+				branch = "SCRAPE";
+				changedUndoable(player, block, thing, replaced(block, thing, SlimeRuleTable.withoutSlime(rule)), 1);
+				drops.drop(block.getRelative(face).getLocation(), Material.SLIME_BALL, player);
+				sounds.play(player, block.getLocation(), Sound.SLIME_ATTACK);
+			}
+			else if (rule == 0 && faces != null && faces.hasSlime(block, face) && mayEdit(player, block)
+					&& faces.remove(block, face)) {
+				branch = "SCRAPE_FACE";
+				int after = faces.faces(block);
+				changedFaces(player, block, after | BlockFaces.bit(face), after, 1);
+				drops.drop(block.getRelative(face).getLocation(), Material.SLIME_BALL, player);
+				sounds.play(player, block.getLocation(), Sound.SLIME_ATTACK);
+			}
+			break;
+
+		case RIGHT_CLICK_BLOCK:
+			if (playerHand != null && playerHand.getType() == Material.SLIME_BALL) {
+				if (SlimeRuleTable.canGetSlime(rule, face) && mayEdit(player, block)
+						&& timedReplace(block, state, SlimeRuleTable.withSlime(rule))) {
+					useSlimeBall(player, playerHand);
+					branch = "APPLY";
+					changedUndoable(player, block, thing, replaced(block, thing, SlimeRuleTable.withSlime(rule)), -1);
+					sounds.play(player, block.getLocation(), SLIME_WALK);
+				}
+				else if (rule == 0 && faces != null && !block.isLiquid() && BlockFaces.bit(face) != 0
+						&& !faces.hasSlime(block, face) && mayEdit(player, block) && faces.add(block, face)) {
+					// the ball is used up, so doors, levers and chests don't get used as well
+					event.setCancelled(true);
+					useSlimeBall(player, playerHand);
+					branch = "APPLY_FACE";
+					int after = faces.faces(block);
+					changedFaces(player, block, after & ~BlockFaces.bit(face), after, -1);
+					sounds.play(player, block.getLocation(), SLIME_WALK);
+				}
+			}
+			// if (playerHand.getType() == Material.STICK) {
+			// plugin.log.log(Level.INFO, "Tags: " +
+			// Thing.in(block).TAGS.size());
+			// for (Tag tag : Thing.in(block).TAGS) {
+			// plugin.log.log(Level.INFO, " - " + tag);
+			// }
+			// }
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,426 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Append-only journal of every block SlimeIt changed for a player, so
+ * moderators can find out who slimed or scraped what. See JournalReader and
+ * JournalQuery for reading it.
+ * 
+ * record() only copies the record into a ring buffer, a background thread
+ * writes the records into memory mapped segment files (journal-000001.bin,
+ * ...). If the writer can't keep up and the ring is full, records get dropped
+ * (and counted) instead of slowing down the server.
+ * 
+ * Segments are preallocated to their full size. Layout, little endian:
+ * 
+ * <pre>
+ * header (64 bytes): magic, version, record count (long),
+ *                    first time, last time (long, ms),
+ *                    min x, max x, min z, max z (int), reserved
+ * records (32 bytes): time (long, ms), player index (int), world index (int),
+ *                     packed x/y/z (long, see pack()), thing id before (int),
+ *                     thing id after (int)
+ * </pre>
+ * 
+ * Changes to slime on single faces (see FaceSlimeStore) have FACES | the face
+ * mask instead of the thing ids.
+ * 
+ * Times only go forward within the journal, so records can be binary searched
+ * by time. Player and world indices are listed in players.txt and worlds.txt
+ * ("index uuid name").
+ * 
+ */
+public class ChangeJournal {
+
+	static final int MAGIC = 0x534C4A31; // SLJ1
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 32;
+
+	static final int COUNT_OFFSET = 8;
+	static final int FIRST_TIME_OFFSET = 16;
+	static final int LAST_TIME_OFFSET = 24;
+	static final int BOUNDS_OFFSET = 32;
+
+	// player index of changes nobody made directly
+	static final int NO_PLAYER = -1;
+
+	// marks the face masks of face records, thing ids never get this high
+	public static final int FACES = 0x40000000;
+
+	static final String PLAYERS_FILE = "players.txt";
+	static final String WORLDS_FILE = "worlds.txt";
+	static final String SEGMENT_PREFIX = "journal-";
+	static final String SEGMENT_SUFFIX = ".bin";
+
+	private static final int LONGS_PER_RECORD = 4;
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final Logger log;
+	private final File directory;
+	private final long recordsPerSegment;
+
+	// single producer (main thread), single consumer (writer thread)
+	private final long[] ring;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+
+	// main thread only
+	private final Map<UUID, Integer> players = new HashMap<UUID, Integer>();
+	private final Map<UUID, Integer> worlds = new HashMap<UUID, Integer>();
+	// new index lines, appended by the writer
+	private final ConcurrentLinkedQueue<String[]> newNames = new ConcurrentLinkedQueue<String[]>();
+
+	private final Thread writer;
+	private volatile boolean running = true;
+	private volatile boolean failed;
+
+	// writer thread only
+	private int segmentNumber;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long segmentCount;
+	private long lastTime;
+
+	/**
+	 * Starts the writer thread.
+	 * 
+	 * @param log
+	 * @param directory
+	 *            gets created if missing
+	 * @param bufferRecords
+	 *            records the ring can hold, rounded up to a power of two
+	 * @param segmentMegabytes
+	 *            size of a segment file
+	 * @throws IOException
+	 *             if the index files can't be read
+	 */
+	public ChangeJournal(Logger log, File directory, int bufferRecords, int segmentMegabytes) throws IOException {
+		this.log = log;
+		this.directory = directory;
+		this.recordsPerSegment = Math.max(1, (segmentMegabytes * 1024L * 1024L - HEADER_SIZE) / RECORD_SIZE);
+
+		int capacity = Integer.highestOneBit(Math.max(2, bufferRecords) - 1) << 1;
+		ring = new long[capacity * LONGS_PER_RECORD];
+		mask = capacity - 1;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create " + directory);
+		}
+		readIndex(new File(directory, PLAYERS_FILE), players);
+		readIndex(new File(directory, WORLDS_FILE), worlds);
+
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "SlimeIt journal writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Main thread only.
+	 * 
+	 * @param player
+	 *            null for changes nobody made directly, e.g. by dispensers
+	 * @param block
+	 * @param before
+	 * @param after
+	 */
+	public void record(Player player, Block block, Thing before, Thing after) {
+		append(player, block, before.id, after.id);
+	}
+
+	/**
+	 * Like {@link #record(Player, Block, Thing, Thing)}, for slime on single
+	 * faces.
+	 * 
+	 * @param before
+	 *            the face mask before the change, see BlockFaces
+	 * @param after
+	 *            the face mask after the change
+	 */
+	public void recordFaces(Player player, Block block, int before, int after) {
+		append(player, block, FACES | before, FACES | after);
+	}
+
+	private void append(Player player, Block block, int before, int after) {
+		long h = head.get();
+		if (failed || h - tail.get() > mask) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		int i = (int) (h & mask) * LONGS_PER_RECORD;
+		ring[i] = System.currentTimeMillis();
+		ring[i + 1] = (long) playerIndex(player) << 32 | (worldIndex(block.getWorld()) & 0xFFFFFFFFL);
+		ring[i + 2] = pack(block.getX(), block.getY(), block.getZ());
+		ring[i + 3] = (long) before << 32 | (after & 0xFFFFFFFFL);
+		head.lazySet(h + 1);
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Writes what's left and stops the writer.
+	 */
+	public void close() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * x and z get 26 bits, y 12 bits, like Minecraft's block positions.
+	 */
+	static long pack(int x, int y, int z) {
+		return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFFF);
+	}
+
+	static int unpackX(long packed) {
+		return (int) (packed >> 38);
+	}
+
+	static int unpackY(long packed) {
+		return (int) (packed << 52 >> 52);
+	}
+
+	static int unpackZ(long packed) {
+		return (int) (packed << 26 >> 38);
+	}
+
+	static File segmentFile(File directory, int number) {
+		return new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @return the number of the segment file or -1 if it isn't one
+	 */
+	static int segmentNumber(File file) {
+		String name = file.getName();
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private int playerIndex(Player player) {
+		if (player == null) {
+			return NO_PLAYER;
+		}
+		Integer index = players.get(player.getUniqueId());
+		if (index == null) {
+			index = players.size();
+			players.put(player.getUniqueId(), index);
+			newNames.add(new String[] { PLAYERS_FILE, index + " " + player.getUniqueId() + " " + player.getName() });
+		}
+		return index;
+	}
+
+	private int worldIndex(World world) {
+		Integer index = worlds.get(world.getUID());
+		if (index == null) {
+			index = worlds.size();
+			worlds.put(world.getUID(), index);
+			newNames.add(new String[] { WORLDS_FILE, index + " " + world.getUID() + " " + world.getName() });
+		}
+		return index;
+	}
+
+	private static void readIndex(File file, Map<UUID, Integer> index) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] words = line.split(" ", 3);
+				if (words.length >= 2) {
+					index.put(UUID.fromString(words[1]), Integer.parseInt(words[0]));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	// == writer thread ==
+
+	private void write() {
+		try {
+			openLastSegment();
+			while (running || head.get() != tail.get()) {
+				writeNames();
+				long t = tail.get();
+				long h = head.get();
+				if (t == h) {
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+				for (; t < h; t++) {
+					if (segmentCount == recordsPerSegment) {
+						openSegment(segmentNumber + 1);
+					}
+					append((int) (t & mask) * LONGS_PER_RECORD);
+				}
+				segment.putLong(COUNT_OFFSET, segmentCount);
+				segment.putLong(LAST_TIME_OFFSET, lastTime);
+				written.addAndGet(h - tail.get());
+				tail.lazySet(h);
+			}
+			writeNames();
+			closeSegment();
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "The journal writer failed, no more changes get recorded", e);
+			failed = true;
+		}
+	}
+
+	private void append(int i) {
+		// times only go forward, even if the clock doesn't
+		long time = Math.max(ring[i], lastTime);
+		long packed = ring[i + 2];
+		if (segmentCount == 0) {
+			segment.putLong(FIRST_TIME_OFFSET, time);
+			segment.putInt(BOUNDS_OFFSET, unpackX(packed));
+			segment.putInt(BOUNDS_OFFSET + 4, unpackX(packed));
+			segment.putInt(BOUNDS_OFFSET + 8, unpackZ(packed));
+			segment.putInt(BOUNDS_OFFSET + 12, unpackZ(packed));
+		}
+		else {
+			widen(BOUNDS_OFFSET, unpackX(packed));
+			widen(BOUNDS_OFFSET + 8, unpackZ(packed));
+		}
+
+		int position = (int) (HEADER_SIZE + segmentCount * RECORD_SIZE);
+		segment.putLong(position, time);
+		segment.putInt(position + 8, (int) (ring[i + 1] >>> 32));
+		segment.putInt(position + 12, (int) ring[i + 1]);
+		segment.putLong(position + 16, packed);
+		segment.putInt(position + 24, (int) (ring[i + 3] >>> 32));
+		segment.putInt(position + 28, (int) ring[i + 3]);
+		segmentCount++;
+		lastTime = time;
+	}
+
+	private void widen(int offset, int value) {
+		if (value < segment.getInt(offset)) {
+			segment.putInt(offset, value);
+		}
+		if (value > segment.getInt(offset + 4)) {
+			segment.putInt(offset + 4, value);
+		}
+	}
+
+	private void writeNames() throws IOException {
+		for (String[] name = newNames.poll(); name != null; name = newNames.poll()) {
+			Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, name[0]), true), "UTF-8");
+			try {
+				out.write(name[1]);
+				out.write('\n');
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Continues the newest segment or starts the first one.
+	 */
+	private void openLastSegment() throws IOException {
+		int last = 0;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				last = Math.max(last, segmentNumber(file));
+			}
+		}
+		openSegment(Math.max(1, last));
+	}
+
+	private void openSegment(int number) throws IOException {
+		closeSegment();
+		segmentNumber = number;
+		File file = segmentFile(directory, number);
+		boolean exists = file.exists();
+
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + recordsPerSegment * RECORD_SIZE);
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (exists && segment.getInt(0) == MAGIC) {
+			segmentCount = segment.getLong(COUNT_OFFSET);
+			lastTime = Math.max(lastTime, segment.getLong(LAST_TIME_OFFSET));
+			if (segmentCount >= recordsPerSegment) {
+				openSegment(number + 1);
+			}
+			return;
+		}
+		segment.putInt(0, MAGIC);
+		segment.putInt(4, VERSION);
+		segment.putLong(COUNT_OFFSET, 0);
+		segmentCount = 0;
+	}
+
+	private void closeSegment() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		segment.putLong(COUNT_OFFSET, segmentCount);
+		segment.putLong(LAST_TIME_OFFSET, lastTime);
+		segment.force();
+		channel.close();
+		channel = null;
+		segment = null;
+	}
+}
@@ -0,0 +1,338 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bukkit.Material;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider.Action;
+
+/**
+ * Lets dispensers add slime to the block in front of them (when they dispense
+ * a slime ball) and scrape it off (when they dispense shears), following the
+ * same slime rules as players clicking the face that points at the
+ * dispenser.
+ * 
+ * Redstone farms fire lots of dispensers per tick, so the events only queue
+ * the target and get cancelled, the blocks are changed together when this
+ * runs once per tick:
+ * 
+ * - each target changes at most once per tick, no matter how many dispensers
+ * point at it, the others keep their items
+ * 
+ * - each scraped target drops one slime ball, through the DropAggregator, and
+ * wears the shears like shearing a sheep does
+ * 
+ * - at most maxPerChunk targets per chunk and tick, further dispensers in that
+ * chunk do nothing that tick and keep their items
+ * 
+ * Dispensers that point at something the rules don't allow, or at a
+ * protected block (see ProtectionCache.mayEditWithoutPlayer), dispense their
+ * items like vanilla, also inside the region of their owner. The slime ball
+ * is taken from the dispenser when the block actually changes.
+ * 
+ * Only use this from the main thread. Run it every tick to apply the queue.
+ * 
+ */
+public class DispenserSlimer implements Listener, Runnable {
+
+	private static final int DISPENSER_ID = Material.DISPENSER.getId();
+	private static final Sound[] SLIME_WALK = { Sound.SLIME_WALK, Sound.SLIME_WALK2 };
+
+	private final SlimeRules slimeRules;
+	private final DropAggregator drops;
+	private final SoundScheduler sounds;
+	private final int maxPerChunk;
+
+	private SlimeIndex index;
+	private ChangeJournal journal;
+	private ProtectionCache protection;
+
+	private final Map<World, Queue> queues = new HashMap<World, Queue>();
+
+	private long slimed;
+	private long scraped;
+	private long deduplicated;
+	private long capped;
+
+	/**
+	 * @param slimeRules
+	 * @param drops
+	 *            needs to be run every tick
+	 * @param sounds
+	 *            needs to be run every tick
+	 * @param maxPerChunk
+	 *            cap for changed targets per chunk and tick
+	 */
+	public DispenserSlimer(SlimeRules slimeRules, DropAggregator drops, SoundScheduler sounds, int maxPerChunk) {
+		this.slimeRules = slimeRules;
+		this.drops = drops;
+		this.sounds = sounds;
+		this.maxPerChunk = Math.max(1, maxPerChunk);
+	}
+
+	/**
+	 * @param index
+	 *            gets told about every block this changes, may be null
+	 */
+	public void setIndex(SlimeIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * @param journal
+	 *            records every block this changes (without a player), may be
+	 *            null
+	 */
+	public void setJournal(ChangeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @param protection
+	 *            asked before a target gets queued, null to allow everything
+	 */
+	public void setProtection(ProtectionCache protection) {
+		this.protection = protection;
+	}
+
+	@EventHandler(ignoreCancelled = true)
+	public void dispense(BlockDispenseEvent event) {
+		Block dispenser = event.getBlock();
+		ItemStack item = event.getItem();
+		if (item == null || dispenser.getTypeId() != DISPENSER_ID) {
+			return; // droppers fire this too
+		}
+		boolean apply = item.getType() == Material.SLIME_BALL;
+		if (!apply && item.getType() != Material.SHEARS) {
+			return;
+		}
+		int facing = dispenser.getData() & 7;
+		if (facing >= BlockFaces.ALL.length) {
+			return;
+		}
+
+		BlockFace direction = BlockFaces.ALL[facing];
+		Block target = dispenser.getRelative(direction);
+		BlockFace face = direction.getOppositeFace();
+		long rule = slimeRules.rule(BlockStates.of(target));
+		if (apply ? !SlimeRuleTable.canGetSlime(rule, face) : !SlimeRuleTable.hasSlime(rule, face)) {
+			return;
+		}
+		if (protection != null && !protection.mayEditWithoutPlayer(target, Action.BUILD)) {
+			return;
+		}
+		event.setCancelled(true);
+
+		World world = target.getWorld();
+		Queue queue = queues.get(world);
+		if (queue == null) {
+			queue = new Queue();
+			queues.put(world, queue);
+		}
+		queue.add(new Target(dispenser, target, face, apply));
+	}
+
+	/**
+	 * Changes all queued targets.
+	 */
+	@Override
+	public void run() {
+		if (queues.isEmpty()) {
+			return;
+		}
+		for (Queue queue : queues.values()) {
+			for (Target target : queue.targets) {
+				change(target);
+			}
+		}
+		queues.clear();
+	}
+
+	private void change(Target target) {
+		Block block = target.block;
+		// the rules are checked again, the block may have changed since
+		int state = BlockStates.of(block);
+		long rule = slimeRules.rule(state);
+		Thing before = Thing.byId(state);
+
+		if (target.apply) {
+			if (!SlimeRuleTable.canGetSlime(rule, target.face) || !takeSlimeBall(target.dispenser)) {
+				return;
+			}
+			Thing after = SlimeRuleTable.withSlime(rule);
+			if (!replace(block, state, after)) {
+				giveSlimeBall(target.dispenser);
+				return;
+			}
+			slimed++;
+			changed(block, before, BlockPunchListener.replaced(block, before, after));
+			sounds.play(null, block.getLocation(), SLIME_WALK);
+		}
+		else {
+			if (!SlimeRuleTable.hasSlime(rule, target.face)) {
+				return;
+			}
+			Thing after = SlimeRuleTable.withoutSlime(rule);
+			if (!replace(block, state, after)) {
+				return;
+			}
+			scraped++;
+			changed(block, before, BlockPunchListener.replaced(block, before, after));
+			drops.drop(block.getRelative(target.face).getLocation(), Material.SLIME_BALL, null);
+			sounds.play(null, block.getLocation(), Sound.SLIME_ATTACK);
+			damageShears(target.dispenser);
+		}
+	}
+
+	/**
+	 * Takes one point of durability off the shears in the dispenser, unless
+	 * unbreaking saves it, and breaks them after the last one.
+	 */
+	private void damageShears(Block dispenser) {
+		BlockState state = dispenser.getState();
+		if (!(state instanceof InventoryHolder)) {
+			return;
+		}
+		Inventory inventory = ((InventoryHolder) state).getInventory();
+		int slot = inventory.first(Material.SHEARS);
+		if (slot < 0) {
+			return;
+		}
+		ItemStack shears = inventory.getItem(slot);
+		int unbreaking = shears.getEnchantmentLevel(Enchantment.DURABILITY);
+		if (unbreaking > 0 && ThreadLocalRandom.current().nextInt(unbreaking + 1) > 0) {
+			return;
+		}
+		int damage = shears.getDurability() + 1;
+		if (damage > Material.SHEARS.getMaxDurability()) {
+			inventory.setItem(slot, null);
+			sounds.play(null, dispenser.getLocation(), Sound.ITEM_BREAK);
+			return;
+		}
+		shears.setDurability((short) damage);
+		inventory.setItem(slot, shears);
+	}
+
+	private void changed(Block block, Thing before, Thing after) {
+		if (index != null) {
+			index.update(block, after.id);
+		}
+		if (journal != null) {
+			journal.record(null, block, before, after);
+		}
+	}
+
+	/**
+	 * @return false if the dispenser ran out of slime balls in the meantime
+	 */
+	private static boolean takeSlimeBall(Block dispenser) {
+		BlockState state = dispenser.getState();
+		if (!(state instanceof InventoryHolder)) {
+			return false;
+		}
+		return ((InventoryHolder) state).getInventory().removeItem(new ItemStack(Material.SLIME_BALL, 1)).isEmpty();
+	}
+
+	private void giveSlimeBall(Block dispenser) {
+		BlockState state = dispenser.getState();
+		if (!(state instanceof InventoryHolder)
+				|| !((InventoryHolder) state).getInventory().addItem(new ItemStack(Material.SLIME_BALL, 1)).isEmpty()) {
+			drops.drop(dispenser.getLocation(), Material.SLIME_BALL, null);
+		}
+	}
+
+	/**
+	 * @return targets changed by slime balls since the start
+	 */
+	public long getSlimed() {
+		return slimed;
+	}
+
+	/**
+	 * @return targets scraped by shears since the start
+	 */
+	public long getScraped() {
+		return scraped;
+	}
+
+	/**
+	 * @return dispensers ignored because another one already targeted the
+	 *         same block that tick
+	 */
+	public long getDeduplicated() {
+		return deduplicated;
+	}
+
+	/**
+	 * @return dispensers ignored because their chunk hit the cap
+	 */
+	public long getCapped() {
+		return capped;
+	}
+
+	/**
+	 * The targets of one world for the current tick, in the order they were
+	 * first dispensed at.
+	 */
+	private class Queue {
+		final List<Target> targets = new ArrayList<Target>();
+		final Map<Long, Target> byPosition = new HashMap<Long, Target>();
+		final Map<Long, Integer> perChunk = new HashMap<Long, Integer>();
+
+		void add(Target target) {
+			Block block = target.block;
+			Long position = ChangeJournal.pack(block.getX(), block.getY(), block.getZ());
+			if (byPosition.containsKey(position)) {
+				deduplicated++;
+				return;
+			}
+			Long chunk = ((long) (block.getX() >> 4) << 32) | ((block.getZ() >> 4) & 0xFFFFFFFFL);
+			Integer countBefore = perChunk.get(chunk);
+			int count = countBefore == null ? 0 : countBefore;
+			if (count >= maxPerChunk) {
+				capped++;
+				return;
+			}
+			perChunk.put(chunk, count + 1);
+			byPosition.put(position, target);
+			targets.add(target);
+		}
+	}
+
+	private static class Target {
+		final Block dispenser;
+		final Block block;
+		// the face of block that points at the dispenser
+		final BlockFace face;
+		// slime ball, otherwise shears
+		final boolean apply;
+
+		Target(Block dispenser, Block block, BlockFace face, boolean apply) {
+			this.dispenser = dispenser;
+			this.block = block;
+			this.face = face;
+			this.apply = apply;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Collects the items SlimeIt drops during a tick and spawns them once at the
+ * end of the tick, merged into stacks per cell. Without this every slime ball
+ * would be its own item entity, which adds up quickly when someone scrapes a
+ * whole mossy wall.
+ * 
+ * At most maxEntitiesPerChunk item entities get spawned per chunk and tick.
+ * The rest goes into the inventory of the player who caused the drop, or waits
+ * for the next tick if that's not possible.
+ * 
+ * Only use this from the main thread. Run it every tick to flush.
+ * 
+ */
+public class DropAggregator implements Runnable {
+
+	private final int cellSize;
+	private final int maxEntitiesPerChunk;
+
+	private final Map<World, Map<Long, PendingDrop>> pending = new HashMap<World, Map<Long, PendingDrop>>();
+	private final Map<Long, Integer> spawnedPerChunk = new HashMap<Long, Integer>();
+
+	/**
+	 * @param cellSize
+	 *            drops within a cube of this many blocks get merged, 1 means
+	 *            per block
+	 * @param maxEntitiesPerChunk
+	 *            cap for spawned item entities per chunk and tick
+	 */
+	public DropAggregator(int cellSize, int maxEntitiesPerChunk) {
+		this.cellSize = Math.max(1, cellSize);
+		this.maxEntitiesPerChunk = Math.max(1, maxEntitiesPerChunk);
+	}
+
+	/**
+	 * Queues a drop for the end of the tick.
+	 * 
+	 * @param location
+	 * @param material
+	 * @param amount
+	 * @param player
+	 *            who caused the drop, gets the surplus. May be null.
+	 */
+	public void drop(Location location, Material material, int amount, Player player) {
+		World world = location.getWorld();
+		Map<Long, PendingDrop> cells = pending.get(world);
+		if (cells == null) {
+			cells = new HashMap<Long, PendingDrop>();
+			pending.put(world, cells);
+		}
+
+		Long cell = cell(location);
+		PendingDrop drop = cells.get(cell);
+		if (drop == null) {
+			drop = new PendingDrop(location);
+			cells.put(cell, drop);
+		}
+		drop.add(material, amount);
+		if (player != null) {
+			drop.player = player;
+		}
+	}
+
+	public void drop(Location location, Material material, Player player) {
+		drop(location, material, 1, player);
+	}
+
+	/**
+	 * Spawns everything that was queued during this tick.
+	 */
+	@Override
+	public void run() {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		// anything that can't be spawned gets queued again for the next tick
+		List<Map<Long, PendingDrop>> worlds = new ArrayList<Map<Long, PendingDrop>>(pending.values());
+		pending.clear();
+
+		for (Map<Long, PendingDrop> cells : worlds) {
+			spawnedPerChunk.clear();
+			for (PendingDrop drop : cells.values()) {
+				spawn(drop);
+			}
+		}
+	}
+
+	private void spawn(PendingDrop drop) {
+		Location location = drop.location;
+		Long chunk = ((long) (location.getBlockX() >> 4) << 32) | ((location.getBlockZ() >> 4) & 0xFFFFFFFFL);
+		Integer spawnedBefore = spawnedPerChunk.get(chunk);
+		int spawned = spawnedBefore == null ? 0 : spawnedBefore;
+
+		for (ItemStack stack : drop.stacks()) {
+			if (spawned < maxEntitiesPerChunk) {
+				location.getWorld().dropItemNaturally(location, stack);
+				spawned++;
+				continue;
+			}
+
+			if (drop.player != null && drop.player.isOnline()) {
+				Map<Integer, ItemStack> leftOver = drop.player.getInventory().addItem(stack);
+				for (ItemStack rest : leftOver.values()) {
+					drop(location, rest.getType(), rest.getAmount(), drop.player);
+				}
+			}
+			else {
+				drop(location, stack.getType(), stack.getAmount(), null);
+			}
+		}
+
+		spawnedPerChunk.put(chunk, spawned);
+	}
+
+	private long cell(Location location) {
+		long x = Math.floorDiv(location.getBlockX(), cellSize);
+		long y = Math.floorDiv(location.getBlockY(), cellSize);
+		long z = Math.floorDiv(location.getBlockZ(), cellSize);
+		return ((x & 0x3FFFFFF) << 38) | ((z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+	}
+
+	/**
+	 * Everything that drops in one cell. Usually one or two materials, so
+	 * arrays are plenty.
+	 */
+	private static class PendingDrop {
+		final Location location;
+		Player player;
+
+		Material[] materials = new Material[2];
+		int[] amounts = new int[2];
+		int size;
+
+		PendingDrop(Location location) {
+			this.location = location;
+		}
+
+		void add(Material material, int amount) {
+			for (int i = 0; i < size; i++) {
+				if (materials[i] == material) {
+					amounts[i] += amount;
+					return;
+				}
+			}
+			if (size == materials.length) {
+				materials = Arrays.copyOf(materials, size * 2);
+				amounts = Arrays.copyOf(amounts, size * 2);
+			}
+			materials[size] = material;
+			amounts[size] = amount;
+			size++;
+		}
+
+		List<ItemStack> stacks() {
+			List<ItemStack> stacks = new ArrayList<ItemStack>();
+			for (int i = 0; i < size; i++) {
+				int maxStackSize = Math.max(1, materials[i].getMaxStackSize());
+				for (int left = amounts[i]; left > 0; left -= maxStackSize) {
+					stacks.add(new ItemStack(materials[i], Math.min(left, maxStackSize)));
+				}
+			}
+			return stacks;
+		}
+	}
+}
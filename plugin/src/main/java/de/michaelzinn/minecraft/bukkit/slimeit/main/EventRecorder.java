@@ -0,0 +1,258 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.Action;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+
+/**
+ * Records the break and interact events BlockPunchListener sees into a binary
+ * trace file, so real player behaviour can be replayed offline (see
+ * TraceReplay in the benchmarks and {@link EventTraceReader}).
+ * 
+ * Records are written into a buffer on the main thread. Full buffers go to a
+ * background thread that writes them to the file, if all buffers are busy the
+ * event is dropped and counted.
+ * 
+ * Layout, little endian:
+ * 
+ * <pre>
+ * header (32 bytes): magic, version (int), start time (long, ms),
+ *                    record size (int), reserved
+ * records (32 bytes): nanos since start (long), player index (int),
+ *                     x (int), z (int), y (short), block type id (short),
+ *                     block data, kind, face (byte), item amount (byte),
+ *                     item type id (short), item durability (short)
+ * </pre>
+ * 
+ * Kind is one of BREAK, LEFT_CLICK, RIGHT_CLICK or OTHER (physical), face is
+ * the orientation index of the clicked face (see BlockFaces) or NO_FACE.
+ * Players are numbered in the order they appear, names aren't recorded.
+ * 
+ */
+public class EventRecorder {
+
+	static final int MAGIC = 0x534C5431; // SLT1
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int RECORD_SIZE = 32;
+
+	public static final int BREAK = 0;
+	public static final int LEFT_CLICK = 1;
+	public static final int RIGHT_CLICK = 2;
+	public static final int OTHER = 3;
+
+	public static final int NO_FACE = 6;
+
+	private static final int BUFFERS = 4;
+
+	private final Logger log;
+	private final File file;
+	private final FileChannel channel;
+	private final long maxEvents;
+	private final long startNanos = System.nanoTime();
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "SlimeIt event recorder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+	private ByteBuffer current;
+
+	private final Map<UUID, Integer> players = new HashMap<UUID, Integer>();
+
+	private long recorded;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean failed;
+	private boolean closed;
+
+	/**
+	 * Creates the file and writes the header.
+	 * 
+	 * @param log
+	 * @param file
+	 *            gets overwritten
+	 * @param bufferKilobytes
+	 *            size of each of the write buffers
+	 * @param maxEvents
+	 *            events after this many get ignored, 0 for no limit
+	 * @throws IOException
+	 */
+	public EventRecorder(Logger log, File file, int bufferKilobytes, long maxEvents) throws IOException {
+		this.log = log;
+		this.file = file;
+		this.maxEvents = maxEvents <= 0 ? Long.MAX_VALUE : maxEvents;
+
+		File directory = file.getParentFile();
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create " + directory);
+		}
+		channel = new FileOutputStream(file).getChannel();
+
+		int bufferSize = Math.max(1, bufferKilobytes * 1024 / RECORD_SIZE) * RECORD_SIZE;
+		for (int i = 0; i < BUFFERS; i++) {
+			free.add(ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(RECORD_SIZE);
+		header.clear();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		current = free.poll();
+	}
+
+	/**
+	 * Main thread only, call before the event gets handled.
+	 */
+	public void recordBreak(Player player, Block block) {
+		record(player, block, BREAK, NO_FACE);
+	}
+
+	/**
+	 * Main thread only, call before the event gets handled.
+	 */
+	public void recordInteract(Player player, Action action, BlockFace face, Block block) {
+		int kind = action == Action.LEFT_CLICK_BLOCK ? LEFT_CLICK : action == Action.RIGHT_CLICK_BLOCK ? RIGHT_CLICK
+				: OTHER;
+		int faceIndex = face == null ? -1 : BlockFaces.index(face);
+		record(player, block, kind, faceIndex < 0 ? NO_FACE : faceIndex);
+	}
+
+	private void record(Player player, Block block, int kind, int face) {
+		if (closed || failed || recorded >= maxEvents) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (current == null || current.remaining() < RECORD_SIZE) {
+			flush();
+			if (current == null) {
+				current = free.poll();
+			}
+			if (current == null) {
+				dropped.incrementAndGet();
+				return;
+			}
+		}
+
+		ItemStack item = player.getItemInHand();
+		ByteBuffer out = current;
+		out.putLong(System.nanoTime() - startNanos);
+		out.putInt(playerIndex(player));
+		out.putInt(block.getX());
+		out.putInt(block.getZ());
+		out.putShort((short) block.getY());
+		out.putShort((short) block.getTypeId());
+		out.put(block.getData());
+		out.put((byte) kind);
+		out.put((byte) face);
+		if (item == null) {
+			out.put((byte) 0);
+			out.putShort((short) 0);
+			out.putShort((short) 0);
+		}
+		else {
+			out.put((byte) item.getAmount());
+			out.putShort((short) item.getTypeId());
+			out.putShort(item.getDurability());
+		}
+		recorded++;
+	}
+
+	/**
+	 * Hands the current buffer to the writer thread.
+	 */
+	private void flush() {
+		final ByteBuffer full = current;
+		if (full == null || full.position() == 0) {
+			return;
+		}
+		current = null;
+		full.flip();
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (full.hasRemaining()) {
+						channel.write(full);
+					}
+				} catch (IOException e) {
+					if (!failed) {
+						log.log(Level.SEVERE, "Couldn't write the event trace " + file + ", stopped recording", e);
+					}
+					failed = true;
+				}
+				full.clear();
+				free.offer(full);
+			}
+		});
+	}
+
+	private int playerIndex(Player player) {
+		Integer index = players.get(player.getUniqueId());
+		if (index == null) {
+			index = players.size();
+			players.put(player.getUniqueId(), index);
+		}
+		return index;
+	}
+
+	public long getRecorded() {
+		return recorded;
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes what's left and closes the file. Main thread only.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		flush();
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+			channel.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Couldn't close the event trace " + file, e);
+		}
+	}
+}
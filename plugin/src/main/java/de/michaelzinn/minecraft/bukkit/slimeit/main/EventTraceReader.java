@@ -0,0 +1,116 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the traces written by {@link EventRecorder}.
+ * 
+ */
+public class EventTraceReader {
+
+	public interface Visitor {
+		/**
+		 * @param nanos
+		 *            since the recording started
+		 * @param kind
+		 *            EventRecorder.BREAK, LEFT_CLICK, RIGHT_CLICK or OTHER
+		 * @param face
+		 *            orientation index or EventRecorder.NO_FACE
+		 * @param blockType
+		 *            block type id before the event
+		 * @param blockData
+		 *            block data before the event
+		 */
+		void visit(long nanos, int player, int kind, int face, int x, int y, int z, int blockType, int blockData,
+				int itemType, int itemAmount, int itemDurability);
+	}
+
+	private final File file;
+	private final long startMillis;
+	private final long count;
+
+	/**
+	 * Reads the header.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 *             if it isn't a trace
+	 */
+	public EventTraceReader(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < EventRecorder.HEADER_SIZE) {
+				throw new IOException(file + " is too short to be an event trace");
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, EventRecorder.HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != EventRecorder.MAGIC) {
+				throw new IOException(file + " isn't an event trace");
+			}
+			if (header.getInt(4) != EventRecorder.VERSION || header.getInt(16) != EventRecorder.RECORD_SIZE) {
+				throw new IOException(file + " has an unknown event trace version " + header.getInt(4));
+			}
+			startMillis = header.getLong(8);
+			// a trace cut off while writing may end in a partial record
+			count = (channel.size() - EventRecorder.HEADER_SIZE) / EventRecorder.RECORD_SIZE;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return when the recording started, ms
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the number of recorded events
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Visits all events in recording order.
+	 * 
+	 * @return the number of visited events
+	 * @throws IOException
+	 */
+	public long scan(Visitor visitor) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = EventRecorder.HEADER_SIZE + count * EventRecorder.RECORD_SIZE;
+			MappedByteBuffer in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			in.order(ByteOrder.LITTLE_ENDIAN);
+			in.position(EventRecorder.HEADER_SIZE);
+			for (long i = 0; i < count; i++) {
+				long nanos = in.getLong();
+				int player = in.getInt();
+				int x = in.getInt();
+				int z = in.getInt();
+				int y = in.getShort();
+				int blockType = in.getShort() & 0xFFFF;
+				int blockData = in.get() & 0xF;
+				int kind = in.get();
+				int face = in.get();
+				int itemAmount = in.get() & 0xFF;
+				int itemType = in.getShort() & 0xFFFF;
+				int itemDurability = in.getShort();
+				visitor.visit(nanos, player, kind, face, x, y, z, blockType, blockData, itemType, itemAmount,
+						itemDurability);
+			}
+			return count;
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Effect;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+
+/**
+ * Shows the slime in the FaceSlimeStore with slime particles, there's no
+ * texture for it.
+ * 
+ * Each player only sees the faces within radius blocks of their eyes that
+ * point towards them, found through FaceSlimeStore.query instead of looking
+ * at blocks. The particles are sent to that player alone:
+ * 
+ * - Players are drawn for every periodTicks ticks, spread evenly over those
+ * ticks, so a crowd in one build area doesn't make one tick expensive.
+ * 
+ * - Each player gets at most maxPerPlayerPerSecond particles per second. If
+ * more faces are visible the next passes continue where the last one
+ * stopped, so all of them show up in turn.
+ * 
+ * - A player whose surroundings had no slimed blocks is skipped without a
+ * query until they move to another chunk section or the store changes.
+ * 
+ * Only use this from the main thread. Run it every tick.
+ * 
+ */
+public class FaceRenderer implements Runnable, Listener {
+
+	private static final int DOWN = BlockFaces.bit(BlockFace.DOWN);
+	private static final int UP = BlockFaces.bit(BlockFace.UP);
+	private static final int NORTH = BlockFaces.bit(BlockFace.NORTH);
+	private static final int SOUTH = BlockFaces.bit(BlockFace.SOUTH);
+	private static final int WEST = BlockFaces.bit(BlockFace.WEST);
+	private static final int EAST = BlockFaces.bit(BlockFace.EAST);
+
+	// how far in front of the face the particle appears
+	private static final double OFFSET = 0.6;
+
+	private final FaceSlimeStore faces;
+	private final int radius;
+	private final int periodTicks;
+	private final int perPass;
+
+	private final Map<UUID, Viewer> viewers = new HashMap<UUID, Viewer>();
+	private int nextSlot;
+	private int tick;
+
+	// reused for every query
+	private final int[] min = new int[3];
+	private final int[] max = new int[3];
+	private final Drawer drawer = new Drawer();
+
+	private long drawn;
+	private long throttled;
+	private long skipped;
+
+	/**
+	 * @param faces
+	 * @param radius
+	 *            in blocks, from the eyes of the player
+	 * @param periodTicks
+	 *            each player gets drawn every this many ticks
+	 * @param maxPerPlayerPerSecond
+	 *            particles, i.e. packets
+	 */
+	public FaceRenderer(FaceSlimeStore faces, int radius, int periodTicks, int maxPerPlayerPerSecond) {
+		this.faces = faces;
+		this.radius = Math.max(1, radius);
+		this.periodTicks = Math.max(1, periodTicks);
+		this.perPass = Math.max(1, Math.max(1, maxPerPlayerPerSecond) * this.periodTicks / 20);
+	}
+
+	/**
+	 * Draws the players whose turn it is.
+	 */
+	@Override
+	public void run() {
+		render(Bukkit.getOnlinePlayers());
+	}
+
+	/**
+	 * Counts as one tick, draws the players out of players whose turn it is.
+	 */
+	public void render(Collection<? extends Player> players) {
+		int slot = tick++ % periodTicks;
+		if (players == null || players.isEmpty()) {
+			return;
+		}
+		for (Player player : players) {
+			Viewer viewer = viewers.get(player.getUniqueId());
+			if (viewer == null) {
+				viewer = new Viewer(nextSlot++ % periodTicks);
+				viewers.put(player.getUniqueId(), viewer);
+			}
+			if (viewer.slot == slot) {
+				draw(player, viewer);
+			}
+		}
+	}
+
+	private void draw(Player player, Viewer viewer) {
+		Location eye = player.getEyeLocation();
+		World world = eye.getWorld();
+		int sectionX = eye.getBlockX() >> 4;
+		int sectionY = eye.getBlockY() >> 4;
+		int sectionZ = eye.getBlockZ() >> 4;
+		if (viewer.empty && viewer.world == world && viewer.version == faces.version()
+				&& viewer.sectionX == sectionX && viewer.sectionY == sectionY && viewer.sectionZ == sectionZ) {
+			skipped++;
+			return;
+		}
+
+		// everything within radius of any point in the section, so an empty
+		// result stays valid while the player stays in it
+		min[0] = (sectionX << 4) - radius;
+		min[1] = (sectionY << 4) - radius;
+		min[2] = (sectionZ << 4) - radius;
+		max[0] = (sectionX << 4) + 15 + radius;
+		max[1] = (sectionY << 4) + 15 + radius;
+		max[2] = (sectionZ << 4) + 15 + radius;
+
+		drawer.start(player, eye, viewer.offset);
+		faces.query(world, min, max, drawer);
+		drawn += drawer.drawn;
+		throttled += drawer.over;
+
+		// continue after the drawn faces next time, start over once all of
+		// them had their turn
+		viewer.offset = drawer.over == 0 ? 0 : viewer.offset + drawer.drawn;
+		viewer.empty = drawer.found == 0;
+		viewer.world = world;
+		viewer.version = faces.version();
+		viewer.sectionX = sectionX;
+		viewer.sectionY = sectionY;
+		viewer.sectionZ = sectionZ;
+		drawer.player = null;
+	}
+
+	@EventHandler
+	public void playerQuit(PlayerQuitEvent event) {
+		viewers.remove(event.getPlayer().getUniqueId());
+	}
+
+	/**
+	 * @return particles sent since the start
+	 */
+	public long getDrawn() {
+		return drawn;
+	}
+
+	/**
+	 * @return visible faces that weren't drawn because of the budget
+	 */
+	public long getThrottled() {
+		return throttled;
+	}
+
+	/**
+	 * @return passes skipped because there was nothing around the player
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * What was drawn for a player last time.
+	 */
+	private static class Viewer {
+		final int slot;
+		int offset;
+		boolean empty;
+		World world;
+		int version;
+		int sectionX;
+		int sectionY;
+		int sectionZ;
+
+		Viewer(int slot) {
+			this.slot = slot;
+		}
+	}
+
+	/**
+	 * Draws the visible faces of one query, skipping the first offset ones
+	 * and stopping at the budget.
+	 */
+	private class Drawer implements FaceSlimeStore.Visitor {
+		Player player;
+		double eyeX;
+		double eyeY;
+		double eyeZ;
+		int offset;
+		double radiusSquared;
+		// blocks with slimed faces in the queried cuboid
+		int found;
+		// faces within radius that point at the player
+		int seen;
+		int drawn;
+		// visible faces left for the next passes
+		int over;
+
+		void start(Player player, Location eye, int offset) {
+			this.player = player;
+			eyeX = eye.getX();
+			eyeY = eye.getY();
+			eyeZ = eye.getZ();
+			this.offset = offset;
+			radiusSquared = (double) radius * radius;
+			found = 0;
+			seen = 0;
+			drawn = 0;
+			over = 0;
+		}
+
+		@Override
+		public void visit(World world, int x, int y, int z, int mask) {
+			found++;
+			double dx = x + 0.5 - eyeX;
+			double dy = y + 0.5 - eyeY;
+			double dz = z + 0.5 - eyeZ;
+			if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+				return;
+			}
+			int visible = mask & facing(x, y, z);
+			for (int i = 0; visible != 0; i++, visible >>>= 1) {
+				if ((visible & 1) == 0) {
+					continue;
+				}
+				if (seen++ < offset) {
+					continue;
+				}
+				if (drawn >= perPass) {
+					over++;
+					continue;
+				}
+				BlockFace face = BlockFaces.ALL[i];
+				player.playEffect(new Location(world, x + 0.5 + face.getModX() * OFFSET, y + 0.5 + face.getModY()
+						* OFFSET, z + 0.5 + face.getModZ() * OFFSET), Effect.SLIME, 0);
+				drawn++;
+			}
+		}
+
+		/**
+		 * @return the faces of the block at x y z that the eyes are in front
+		 *         of
+		 */
+		private int facing(int x, int y, int z) {
+			int mask = 0;
+			if (eyeY < y) {
+				mask |= DOWN;
+			}
+			else if (eyeY > y + 1) {
+				mask |= UP;
+			}
+			if (eyeZ < z) {
+				mask |= NORTH;
+			}
+			else if (eyeZ > z + 1) {
+				mask |= SOUTH;
+			}
+			if (eyeX < x) {
+				mask |= WEST;
+			}
+			else if (eyeX > x + 1) {
+				mask |= EAST;
+			}
+			return mask;
+		}
+	}
+}
@@ -0,0 +1,1196 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+
+/**
+ * Slime on any face of any block, for everything the data values can't
+ * express (the slime rules only know a few pairs like cobble and mossy
+ * cobble).
+ * 
+ * In memory it's a sparse map per chunk section from the position within the
+ * section to a 6 bit face mask (see BlockFaces), in primitive arrays. Chunks
+ * are found through a primitive long map per world, so faces() is a few
+ * array reads and never allocates, it runs on every click.
+ * 
+ * On disk it's one file per region of 32x32 chunks and world, in
+ * faces/<world>/r.<x>.<z>.slf:
+ * 
+ * <pre>
+ * header (16 bytes): magic, version, reserved (int, little endian)
+ * table (1024 * 8 bytes): offset, length of each chunk (int), 0 if none
+ * chunks: count (int), count * (position (char, y << 8 | z << 4 | x), mask)
+ * </pre>
+ * 
+ * Saved chunks are appended and the table entry is written afterwards, so a
+ * crash never leaves the table pointing at half written data. Once more than
+ * half of a file is stale it gets rewritten into a temporary file and moved
+ * over the old one.
+ * 
+ * Chunks get loaded when the chunk loads and saved when it unloads or the
+ * world saves, both on a background thread. Faces of a chunk that's still
+ * loading read as no slime, edits made meanwhile win over the loaded ones.
+ * 
+ * The faces follow blocks moved by pistons. Exploded and decayed blocks drop
+ * their slime balls, burnt and faded ones lose them. Player breaks are up to
+ * the BlockPunchListener. Blocks other plugins change without an event keep
+ * their faces until a block gets placed there.
+ * 
+ * Only use this from the main thread (except close()), run it every tick to
+ * take in loaded chunks.
+ * 
+ */
+public class FaceSlimeStore implements Listener, Runnable {
+
+	static final int MAGIC = 0x534C4631; // SLF1
+	static final int VERSION = 1;
+	static final int REGION_CHUNKS = 32;
+	static final int TABLE_OFFSET = 16;
+	static final int HEADER_SIZE = TABLE_OFFSET + REGION_CHUNKS * REGION_CHUNKS * 8;
+	static final int ENTRY_SIZE = 3;
+
+	private static final int SECTIONS = 16;
+	private static final int HEIGHT = SECTIONS * 16;
+	// open region files, the least recently used get closed first
+	private static final int OPEN_REGIONS = 16;
+	// stale bytes a region may have before it's worth rewriting it
+	private static final int MIN_STALE_BYTES = 64 * 1024;
+
+	// marks a position that got cleared while its chunk was loading, so the
+	// loaded faces don't come back
+	private static final int CLEARED = 0x40;
+
+	private final Logger log;
+	private final File directory;
+	private DropAggregator drops;
+
+	private final Map<World, Chunks> worlds = new HashMap<World, Chunks>();
+	// most lookups are in the same world as the one before
+	private World lastWorld;
+	private Chunks lastChunks;
+
+	// counts every change, see version()
+	private int version;
+
+	private final Queue<Loaded> loaded = new ConcurrentLinkedQueue<Loaded>();
+
+	private final ExecutorService io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "SlimeIt face store");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	// io thread only
+	private final Map<File, Region> regions = new LinkedHashMap<File, Region>(OPEN_REGIONS, 0.75f, true);
+
+	private final AtomicInteger pendingWrites = new AtomicInteger();
+	private final AtomicLong writtenChunks = new AtomicLong();
+	private volatile boolean failed;
+	private boolean closed;
+
+	/**
+	 * @param log
+	 * @param directory
+	 *            gets a folder per world
+	 */
+	public FaceSlimeStore(Logger log, File directory) {
+		this.log = log;
+		this.directory = directory;
+	}
+
+	/**
+	 * @param drops
+	 *            drops the slime balls of exploded and decayed blocks, null to
+	 *            lose them
+	 */
+	public void setDrops(DropAggregator drops) {
+		this.drops = drops;
+	}
+
+	/**
+	 * @return the mask of the faces of the block that have slime on them, see
+	 *         BlockFaces
+	 */
+	public int faces(Block block) {
+		return faces(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+
+	public int faces(World world, int x, int y, int z) {
+		if (y < 0 || y >= HEIGHT) {
+			return 0;
+		}
+		Chunks chunks = chunks(world, false);
+		ChunkFaces chunk = chunks == null ? null : chunks.get(chunkKey(x >> 4, z >> 4));
+		return chunk == null ? 0 : chunk.get(position(x, y, z)) & BlockFaces.ALL_MASK;
+	}
+
+	public boolean hasSlime(Block block, BlockFace face) {
+		return (faces(block) & BlockFaces.bit(face)) != 0;
+	}
+
+	/**
+	 * @return false if the face already had slime
+	 */
+	public boolean add(Block block, BlockFace face) {
+		int faces = faces(block);
+		int bit = BlockFaces.bit(face);
+		if (bit == 0 || (faces & bit) != 0) {
+			return false;
+		}
+		set(block, faces | bit);
+		return true;
+	}
+
+	/**
+	 * @return false if the face had no slime
+	 */
+	public boolean remove(Block block, BlockFace face) {
+		int faces = faces(block);
+		int bit = BlockFaces.bit(face);
+		if ((faces & bit) == 0) {
+			return false;
+		}
+		set(block, faces & ~bit);
+		return true;
+	}
+
+	/**
+	 * Removes the slime from all faces, e.g. when the block gets broken.
+	 * 
+	 * @return the mask the block had
+	 */
+	public int clear(Block block) {
+		int faces = faces(block);
+		if (faces != 0) {
+			set(block, 0);
+		}
+		return faces;
+	}
+
+	/**
+	 * @param faces
+	 *            the new mask, 0 for none
+	 */
+	public void set(Block block, int faces) {
+		int y = block.getY();
+		if (y < 0 || y >= HEIGHT) {
+			return;
+		}
+		World world = block.getWorld();
+		int chunkX = block.getX() >> 4;
+		int chunkZ = block.getZ() >> 4;
+		Chunks chunks = chunks(world, true);
+		ChunkFaces chunk = chunks.get(chunkKey(chunkX, chunkZ));
+		if (chunk == null) {
+			// the load event came before this was listening
+			chunk = load(world, chunks, chunkX, chunkZ);
+		}
+		int value = faces & BlockFaces.ALL_MASK;
+		version++;
+		chunk.set(position(block.getX(), y, block.getZ()), value == 0 && chunk.loading ? CLEARED : value);
+	}
+
+	/**
+	 * Visits every block with slime on a face within the cuboid, looking only
+	 * at loaded chunks.
+	 * 
+	 * @param min
+	 *            smallest x, y, z
+	 * @param max
+	 *            largest x, y, z
+	 */
+	public void query(World world, int[] min, int[] max, Visitor visitor) {
+		Chunks chunks = chunks(world, false);
+		if (chunks == null || chunks.size == 0) {
+			return;
+		}
+		int minY = Math.max(0, min[1]);
+		int maxY = Math.min(HEIGHT - 1, max[1]);
+		for (int chunkX = min[0] >> 4; chunkX <= max[0] >> 4; chunkX++) {
+			for (int chunkZ = min[2] >> 4; chunkZ <= max[2] >> 4; chunkZ++) {
+				ChunkFaces chunk = chunks.get(chunkKey(chunkX, chunkZ));
+				if (chunk != null && chunk.size > 0) {
+					chunk.query(world, chunkX << 4, chunkZ << 4, min, minY, max, maxY, visitor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets called for every match of a query.
+	 */
+	public interface Visitor {
+		void visit(World world, int x, int y, int z, int faces);
+	}
+
+	/**
+	 * @return a number that changes whenever faces get slimed, scraped or
+	 *         loaded, so callers can tell that a query would find the same as
+	 *         last time
+	 */
+	public int version() {
+		return version;
+	}
+
+	/**
+	 * @return the number of blocks with slimed faces in loaded chunks
+	 */
+	public int size() {
+		int size = 0;
+		for (Chunks chunks : worlds.values()) {
+			for (ChunkFaces chunk : chunks.values) {
+				if (chunk != null) {
+					size += chunk.size;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of loaded chunks
+	 */
+	public int loadedChunks() {
+		int size = 0;
+		for (Chunks chunks : worlds.values()) {
+			size += chunks.size;
+		}
+		return size;
+	}
+
+	public int getPendingWrites() {
+		return pendingWrites.get();
+	}
+
+	public long getWrittenChunks() {
+		return writtenChunks.get();
+	}
+
+	/**
+	 * Loads the faces of all chunks that are loaded right now, e.g. on
+	 * startup.
+	 */
+	public void loadAll(List<World> worlds) {
+		for (World world : worlds) {
+			for (Chunk chunk : world.getLoadedChunks()) {
+				load(chunk);
+			}
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void chunkLoad(ChunkLoadEvent event) {
+		load(event.getChunk());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void chunkUnload(ChunkUnloadEvent event) {
+		Chunk chunk = event.getChunk();
+		Chunks chunks = chunks(chunk.getWorld(), false);
+		if (chunks == null) {
+			return;
+		}
+		ChunkFaces faces = chunks.remove(chunkKey(chunk.getX(), chunk.getZ()));
+		if (faces != null) {
+			save(chunk.getWorld(), chunk.getX(), chunk.getZ(), faces);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void worldSave(WorldSaveEvent event) {
+		Chunks chunks = chunks(event.getWorld(), false);
+		if (chunks == null) {
+			return;
+		}
+		for (int i = 0; i < chunks.keys.length; i++) {
+			ChunkFaces faces = chunks.values[i];
+			if (faces != null) {
+				long key = chunks.keys[i];
+				save(event.getWorld(), (int) (key >> 32), (int) key, faces);
+			}
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockPlace(BlockPlaceEvent event) {
+		// left behind by a change nobody was told about
+		clear(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBurn(BlockBurnEvent event) {
+		clear(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockFade(BlockFadeEvent event) {
+		clear(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void leavesDecay(LeavesDecayEvent event) {
+		drop(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void entityExplode(EntityExplodeEvent event) {
+		for (Block block : event.blockList()) {
+			drop(block);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockExplode(BlockExplodeEvent event) {
+		for (Block block : event.blockList()) {
+			drop(block);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonExtend(BlockPistonExtendEvent event) {
+		BlockFace facing = pistonFacing(event.getBlock());
+		move(event.getBlocks(), facing);
+		// the head takes the place of whatever the piston destroyed there
+		clear(event.getBlock().getRelative(facing));
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonRetract(BlockPistonRetractEvent event) {
+		move(event.getBlocks(), pistonFacing(event.getBlock()).getOppositeFace());
+	}
+
+	/**
+	 * The data of a piston base tells where it faces in the order of
+	 * BlockFaces.ALL, the event's direction differs between versions.
+	 */
+	private static BlockFace pistonFacing(Block piston) {
+		return BlockFaces.ALL[(piston.getData() & 7) % BlockFaces.ALL.length];
+	}
+
+	/**
+	 * Moves the faces of the blocks one block towards direction. A block
+	 * takes over the place of whatever was there, faces included.
+	 */
+	private void move(List<Block> blocks, BlockFace direction) {
+		int[] masks = new int[blocks.size()];
+		for (int i = 0; i < masks.length; i++) {
+			masks[i] = clear(blocks.get(i));
+		}
+		for (int i = 0; i < masks.length; i++) {
+			Block moved = blocks.get(i).getRelative(direction);
+			if (masks[i] != 0 || faces(moved) != 0) {
+				set(moved, masks[i]);
+			}
+		}
+	}
+
+	/**
+	 * Clears the faces of a block that's gone, dropping one slime ball per
+	 * face.
+	 */
+	private void drop(Block block) {
+		int faces = clear(block);
+		if (faces != 0 && drops != null) {
+			drops.drop(block.getLocation(), Material.SLIME_BALL, Integer.bitCount(faces), null);
+		}
+	}
+
+	/**
+	 * Takes in the chunks the background thread loaded.
+	 */
+	@Override
+	public void run() {
+		Loaded result;
+		while ((result = loaded.poll()) != null) {
+			Chunks chunks = chunks(result.world, false);
+			if (chunks == null || chunks.get(result.chunkKey) != result.faces) {
+				continue; // unloaded in the meantime, the save merged it
+			}
+			result.faces.merge(result.positions, result.masks, result.count);
+			if (result.count > 0) {
+				version++;
+			}
+		}
+	}
+
+	/**
+	 * Saves everything and closes the files. Blocks until it's written.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		for (World world : new ArrayList<World>(worlds.keySet())) {
+			Chunks chunks = worlds.get(world);
+			for (int i = 0; i < chunks.keys.length; i++) {
+				if (chunks.values[i] != null) {
+					save(world, (int) (chunks.keys[i] >> 32), (int) chunks.keys[i], chunks.values[i]);
+				}
+			}
+		}
+		worlds.clear();
+		lastWorld = null;
+		lastChunks = null;
+		closed = true;
+
+		io.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (Region region : regions.values()) {
+					region.close(true);
+				}
+				regions.clear();
+			}
+		});
+		io.shutdown();
+		try {
+			if (!io.awaitTermination(30, TimeUnit.SECONDS)) {
+				log.warning("Gave up waiting for the slimed faces to be written");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void load(Chunk chunk) {
+		World world = chunk.getWorld();
+		Chunks chunks = chunks(world, true);
+		if (chunks.get(chunkKey(chunk.getX(), chunk.getZ())) == null) {
+			load(world, chunks, chunk.getX(), chunk.getZ());
+		}
+	}
+
+	/**
+	 * Puts an empty chunk in place right away and reads the saved faces in
+	 * the background.
+	 */
+	private ChunkFaces load(final World world, Chunks chunks, final int chunkX, final int chunkZ) {
+		final ChunkFaces faces = new ChunkFaces();
+		final long chunkKey = chunkKey(chunkX, chunkZ);
+		chunks.put(chunkKey, faces);
+		if (closed) {
+			faces.loading = false;
+			return faces;
+		}
+		final File file = regionFile(world, chunkX, chunkZ);
+		io.execute(new Runnable() {
+			@Override
+			public void run() {
+				Loaded result = new Loaded(world, chunkKey, faces);
+				try {
+					ByteBuffer payload = read(file, chunkX, chunkZ);
+					if (payload != null) {
+						result.read(payload);
+					}
+				} catch (IOException e) {
+					log.log(Level.WARNING, "Couldn't read the slimed faces of chunk " + chunkX + " " + chunkZ
+							+ " from " + file, e);
+				}
+				loaded.add(result);
+			}
+		});
+		return faces;
+	}
+
+	/**
+	 * Writes the chunk in the background if it changed.
+	 */
+	private void save(World world, final int chunkX, final int chunkZ, ChunkFaces faces) {
+		if (!faces.dirty || failed || closed) {
+			return;
+		}
+		faces.dirty = false;
+		final boolean merge = faces.loading;
+		final int count = faces.countEntries();
+		final char[] positions = new char[count];
+		final byte[] masks = new byte[count];
+		faces.copyTo(positions, masks);
+		final File file = regionFile(world, chunkX, chunkZ);
+
+		pendingWrites.incrementAndGet();
+		io.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(file, chunkX, chunkZ, positions, masks, count, merge);
+					writtenChunks.incrementAndGet();
+				} catch (IOException e) {
+					if (!failed) {
+						log.log(Level.SEVERE, "Couldn't write the slimed faces to " + file
+								+ ", not saving them anymore", e);
+					}
+					failed = true;
+				} finally {
+					pendingWrites.decrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * io thread only
+	 * 
+	 * @return the payload of the chunk or null if it has none
+	 */
+	private ByteBuffer read(File file, int chunkX, int chunkZ) throws IOException {
+		if (!regions.containsKey(file) && !file.isFile()) {
+			return null;
+		}
+		return region(file).read(tableIndex(chunkX, chunkZ));
+	}
+
+	/**
+	 * io thread only
+	 * 
+	 * @param merge
+	 *            true to keep saved faces of positions that aren't in
+	 *            positions, for chunks that got unloaded before they finished
+	 *            loading
+	 */
+	private void write(File file, int chunkX, int chunkZ, char[] positions, byte[] masks, int count, boolean merge)
+			throws IOException {
+		Region region = region(file);
+		int index = tableIndex(chunkX, chunkZ);
+
+		Map<Character, Byte> entries = null;
+		if (merge) {
+			entries = new LinkedHashMap<Character, Byte>();
+			ByteBuffer saved = region.read(index);
+			if (saved != null) {
+				int savedCount = saved.getInt();
+				for (int i = 0; i < savedCount; i++) {
+					entries.put(saved.getChar(), saved.get());
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				entries.put(positions[i], masks[i]);
+			}
+		}
+
+		int size = merge ? entries.size() : count;
+		ByteBuffer payload = ByteBuffer.allocate(4 + size * ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		payload.putInt(0);
+		int written = 0;
+		if (merge) {
+			for (Map.Entry<Character, Byte> entry : entries.entrySet()) {
+				written += put(payload, entry.getKey(), entry.getValue());
+			}
+		}
+		else {
+			for (int i = 0; i < count; i++) {
+				written += put(payload, positions[i], masks[i]);
+			}
+		}
+		payload.putInt(0, written);
+		payload.limit(4 + written * ENTRY_SIZE);
+		payload.position(0);
+
+		region.write(index, written == 0 ? null : payload);
+		if (region.isMostlyStale()) {
+			regions.remove(file);
+			region.compact(file);
+		}
+	}
+
+	/**
+	 * @return 1 if it was written, 0 for cleared positions
+	 */
+	private static int put(ByteBuffer payload, char position, byte mask) {
+		if ((mask & BlockFaces.ALL_MASK) == 0) {
+			return 0;
+		}
+		payload.putChar(position);
+		payload.put((byte) (mask & BlockFaces.ALL_MASK));
+		return 1;
+	}
+
+	/**
+	 * io thread only
+	 */
+	private Region region(File file) throws IOException {
+		Region region = regions.get(file);
+		if (region == null) {
+			if (regions.size() >= OPEN_REGIONS) {
+				Iterator<Region> eldest = regions.values().iterator();
+				eldest.next().close(false);
+				eldest.remove();
+			}
+			region = new Region(file);
+			regions.put(file, region);
+		}
+		return region;
+	}
+
+	private File regionFile(World world, int chunkX, int chunkZ) {
+		return new File(new File(directory, world.getName()), "r." + Math.floorDiv(chunkX, REGION_CHUNKS) + "."
+				+ Math.floorDiv(chunkZ, REGION_CHUNKS) + ".slf");
+	}
+
+	private Chunks chunks(World world, boolean create) {
+		if (world == lastWorld) {
+			return lastChunks;
+		}
+		Chunks chunks = worlds.get(world);
+		if (chunks == null) {
+			if (!create) {
+				return null;
+			}
+			chunks = new Chunks();
+			worlds.put(world, chunks);
+		}
+		lastWorld = world;
+		lastChunks = chunks;
+		return chunks;
+	}
+
+	private static int tableIndex(int chunkX, int chunkZ) {
+		return (chunkZ & (REGION_CHUNKS - 1)) * REGION_CHUNKS + (chunkX & (REGION_CHUNKS - 1));
+	}
+
+	private static long chunkKey(int x, int z) {
+		return ((long) x << 32) | (z & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * y << 8 | z << 4 | x within the chunk, the section is y >> 4 of it.
+	 */
+	private static char position(int x, int y, int z) {
+		return (char) (y << 8 | (z & 15) << 4 | (x & 15));
+	}
+
+	/**
+	 * One region file, io thread only. The table is kept in memory.
+	 */
+	private static class Region {
+		final RandomAccessFile file;
+		final FileChannel channel;
+		final int[] offsets = new int[REGION_CHUNKS * REGION_CHUNKS];
+		final int[] lengths = new int[offsets.length];
+		long live;
+
+		Region(File path) throws IOException {
+			File folder = path.getParentFile();
+			if (!folder.isDirectory() && !folder.mkdirs()) {
+				throw new IOException("Can't create " + folder);
+			}
+			file = new RandomAccessFile(path, "rw");
+			channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (channel.size() == 0) {
+				header.putInt(MAGIC).putInt(VERSION);
+				header.clear();
+				writeFully(header, 0);
+				return;
+			}
+			if (channel.size() < HEADER_SIZE) {
+				file.close();
+				throw new IOException(path + " is too short to be a face slime region");
+			}
+			readFully(header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				file.close();
+				throw new IOException(path + " isn't a face slime region of version " + VERSION);
+			}
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = header.getInt(TABLE_OFFSET + i * 8);
+				lengths[i] = header.getInt(TABLE_OFFSET + i * 8 + 4);
+				live += lengths[i];
+			}
+		}
+
+		ByteBuffer read(int index) throws IOException {
+			if (lengths[index] == 0) {
+				return null;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(lengths[index]).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(payload, offsets[index]);
+			payload.flip();
+			return payload;
+		}
+
+		/**
+		 * @param payload
+		 *            null to remove the chunk
+		 */
+		void write(int index, ByteBuffer payload) throws IOException {
+			int offset = 0;
+			int length = 0;
+			if (payload != null) {
+				offset = (int) channel.size();
+				length = payload.remaining();
+				writeFully(payload, offset);
+			}
+			ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			entry.putInt(offset).putInt(length);
+			entry.flip();
+			writeFully(entry, TABLE_OFFSET + index * 8);
+			live += length - lengths[index];
+			offsets[index] = offset;
+			lengths[index] = length;
+		}
+
+		boolean isMostlyStale() throws IOException {
+			long stale = channel.size() - HEADER_SIZE - live;
+			return stale > MIN_STALE_BYTES && stale > live;
+		}
+
+		/**
+		 * Writes the live chunks into a new file that replaces this one, then
+		 * closes this one.
+		 */
+		void compact(File path) throws IOException {
+			File temporary = new File(path.getPath() + ".tmp");
+			RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+			try {
+				out.setLength(0);
+				FileChannel target = out.getChannel();
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION);
+				int offset = HEADER_SIZE;
+				for (int i = 0; i < offsets.length; i++) {
+					ByteBuffer payload = read(i);
+					if (payload == null) {
+						continue;
+					}
+					header.putInt(TABLE_OFFSET + i * 8, offset);
+					header.putInt(TABLE_OFFSET + i * 8 + 4, lengths[i]);
+					while (payload.hasRemaining()) {
+						offset += target.write(payload, offset);
+					}
+				}
+				header.clear();
+				while (header.hasRemaining()) {
+					target.write(header, header.position());
+				}
+				target.force(false);
+			} finally {
+				out.close();
+			}
+			close(false);
+			Files.move(temporary.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		void close(boolean force) {
+			try {
+				if (force) {
+					channel.force(false);
+				}
+				file.close();
+			} catch (IOException e) {
+				// nothing left to do with it
+			}
+		}
+
+		private void readFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of face slime region");
+				}
+			}
+		}
+
+		private void writeFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, position + buffer.position());
+			}
+		}
+	}
+
+	/**
+	 * The faces of one chunk as read by the io thread.
+	 */
+	private static class Loaded {
+		final World world;
+		final long chunkKey;
+		final ChunkFaces faces;
+		char[] positions;
+		byte[] masks;
+		int count;
+
+		Loaded(World world, long chunkKey, ChunkFaces faces) {
+			this.world = world;
+			this.chunkKey = chunkKey;
+			this.faces = faces;
+		}
+
+		void read(ByteBuffer payload) {
+			count = payload.getInt();
+			positions = new char[count];
+			masks = new byte[count];
+			for (int i = 0; i < count; i++) {
+				positions[i] = payload.getChar();
+				masks[i] = payload.get();
+			}
+		}
+	}
+
+	/**
+	 * The slimed faces of one chunk, one FaceMap per 16 blocks of height.
+	 */
+	static class ChunkFaces {
+		private final FaceMap[] sections = new FaceMap[SECTIONS];
+		// blocks with at least one face
+		int size;
+		// saved faces haven't been merged in yet
+		boolean loading = true;
+		boolean dirty;
+
+		int get(char position) {
+			FaceMap section = sections[position >> 12];
+			return section == null ? 0 : section.get((char) (position & 0xFFF));
+		}
+
+		void set(char position, int value) {
+			FaceMap section = sections[position >> 12];
+			if (section == null) {
+				if (value == 0) {
+					return;
+				}
+				section = new FaceMap();
+				sections[position >> 12] = section;
+			}
+			char local = (char) (position & 0xFFF);
+			boolean had = (section.get(local) & BlockFaces.ALL_MASK) != 0;
+			if (value == 0) {
+				section.remove(local);
+			}
+			else {
+				section.put(local, (byte) value);
+			}
+			boolean has = (value & BlockFaces.ALL_MASK) != 0;
+			size += (has ? 1 : 0) - (had ? 1 : 0);
+			dirty = true;
+		}
+
+		/**
+		 * Adds the saved faces of positions that weren't edited while loading
+		 * and forgets the cleared markers.
+		 */
+		void merge(char[] positions, byte[] masks, int count) {
+			for (int i = 0; i < count; i++) {
+				FaceMap section = sections[positions[i] >> 12];
+				char local = (char) (positions[i] & 0xFFF);
+				if (section == null || !section.contains(local)) {
+					int value = masks[i] & BlockFaces.ALL_MASK;
+					if (value != 0) {
+						boolean wasDirty = dirty;
+						set(positions[i], value);
+						dirty = wasDirty;
+					}
+				}
+			}
+			for (int s = 0; s < SECTIONS; s++) {
+				if (sections[s] != null) {
+					sections[s].removeCleared();
+				}
+			}
+			loading = false;
+		}
+
+		/**
+		 * @return positions including cleared markers
+		 */
+		int countEntries() {
+			int count = 0;
+			for (FaceMap section : sections) {
+				if (section != null) {
+					count += section.size;
+				}
+			}
+			return count;
+		}
+
+		void copyTo(char[] positions, byte[] masks) {
+			int i = 0;
+			for (int s = 0; s < SECTIONS; s++) {
+				if (sections[s] != null) {
+					i = sections[s].copyTo(s << 12, positions, masks, i);
+				}
+			}
+		}
+
+		void query(World world, int baseX, int baseZ, int[] min, int minY, int[] max, int maxY, Visitor visitor) {
+			for (int s = minY >> 4; s <= maxY >> 4; s++) {
+				FaceMap section = sections[s];
+				if (section != null && section.size > 0) {
+					section.query(world, baseX, s << 4, baseZ, min, minY, max, maxY, visitor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open addressing map from a position in a 16x16x16 section to a face
+	 * mask, in two primitive arrays. Starts small and grows.
+	 */
+	static class FaceMap {
+		// position + 1, 0 means empty
+		private char[] keys = new char[8];
+		private byte[] values = new byte[8];
+		int size;
+
+		int get(char position) {
+			char key = (char) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != 0) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return 0;
+		}
+
+		boolean contains(char position) {
+			char key = (char) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != 0) {
+				if (keys[i] == key) {
+					return true;
+				}
+				i = (i + 1) & mask;
+			}
+			return false;
+		}
+
+		void put(char position, byte value) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			char key = (char) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != 0) {
+				if (keys[i] == key) {
+					values[i] = value;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			size++;
+		}
+
+		void remove(char position) {
+			char key = (char) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != key) {
+				if (keys[i] == 0) {
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = 0;
+			size--;
+
+			// move following entries back so lookups still find them
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (keys[j] == 0) {
+					return;
+				}
+				int home = hash(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					keys[j] = 0;
+					i = j;
+				}
+			}
+		}
+
+		void removeCleared() {
+			for (int i = 0; i < keys.length; i++) {
+				while (keys[i] != 0 && (values[i] & BlockFaces.ALL_MASK) == 0) {
+					// removing moves the next entry into i, look at it again
+					remove((char) (keys[i] - 1));
+				}
+			}
+		}
+
+		int copyTo(int base, char[] positions, byte[] masks, int i) {
+			for (int k = 0; k < keys.length; k++) {
+				if (keys[k] != 0) {
+					positions[i] = (char) (base | (keys[k] - 1));
+					masks[i] = values[k];
+					i++;
+				}
+			}
+			return i;
+		}
+
+		void query(World world, int baseX, int baseY, int baseZ, int[] min, int minY, int[] max, int maxY,
+				Visitor visitor) {
+			for (int i = 0; i < keys.length; i++) {
+				int faces = values[i] & BlockFaces.ALL_MASK;
+				if (keys[i] == 0 || faces == 0) {
+					continue;
+				}
+				int position = keys[i] - 1;
+				int x = baseX + (position & 15);
+				int y = baseY + (position >> 8);
+				int z = baseZ + ((position >> 4) & 15);
+				if (x >= min[0] && x <= max[0] && y >= minY && y <= maxY && z >= min[2] && z <= max[2]) {
+					visitor.visit(world, x, y, z, faces);
+				}
+			}
+		}
+
+		private void grow() {
+			char[] oldKeys = keys;
+			byte[] oldValues = values;
+			keys = new char[oldKeys.length * 2];
+			values = new byte[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					put((char) (oldKeys[i] - 1), oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(char key) {
+			return (key * 0x9E3779B9) >>> 16;
+		}
+	}
+
+	/**
+	 * Open addressing map from chunk key to ChunkFaces, so finding a chunk
+	 * doesn't box the key.
+	 */
+	static class Chunks {
+		long[] keys = new long[16];
+		// null means empty
+		ChunkFaces[] values = new ChunkFaces[16];
+		int size;
+
+		ChunkFaces get(long key) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (values[i] != null) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		void put(long key, ChunkFaces value) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (values[i] != null) {
+				if (keys[i] == key) {
+					values[i] = value;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			size++;
+		}
+
+		ChunkFaces remove(long key) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (values[i] == null || keys[i] != key) {
+				if (values[i] == null) {
+					return null;
+				}
+				i = (i + 1) & mask;
+			}
+			ChunkFaces removed = values[i];
+			values[i] = null;
+			size--;
+
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (values[j] == null) {
+					return removed;
+				}
+				int home = hash(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			ChunkFaces[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new ChunkFaces[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h >>> 32);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Records the handled events as Java Flight Recorder events, so SlimeIt shows
+ * up in recordings of the server.
+ * 
+ * Compiled for Java 11 in its own execution (see the plugin's pom.xml), so
+ * only load it by name and expect a LinkageError on older JVMs. Without a
+ * recording that enables the SlimeIt events, the handlers don't get traced at
+ * all.
+ * 
+ */
+public class FlightRecorderTrace implements HandlerTrace {
+
+	private final EventType breakType = EventType.getEventType(BreakEvent.class);
+	private final EventType interactType = EventType.getEventType(InteractEvent.class);
+
+	// handlers don't nest, so one is enough
+	private HandlerEvent current;
+
+	@Override
+	public boolean isEnabled(Handler handler) {
+		return FlightRecorder.isAvailable()
+				&& (handler == Handler.BREAK ? breakType : interactType).isEnabled();
+	}
+
+	@Override
+	public void begin(Handler handler) {
+		current = handler == Handler.BREAK ? new BreakEvent() : new InteractEvent();
+		current.begin();
+	}
+
+	@Override
+	public void end(String branch, Thing before, Thing after, int blocksTouched) {
+		HandlerEvent event = current;
+		current = null;
+		if (event == null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.branch = branch;
+			event.before = String.valueOf(before);
+			event.after = String.valueOf(after);
+			event.blocksTouched = blocksTouched;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void tickBudgetExceeded(long nanos, long budgetNanos, String culprit, String location) {
+		TickBudgetEvent event = new TickBudgetEvent();
+		if (event.shouldCommit()) {
+			event.time = nanos;
+			event.budget = budgetNanos;
+			event.culprit = culprit;
+			event.location = location;
+			event.commit();
+		}
+	}
+
+	@Category("SlimeIt")
+	@StackTrace(false)
+	public abstract static class HandlerEvent extends Event {
+		@Label("Branch")
+		@Description("What the handler did")
+		String branch;
+
+		@Label("Thing Before")
+		String before;
+
+		@Label("Thing After")
+		String after;
+
+		@Label("Blocks Touched")
+		int blocksTouched;
+	}
+
+	@Name("de.michaelzinn.slimeit.Break")
+	@Label("SlimeIt Block Break")
+	public static class BreakEvent extends HandlerEvent {
+	}
+
+	@Name("de.michaelzinn.slimeit.Interact")
+	@Label("SlimeIt Interact")
+	public static class InteractEvent extends HandlerEvent {
+	}
+
+	@Name("de.michaelzinn.slimeit.TickBudgetExceeded")
+	@Label("SlimeIt Tick Budget Exceeded")
+	@Category("SlimeIt")
+	@StackTrace(false)
+	public static class TickBudgetEvent extends Event {
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+
+		@Label("Budget")
+		@Timespan(Timespan.NANOSECONDS)
+		long budget;
+
+		@Label("Culprit")
+		@Description("What took the longest during the tick")
+		String culprit;
+
+		@Label("Location")
+		String location;
+	}
+}
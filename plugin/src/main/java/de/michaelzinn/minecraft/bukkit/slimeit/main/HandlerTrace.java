@@ -0,0 +1,48 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Gets told about every handled event, e.g. to record it for a profiler. All
+ * calls happen on the main thread, begin() and end() come in pairs.
+ * 
+ */
+public interface HandlerTrace {
+
+	enum Handler {
+		BREAK, INTERACT
+	}
+
+	/**
+	 * @return false if begin() and end() wouldn't record anything for the
+	 *         handler right now, they don't get called then
+	 */
+	boolean isEnabled(Handler handler);
+
+	void begin(Handler handler);
+
+	/**
+	 * @param branch
+	 *            what the handler did, e.g. "SCRAPE"
+	 * @param before
+	 *            the block before
+	 * @param after
+	 *            the block after
+	 * @param blocksTouched
+	 *            blocks that got changed
+	 */
+	void end(String branch, Thing before, Thing after, int blocksTouched);
+
+	/**
+	 * SlimeIt took longer than it should have during one tick.
+	 * 
+	 * @param nanos
+	 *            time SlimeIt took
+	 * @param budgetNanos
+	 * @param culprit
+	 *            what took the longest
+	 * @param location
+	 *            where, may be null
+	 */
+	void tickBudgetExceeded(long nanos, long budgetNanos, String culprit, String location);
+}
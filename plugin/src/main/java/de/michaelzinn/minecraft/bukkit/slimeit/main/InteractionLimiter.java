@@ -0,0 +1,142 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Token bucket per player that limits how often a player may add or scrape
+ * slime. Every successful interaction causes block updates with physics, so a
+ * single autoclicker shouldn't be able to trigger dozens of them per tick.
+ * 
+ * Buckets of players that haven't interacted for a while get evicted by run(),
+ * which should be scheduled every few seconds.
+ * 
+ */
+public class InteractionLimiter implements Runnable {
+
+	private final double tokensPerNano;
+	private final double burst;
+	private final long idleNanos;
+
+	private final ConcurrentHashMap<UUID, Bucket> buckets = new ConcurrentHashMap<UUID, Bucket>();
+
+	/**
+	 * @param perSecond
+	 *            sustained interactions per second
+	 * @param burst
+	 *            how many interactions may happen at once after a pause
+	 * @param idleSeconds
+	 *            buckets unused for this long get evicted
+	 */
+	public InteractionLimiter(double perSecond, int burst, int idleSeconds) {
+		this.tokensPerNano = perSecond / 1e9;
+		this.burst = Math.max(1, burst);
+		this.idleNanos = idleSeconds * 1000000000L;
+	}
+
+	/**
+	 * Takes a token from the player's bucket.
+	 * 
+	 * @param player
+	 * @return false if the player is over the limit and the interaction
+	 *         should be ignored
+	 */
+	public boolean tryAcquire(Player player) {
+		UUID id = player.getUniqueId();
+		Bucket bucket = buckets.get(id);
+		if (bucket == null) {
+			bucket = new Bucket(player.getName(), burst);
+			Bucket other = buckets.putIfAbsent(id, bucket);
+			if (other != null) {
+				bucket = other;
+			}
+		}
+		return bucket.tryAcquire(System.nanoTime());
+	}
+
+	/**
+	 * Evicts idle buckets.
+	 */
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext();) {
+			if (it.next().idleSince(now) > idleNanos) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param max
+	 *            number of lines
+	 * @return one line per player, the players with the most rejected
+	 *         interactions first
+	 */
+	public List<String> report(int max) {
+		List<Bucket> all = new ArrayList<Bucket>(buckets.values());
+		Collections.sort(all, new Comparator<Bucket>() {
+			@Override
+			public int compare(Bucket a, Bucket b) {
+				return Long.compare(b.rejected(), a.rejected());
+			}
+		});
+
+		List<String> lines = new ArrayList<String>();
+		for (Bucket bucket : all.subList(0, Math.min(max, all.size()))) {
+			lines.add(bucket.toString());
+		}
+		return lines;
+	}
+
+	public int trackedPlayers() {
+		return buckets.size();
+	}
+
+	private class Bucket {
+		final String name;
+
+		double tokens;
+		long lastRefill = System.nanoTime();
+
+		long allowed;
+		long rejected;
+
+		Bucket(String name, double tokens) {
+			this.name = name;
+			this.tokens = tokens;
+		}
+
+		synchronized boolean tryAcquire(long now) {
+			tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+			lastRefill = now;
+			if (tokens >= 1) {
+				tokens--;
+				allowed++;
+				return true;
+			}
+			rejected++;
+			return false;
+		}
+
+		synchronized long rejected() {
+			return rejected;
+		}
+
+		synchronized long idleSince(long now) {
+			return now - lastRefill;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return name + ": " + allowed + " allowed, " + rejected + " rejected";
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Command line tool to search the journal without a running server:
+ * 
+ * <pre>
+ * java -cp SlimeIt.jar de.michaelzinn.minecraft.bukkit.slimeit.main.JournalQuery plugins/SlimeIt/journal
+ *     [--from "2015-06-01 18:00"] [--to "2015-06-01 19:00"] [--world world]
+ *     [--area minX minZ maxX maxZ] [--player name]
+ * </pre>
+ * 
+ * Prints one line per change. Things are printed as material id:data and
+ * slime on single faces as the slimed faces (e.g. faces:up,north), the tool
+ * doesn't need Bukkit.
+ * 
+ */
+public class JournalQuery {
+
+	private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			usage("missing journal directory");
+			return;
+		}
+
+		final JournalReader reader = new JournalReader(new File(args[0]));
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		int world = JournalReader.ANY_WORLD;
+		int minX = Integer.MIN_VALUE, minZ = Integer.MIN_VALUE;
+		int maxX = Integer.MAX_VALUE, maxZ = Integer.MAX_VALUE;
+		int player = -1;
+
+		try {
+			for (int i = 1; i < args.length; i++) {
+				String option = args[i];
+				if (option.equals("--from")) {
+					from = parseTime(args[++i]);
+				}
+				else if (option.equals("--to")) {
+					to = parseTime(args[++i]);
+				}
+				else if (option.equals("--world")) {
+					world = reader.worldIndex(args[++i]);
+					if (world < 0) {
+						usage("unknown world " + args[i]);
+						return;
+					}
+				}
+				else if (option.equals("--player")) {
+					player = reader.playerIndex(args[++i]);
+					if (player < 0) {
+						usage("unknown player " + args[i]);
+						return;
+					}
+				}
+				else if (option.equals("--area")) {
+					int x1 = Integer.parseInt(args[++i]);
+					int z1 = Integer.parseInt(args[++i]);
+					int x2 = Integer.parseInt(args[++i]);
+					int z2 = Integer.parseInt(args[++i]);
+					minX = Math.min(x1, x2);
+					minZ = Math.min(z1, z2);
+					maxX = Math.max(x1, x2);
+					maxZ = Math.max(z1, z2);
+				}
+				else {
+					usage("unknown option " + option);
+					return;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage("missing value for " + args[args.length - 1]);
+			return;
+		} catch (NumberFormatException e) {
+			usage("not a number: " + e.getMessage());
+			return;
+		} catch (ParseException e) {
+			usage("times look like \"" + TIME_FORMAT + "\"");
+			return;
+		}
+
+		final int onlyPlayer = player;
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		final StringBuilder line = new StringBuilder();
+		long start = System.nanoTime();
+		long found = reader.scan(from, to, world, minX, minZ, maxX, maxZ, new JournalReader.Visitor() {
+			@Override
+			public void visit(long time, int player, int world, int x, int y, int z, int before, int after) {
+				if (onlyPlayer >= 0 && player != onlyPlayer) {
+					return;
+				}
+				line.setLength(0);
+				line.append(format.format(new Date(time))).append(' ').append(reader.playerName(player)).append(' ')
+						.append(reader.worldName(world)).append(' ').append(x).append(' ').append(y).append(' ')
+						.append(z).append(' ');
+				JournalReader.appendChange(line, before);
+				line.append(" -> ");
+				JournalReader.appendChange(line, after);
+				System.out.println(line);
+			}
+		});
+		System.err.printf("%d changes in the time range and area, %.1f ms%n", found, (System.nanoTime() - start) / 1e6);
+	}
+
+	private static long parseTime(String time) throws ParseException {
+		return new SimpleDateFormat(TIME_FORMAT).parse(time).getTime();
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: JournalQuery <journal directory> [--from \"" + TIME_FORMAT + "\"] [--to \""
+				+ TIME_FORMAT + "\"] [--world name] [--area minX minZ maxX maxZ] [--player name]");
+	}
+}
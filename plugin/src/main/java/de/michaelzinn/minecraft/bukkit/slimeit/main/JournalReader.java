@@ -0,0 +1,268 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans the segments of a {@link ChangeJournal} by time range and area.
+ * 
+ * Segments whose header shows they can't contain matching records are
+ * skipped, the others are memory mapped and binary searched for the start
+ * time, so only the pages with matching times get read. Works while the
+ * journal is being written, records written after a segment was opened may be
+ * missed.
+ * 
+ * Doesn't need a server, see JournalQuery.
+ * 
+ */
+public class JournalReader {
+
+	// in the order of BlockFaces.ALL
+	private static final String[] FACE_NAMES = { "down", "up", "north", "south", "west", "east" };
+
+	public interface Visitor {
+		/**
+		 * @param before
+		 *            Thing id, or ChangeJournal.FACES | face mask
+		 * @param after
+		 *            Thing id, or ChangeJournal.FACES | face mask
+		 */
+		void visit(long time, int player, int world, int x, int y, int z, int before, int after);
+	}
+
+	/**
+	 * Any world, for scan().
+	 */
+	public static final int ANY_WORLD = -1;
+
+	private final File directory;
+	private final Map<Integer, String> players = new HashMap<Integer, String>();
+	private final Map<Integer, String> worlds = new HashMap<Integer, String>();
+
+	/**
+	 * @param directory
+	 *            the journal directory
+	 * @throws IOException
+	 *             if the index files can't be read
+	 */
+	public JournalReader(File directory) throws IOException {
+		this.directory = directory;
+		readNames(new File(directory, ChangeJournal.PLAYERS_FILE), players);
+		readNames(new File(directory, ChangeJournal.WORLDS_FILE), worlds);
+	}
+
+	/**
+	 * @return the name or the index if it's unknown
+	 */
+	public String playerName(int index) {
+		if (index == ChangeJournal.NO_PLAYER) {
+			return "(no player)";
+		}
+		String name = players.get(index);
+		return name == null ? "#" + index : name;
+	}
+
+	/**
+	 * @return the name or the index if it's unknown
+	 */
+	public String worldName(int index) {
+		String name = worlds.get(index);
+		return name == null ? "#" + index : name;
+	}
+
+	/**
+	 * @return the index of the player with that name (ignoring case) or -1
+	 */
+	public int playerIndex(String name) {
+		return indexOf(players, name);
+	}
+
+	/**
+	 * @return the index of the world with that name (ignoring case) or -1
+	 */
+	public int worldIndex(String name) {
+		return indexOf(worlds, name);
+	}
+
+	/**
+	 * Visits matching records, oldest first.
+	 * 
+	 * @param from
+	 *            ms, inclusive
+	 * @param to
+	 *            ms, inclusive
+	 * @param world
+	 *            world index or ANY_WORLD
+	 * @param minX
+	 * @param minZ
+	 * @param maxX
+	 *            inclusive
+	 * @param maxZ
+	 *            inclusive
+	 * @param visitor
+	 * @return the number of visited records
+	 * @throws IOException
+	 */
+	public long scan(long from, long to, int world, int minX, int minZ, int maxX, int maxZ, Visitor visitor)
+			throws IOException {
+		long visited = 0;
+		for (File file : segments()) {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				if (channel.size() < ChangeJournal.HEADER_SIZE) {
+					continue;
+				}
+				MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				segment.order(ByteOrder.LITTLE_ENDIAN);
+				if (segment.getInt(0) != ChangeJournal.MAGIC) {
+					continue;
+				}
+
+				long count = Math.min(segment.getLong(ChangeJournal.COUNT_OFFSET),
+						(channel.size() - ChangeJournal.HEADER_SIZE) / ChangeJournal.RECORD_SIZE);
+				int bounds = ChangeJournal.BOUNDS_OFFSET;
+				if (count == 0
+						|| segment.getLong(ChangeJournal.FIRST_TIME_OFFSET) > to
+						|| segment.getLong(ChangeJournal.LAST_TIME_OFFSET) < from
+						|| segment.getInt(bounds) > maxX || segment.getInt(bounds + 4) < minX
+						|| segment.getInt(bounds + 8) > maxZ || segment.getInt(bounds + 12) < minZ) {
+					continue;
+				}
+
+				for (long i = firstAtOrAfter(segment, count, from); i < count; i++) {
+					int position = (int) (ChangeJournal.HEADER_SIZE + i * ChangeJournal.RECORD_SIZE);
+					long time = segment.getLong(position);
+					if (time > to) {
+						break;
+					}
+					int recordWorld = segment.getInt(position + 12);
+					long packed = segment.getLong(position + 16);
+					int x = ChangeJournal.unpackX(packed);
+					int z = ChangeJournal.unpackZ(packed);
+					if ((world != ANY_WORLD && recordWorld != world) || x < minX || x > maxX || z < minZ || z > maxZ) {
+						continue;
+					}
+					visitor.visit(time, segment.getInt(position + 8), recordWorld, x, ChangeJournal.unpackY(packed), z,
+							segment.getInt(position + 24), segment.getInt(position + 28));
+					visited++;
+				}
+			} finally {
+				raf.close();
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * @return index of the first record with time >= from, count if there is
+	 *         none
+	 */
+	private static long firstAtOrAfter(MappedByteBuffer segment, long count, long from) {
+		long low = 0;
+		long high = count;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			long time = segment.getLong((int) (ChangeJournal.HEADER_SIZE + middle * ChangeJournal.RECORD_SIZE));
+			if (time < from) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the segment files, oldest first
+	 */
+	private List<File> segments() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		List<File> segments = new ArrayList<File>();
+		for (File file : files) {
+			if (ChangeJournal.segmentNumber(file) >= 0) {
+				segments.add(file);
+			}
+		}
+		// zero padded, so the names sort by number
+		File[] sorted = segments.toArray(new File[segments.size()]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+
+	private static int indexOf(Map<Integer, String> names, String name) {
+		for (Map.Entry<Integer, String> entry : names.entrySet()) {
+			if (entry.getValue().equalsIgnoreCase(name)) {
+				return entry.getKey();
+			}
+		}
+		return -1;
+	}
+
+	private static void readNames(File file, Map<Integer, String> names) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] words = line.split(" ", 3);
+				if (words.length == 3) {
+					names.put(Integer.parseInt(words[0]), words[2]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Appends the before or after of a record: type:data for a Thing id, e.g.
+	 * 4:0, or the slimed faces for a face record, e.g. faces:up,north or
+	 * faces:none. Doesn't need the Bukkit API.
+	 * 
+	 * @param change
+	 *            a Thing id or ChangeJournal.FACES | face mask
+	 */
+	public static void appendChange(StringBuilder line, int change) {
+		if (!isFaces(change)) {
+			line.append(change >> 4).append(':').append(change & 15);
+			return;
+		}
+		line.append("faces:");
+		int length = line.length();
+		for (int i = 0; i < FACE_NAMES.length; i++) {
+			if ((change & 1 << i) != 0) {
+				line.append(line.length() == length ? "" : ",").append(FACE_NAMES[i]);
+			}
+		}
+		if (line.length() == length) {
+			line.append("none");
+		}
+	}
+
+	/**
+	 * @return true if change is ChangeJournal.FACES | face mask rather than a
+	 *         Thing id
+	 */
+	public static boolean isFaces(int change) {
+		return (change & ChangeJournal.FACES) != 0;
+	}
+}
@@ -0,0 +1,234 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+import java.util.logging.Logger;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Counters and latency histograms for the hot paths. Recording never
+ * allocates, so it can stay on in production. When metrics are disabled in
+ * the config there is no Metrics object at all and the instrumented code only
+ * checks for null.
+ * 
+ * run() logs a snapshot, schedule it every few minutes.
+ * 
+ */
+public class Metrics implements Runnable {
+
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	public final Timer playerBreak = new Timer("playerBreak");
+	public final Timer playerInteract = new Timer("playerInteract");
+	public final Timer replace = new Timer("replace");
+
+	private final Timer[] timers = { playerBreak, playerInteract, replace };
+
+	private final LongAdder ruleLookups = new LongAdder();
+	// indexed by Thing id, lookups that found a rule
+	private final AtomicLongArray ruleHits = new AtomicLongArray(Thing.count());
+
+	private final Logger log;
+	private final long start = System.nanoTime();
+
+	// for the rates in the periodic log
+	private long lastSnapshot = start;
+	private final long[] lastCounts = new long[timers.length];
+
+	/**
+	 * @param log
+	 *            where run() logs to
+	 */
+	public Metrics(Logger log) {
+		this.log = log;
+	}
+
+	/**
+	 * @param thing
+	 * @param rule
+	 *            the result of the lookup, 0 if there is no rule
+	 */
+	public void ruleLookup(Thing thing, long rule) {
+		ruleLookups.increment();
+		if (rule != 0 && thing.id >= 0) {
+			ruleHits.incrementAndGet(thing.id);
+		}
+	}
+
+	public long ruleLookups() {
+		return ruleLookups.sum();
+	}
+
+	/**
+	 * @param max
+	 *            number of lines
+	 * @return the things with the most rule hits first
+	 */
+	public List<String> ruleHits(int max) {
+		List<long[]> hits = new ArrayList<long[]>();
+		for (int id = 0; id < ruleHits.length(); id++) {
+			long count = ruleHits.get(id);
+			if (count > 0) {
+				hits.add(new long[] { id, count });
+			}
+		}
+		Collections.sort(hits, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return Long.compare(b[1], a[1]);
+			}
+		});
+
+		List<String> lines = new ArrayList<String>();
+		for (long[] hit : hits.subList(0, Math.min(max, hits.size()))) {
+			lines.add(Thing.byId((int) hit[0]) + ": " + hit[1]);
+		}
+		return lines;
+	}
+
+	/**
+	 * @return one line per timer, with the rate since the start
+	 */
+	public List<String> report() {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		List<String> lines = new ArrayList<String>();
+		for (Timer timer : timers) {
+			lines.add(timer.summary(timer.count(), seconds));
+		}
+		return lines;
+	}
+
+	/**
+	 * Logs a snapshot. Event counts and rates are since the last snapshot, the
+	 * latencies since the start.
+	 */
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		double seconds = (now - lastSnapshot) / 1e9;
+		lastSnapshot = now;
+
+		StringBuilder message = new StringBuilder("Stats:");
+		for (int i = 0; i < timers.length; i++) {
+			long count = timers[i].count();
+			message.append("\n  ").append(timers[i].summary(count - lastCounts[i], seconds));
+			lastCounts[i] = count;
+		}
+		message.append("\n  rule lookups: ").append(ruleLookups());
+		log.info(message.toString());
+	}
+
+	/**
+	 * Fixed bucket latency histogram: exact below 16 ns, above that 8 buckets
+	 * per power of two, so percentiles are off by at most 12.5%.
+	 */
+	public static class Timer {
+
+		private static final int SUB_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int LINEAR = 2 * SUB_BUCKETS;
+		// up to 2^40 ns, about 18 minutes
+		private static final int BUCKETS = LINEAR + (40 - SUB_BITS - 1) * SUB_BUCKETS;
+
+		public final String name;
+
+		private final LongAdder[] buckets = new LongAdder[BUCKETS];
+		private final LongAdder count = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+		public Timer(String name) {
+			this.name = name;
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		public void record(long nanos) {
+			buckets[bucket(nanos)].increment();
+			count.increment();
+			max.accumulate(nanos);
+		}
+
+		public long count() {
+			return count.sum();
+		}
+
+		public long max() {
+			return max.get();
+		}
+
+		/**
+		 * @param quantile
+		 *            e.g. 0.99
+		 * @return the upper bound of the bucket of that quantile in ns, 0 if
+		 *         nothing was recorded
+		 */
+		public long percentile(double quantile) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(lowerBound(i + 1) - 1, max());
+				}
+			}
+			return max();
+		}
+
+		String summary(long events, double seconds) {
+			return String.format("%s: %d events, %.1f/s, p50 %s, p99 %s, max %s", name, events,
+					seconds > 0 ? events / seconds : 0, format(percentile(0.5)), format(percentile(0.99)),
+					format(max()));
+		}
+
+		static int bucket(long nanos) {
+			if (nanos < LINEAR) {
+				return (int) Math.max(0, nanos);
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+			int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return Math.min(BUCKETS - 1, LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub);
+		}
+
+		static long lowerBound(int bucket) {
+			if (bucket < LINEAR) {
+				return bucket;
+			}
+			int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+			int sub = (bucket - LINEAR) % SUB_BUCKETS;
+			return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		}
+
+		private static String format(long nanos) {
+			if (nanos < 1000) {
+				return nanos + " ns";
+			}
+			if (nanos < 1000000) {
+				return String.format("%.1f us", nanos / 1e3);
+			}
+			return String.format("%.1f ms", nanos / 1e6);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Lets moss grow on its own: blocks that SlimeRules can turn mossy (cobble,
+ * stone bricks, walls...) slowly become mossy when they touch water or another
+ * mossy block.
+ * 
+ * Works like random ticks: every tick it picks a few random positions (or
+ * random indexed blocks, see SlimeIndex) in some of the loaded chunks and
+ * continues with the next chunks in the next tick, so the cost doesn't depend
+ * on how many chunks are loaded. It stops as soon as the time budget for the
+ * tick is used up.
+ * 
+ * The loaded chunks are kept in a list that chunk load and unload events keep
+ * up to date, so no tick has to walk all of them.
+ * 
+ * Run it on the main thread every tick, register it for the events and call
+ * addLoadedChunks() once.
+ * 
+ */
+public class MossSpreader implements Runnable, Listener {
+
+	private static final TagQuery MOSSY_THING = TagQuery.of(MOSSY);
+
+	private final SlimeRules slimeRules;
+	private final long budgetNanos;
+	private final int samplesPerChunk;
+	private final double chance;
+
+	// the loaded chunks in no particular order, and where each one is in there
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private final Map<UUID, Map<Long, Integer>> positions = new HashMap<UUID, Map<Long, Integer>>();
+	// the next chunk to visit, wraps around
+	private int cursor;
+
+	private long grown;
+
+	private SlimeIndex index;
+
+	/**
+	 * @param slimeRules
+	 * @param budgetMicros
+	 *            time per tick
+	 * @param samplesPerChunk
+	 *            random positions that get checked per chunk and visit
+	 * @param chance
+	 *            probability that a sampled block that could grow moss does
+	 */
+	public MossSpreader(SlimeRules slimeRules, int budgetMicros, int samplesPerChunk, double chance) {
+		this.slimeRules = slimeRules;
+		this.budgetNanos = budgetMicros * 1000L;
+		this.samplesPerChunk = samplesPerChunk;
+		this.chance = chance;
+	}
+
+	/**
+	 * @param index
+	 *            if set, samples come from the indexed blocks instead of random
+	 *            positions, which finds far more candidates per sample
+	 */
+	public void setIndex(SlimeIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Adds the chunks that were loaded before this got registered.
+	 */
+	public void addLoadedChunks() {
+		for (World world : Bukkit.getWorlds()) {
+			for (Chunk chunk : world.getLoadedChunks()) {
+				add(chunk);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		long deadline = System.nanoTime() + budgetNanos;
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		// each chunk at most once per tick
+		for (int visits = chunks.size(); visits > 0 && System.nanoTime() < deadline; visits--) {
+			if (cursor >= chunks.size()) {
+				cursor = 0;
+			}
+			Chunk chunk = chunks.get(cursor);
+			if (!chunk.isLoaded()) {
+				// e.g. its world got unloaded without chunk events
+				remove(chunk);
+				continue;
+			}
+			cursor++;
+			int maxHeight = chunk.getWorld().getMaxHeight();
+			// a high samples-per-chunk can use up the budget within one chunk
+			for (int i = 0; i < samplesPerChunk && System.nanoTime() < deadline; i++) {
+				Block block;
+				if (index != null) {
+					block = index.randomBlock(chunk, random);
+					if (block == null) {
+						break;
+					}
+				}
+				else {
+					block = chunk.getBlock(random.nextInt(16), random.nextInt(maxHeight), random.nextInt(16));
+				}
+				grow(block, random);
+			}
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void chunkLoad(ChunkLoadEvent event) {
+		add(event.getChunk());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void chunkUnload(ChunkUnloadEvent event) {
+		remove(event.getChunk());
+	}
+
+	private void add(Chunk chunk) {
+		Map<Long, Integer> worldPositions = positions(chunk.getWorld());
+		Long key = chunkKey(chunk);
+		if (!worldPositions.containsKey(key)) {
+			worldPositions.put(key, chunks.size());
+			chunks.add(chunk);
+		}
+	}
+
+	/**
+	 * Moves the last chunk into the gap.
+	 */
+	private void remove(Chunk chunk) {
+		Integer position = positions(chunk.getWorld()).remove(chunkKey(chunk));
+		if (position == null) {
+			return;
+		}
+		Chunk last = chunks.remove(chunks.size() - 1);
+		if (position < chunks.size()) {
+			chunks.set(position, last);
+			positions(last.getWorld()).put(chunkKey(last), position);
+		}
+	}
+
+	private Map<Long, Integer> positions(World world) {
+		UUID id = world.getUID();
+		Map<Long, Integer> worldPositions = positions.get(id);
+		if (worldPositions == null) {
+			worldPositions = new HashMap<Long, Integer>();
+			positions.put(id, worldPositions);
+		}
+		return worldPositions;
+	}
+
+	private static Long chunkKey(Chunk chunk) {
+		return (long) chunk.getX() << 32 | chunk.getZ() & 0xFFFFFFFFL;
+	}
+
+	private void grow(Block block, ThreadLocalRandom random) {
+		Thing thing = Thing.in(block);
+		long rule = slimeRules.rule(thing);
+		if (!SlimeRuleTable.canGetSlime(rule)) {
+			return;
+		}
+		Thing mossy = SlimeRuleTable.withSlime(rule);
+		if (mossy.isnt(MOSSY_THING) || random.nextDouble() >= chance) {
+			return;
+		}
+
+		World world = block.getWorld();
+		for (BlockFace face : BlockFaces.ALL) {
+			// don't load chunks just to look at a neighbour
+			int x = block.getX() + face.getModX();
+			int z = block.getZ() + face.getModZ();
+			if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+				continue;
+			}
+
+			Block neighbour = block.getRelative(face);
+			Material type = neighbour.getType();
+			if (type == Material.WATER || type == Material.STATIONARY_WATER || Thing.in(neighbour).is(MOSSY_THING)) {
+				BukkitPlus.replace(block, mossy);
+				if (index != null) {
+					index.update(block);
+				}
+				grown++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return how many blocks got mossy since the server started
+	 */
+	public long getGrown() {
+		return grown;
+	}
+}
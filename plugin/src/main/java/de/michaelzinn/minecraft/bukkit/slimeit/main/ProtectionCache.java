@@ -0,0 +1,238 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.ServiceRegisterEvent;
+import org.bukkit.event.server.ServiceUnregisterEvent;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider.Action;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider.Decision;
+
+/**
+ * Caches the decisions of the {@link ProtectionProvider} per player, chunk
+ * section and action, so clicking around doesn't cause a region query every
+ * time.
+ * 
+ * Every player gets a small LRU map of decisions which expire after a while,
+ * changes without a player (see mayEditWithoutPlayer) share one more.
+ * All decisions are dropped when the provider reports a change or a provider
+ * gets (un)registered. Without a provider, everything is allowed.
+ * 
+ * Main thread only.
+ * 
+ */
+public class ProtectionCache implements Listener, ProtectionProvider.ChangeListener {
+
+	private final long ttlNanos;
+	private final int capacity;
+
+	private final Map<UUID, Decisions> players = new HashMap<UUID, Decisions>();
+	private final Decisions nobody = new Decisions();
+
+	private ProtectionProvider provider;
+
+	// decisions from older generations are stale
+	private int generation;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param ttlSeconds
+	 *            decisions get re-checked after this long
+	 * @param capacity
+	 *            decisions cached per player
+	 */
+	public ProtectionCache(int ttlSeconds, int capacity) {
+		this.ttlNanos = ttlSeconds * 1000000000L;
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Listens to the provider for changes, and no longer to the one before.
+	 * 
+	 * @param provider
+	 *            null to allow everything
+	 */
+	public void setProvider(ProtectionProvider provider) {
+		if (provider != this.provider) {
+			if (this.provider != null) {
+				this.provider.removeChangeListener(this);
+			}
+			if (provider != null) {
+				provider.addChangeListener(this);
+			}
+		}
+		this.provider = provider;
+		protectionChanged();
+	}
+
+	public ProtectionProvider getProvider() {
+		return provider;
+	}
+
+	/**
+	 * Picks up the provider registered with the Bukkit services manager.
+	 */
+	public void loadProvider() {
+		setProvider(Bukkit.getServicesManager().load(ProtectionProvider.class));
+	}
+
+	/**
+	 * @param player
+	 * @param block
+	 * @param action
+	 * @return whether the player may do the action to the block
+	 */
+	public boolean mayEdit(Player player, Block block, Action action) {
+		ProtectionProvider current = provider;
+		if (current == null) {
+			return true;
+		}
+
+		UUID id = player.getUniqueId();
+		Decisions decisions = players.get(id);
+		if (decisions == null) {
+			decisions = new Decisions();
+			players.put(id, decisions);
+		}
+		return decide(current, decisions, player, block, action);
+	}
+
+	/**
+	 * For changes without a player, e.g. by a dispenser: asks the provider
+	 * without a player, so only blocks that nobody protects may change.
+	 * 
+	 * @param block
+	 * @param action
+	 * @return whether anyone may do the action to the block
+	 */
+	public boolean mayEditWithoutPlayer(Block block, Action action) {
+		ProtectionProvider current = provider;
+		if (current == null) {
+			return true;
+		}
+		return decide(current, nobody, null, block, action);
+	}
+
+	private boolean decide(ProtectionProvider current, Decisions decisions, Player player, Block block,
+			Action action) {
+		Long key = key(block, action);
+		World world = block.getWorld();
+		long now = System.nanoTime();
+		Cached cached = decisions.get(key);
+		if (cached != null && cached.generation == generation && cached.world == world && now < cached.expires) {
+			hits++;
+			return cached.allowed;
+		}
+
+		misses++;
+		Decision decision = current.check(player, block, action);
+		if (decision.wholeSection) {
+			if (cached == null) {
+				cached = new Cached();
+				decisions.put(key, cached);
+			}
+			cached.world = world;
+			cached.allowed = decision.allowed;
+			cached.generation = generation;
+			cached.expires = now + ttlNanos;
+		}
+		else if (cached != null) {
+			decisions.remove(key);
+		}
+		return decision.allowed;
+	}
+
+	/**
+	 * Drops all cached decisions.
+	 */
+	@Override
+	public void protectionChanged() {
+		generation++;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return hits / lookups, 0 before the first lookup
+	 */
+	public double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : hits / (double) lookups;
+	}
+
+	public int cachedDecisions() {
+		int count = 0;
+		for (Decisions decisions : players.values()) {
+			count += decisions.size();
+		}
+		return count + nobody.size();
+	}
+
+	@EventHandler
+	public void playerQuit(PlayerQuitEvent event) {
+		players.remove(event.getPlayer().getUniqueId());
+	}
+
+	@EventHandler
+	public void serviceRegistered(ServiceRegisterEvent event) {
+		if (event.getProvider().getService() == ProtectionProvider.class) {
+			loadProvider();
+		}
+	}
+
+	@EventHandler
+	public void serviceUnregistered(ServiceUnregisterEvent event) {
+		if (event.getProvider().getService() == ProtectionProvider.class) {
+			ProtectionProvider next = Bukkit.getServicesManager().load(ProtectionProvider.class);
+			setProvider(next == event.getProvider().getProvider() ? null : next);
+		}
+	}
+
+	/**
+	 * section x (22 bits) | section z (22 bits) | section y (4 bits) | action
+	 */
+	private static long key(Block block, Action action) {
+		long x = (block.getX() >> 4) & 0x3FFFFF;
+		long z = (block.getZ() >> 4) & 0x3FFFFF;
+		long y = (block.getY() >> 4) & 0xF;
+		return x << 28 | z << 6 | y << 2 | action.ordinal();
+	}
+
+	private static class Cached {
+		World world;
+		boolean allowed;
+		int generation;
+		long expires;
+	}
+
+	private class Decisions extends LinkedHashMap<Long, Cached> {
+		private static final long serialVersionUID = 1L;
+
+		Decisions() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+/**
+ * Decides whether a player may change a block, usually by asking a protection
+ * plugin like WorldGuard.
+ * 
+ * Register an implementation with the Bukkit services manager and SlimeIt
+ * picks it up:
+ * 
+ * <pre>
+ * getServer().getServicesManager().register(ProtectionProvider.class, provider, plugin, ServicePriority.Normal);
+ * </pre>
+ * 
+ * SlimeIt caches the decisions per chunk section (see {@link ProtectionCache}),
+ * so the provider is asked rarely and may be slow-ish. Decisions are made on
+ * the main thread.
+ * 
+ */
+public interface ProtectionProvider {
+
+	enum Action {
+		/** breaking a block */
+		BREAK,
+		/** changing a block, e.g. adding or scraping slime */
+		BUILD
+	}
+
+	enum Decision {
+		ALLOW(true, true),
+		DENY(false, true),
+		/** holds only for this block, e.g. a region border crosses the section */
+		ALLOW_BLOCK(true, false),
+		/** holds only for this block, e.g. a region border crosses the section */
+		DENY_BLOCK(false, false);
+
+		public final boolean allowed;
+		/** whether the decision holds for the whole 16x16x16 section */
+		public final boolean wholeSection;
+
+		private Decision(boolean allowed, boolean wholeSection) {
+			this.allowed = allowed;
+			this.wholeSection = wholeSection;
+		}
+	}
+
+	/**
+	 * Gets told when regions or their members change.
+	 */
+	interface ChangeListener {
+		void protectionChanged();
+	}
+
+	/**
+	 * @param player
+	 *            null for changes without a player, e.g. by a dispenser, decide
+	 *            like for someone who isn't a member of any region
+	 * @param block
+	 * @param action
+	 * @return whether the player may do the action to the block
+	 */
+	Decision check(Player player, Block block, Action action);
+
+	/**
+	 * Providers that can't tell when regions change may ignore the listener,
+	 * cached decisions still expire after a while.
+	 * 
+	 * @param listener
+	 */
+	void addChangeListener(ChangeListener listener);
+
+	/**
+	 * Called when the listener stops using this provider, e.g. because another
+	 * one got registered.
+	 * 
+	 * @param listener
+	 */
+	void removeChangeListener(ChangeListener listener);
+}
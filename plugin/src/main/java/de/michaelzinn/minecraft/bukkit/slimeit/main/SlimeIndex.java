@@ -0,0 +1,571 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing.Tag.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.TagQuery;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Knows where the blocks are that can get slime or have slime on them, per
+ * loaded chunk, so region features don't have to look at every block.
+ * 
+ * - Built asynchronously from a ChunkSnapshot when a chunk loads, dropped when
+ * it unloads.
+ * 
+ * - Kept up to date by SlimeIt's own edits (call update()) and by block place,
+ * break, burn and explosion events. Blocks moved by pistons get re-read in the
+ * next tick, they only move after the event. Changes by other plugins that
+ * don't fire an event aren't seen until the chunk loads again.
+ * 
+ * - Every change bumps the version of its chunk, a build that started before
+ * the change is thrown away and started over.
+ * 
+ * - Rebuilt when the slime rules change.
+ * 
+ * Queries cost time proportional to the number of indexed blocks in the
+ * chunks they touch, not to the volume.
+ * 
+ * Updates happen on the main thread, queries may come from any thread but
+ * only see a consistent section, not a consistent chunk.
+ * 
+ */
+public class SlimeIndex implements Listener {
+
+	/**
+	 * Gets called for every match of a query.
+	 */
+	public interface Visitor {
+		void visit(World world, int x, int y, int z, Thing thing);
+	}
+
+	private static final int SECTIONS = 16;
+	private static final TagQuery ANY_PISTON = TagQuery.of(PISTON);
+
+	private final Plugin plugin;
+	private final SlimeRules slimeRules;
+
+	private final Map<UUID, Map<Long, ChunkIndex>> worlds = new ConcurrentHashMap<UUID, Map<Long, ChunkIndex>>();
+
+	// changes per world and chunk key, to notice edits made while a chunk is
+	// being built
+	private final Map<UUID, Map<Long, Integer>> versions = new ConcurrentHashMap<UUID, Map<Long, Integer>>();
+
+	private volatile SlimeRuleTable indexedTable;
+
+	public SlimeIndex(Plugin plugin, SlimeRules slimeRules) {
+		this.plugin = plugin;
+		this.slimeRules = slimeRules;
+	}
+
+	/**
+	 * Indexes all loaded chunks, e.g. on startup or after the rules changed.
+	 */
+	public void rebuildAll() {
+		indexedTable = slimeRules.table();
+		for (World world : Bukkit.getWorlds()) {
+			worlds.remove(world.getUID());
+			for (Chunk chunk : world.getLoadedChunks()) {
+				build(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Re-reads a block after SlimeIt changed it. For pistons, the other part
+	 * is re-read as well.
+	 * 
+	 * @param block
+	 */
+	public void update(Block block) {
+		update(block, BlockStates.of(block));
+	}
+
+	/**
+	 * Like {@link #update(Block)}, for a block whose new state the caller
+	 * already knows.
+	 * 
+	 * @param block
+	 * @param state
+	 *            what the block is now, see BlockStates
+	 */
+	public void update(Block block, int state) {
+		checkRules();
+		put(block, state);
+		Thing thing = BlockStates.thing(state);
+		if (thing != null && thing.is(ANY_PISTON)) {
+			Block front = block.getRelative(thing.front);
+			put(front, BlockStates.of(front));
+			Block back = block.getRelative(thing.back);
+			put(back, BlockStates.of(back));
+		}
+	}
+
+	private void put(Block block, int state) {
+		set(block, isIndexed(indexedTable, state) ? state : -1);
+	}
+
+	/**
+	 * @param thingId
+	 *            -1 to remove the block
+	 */
+	private void set(Block block, int thingId) {
+		World world = block.getWorld();
+		long chunkKey = chunkKey(block.getX() >> 4, block.getZ() >> 4);
+		Map<Long, Integer> worldVersions = versions(world);
+		worldVersions.put(chunkKey, version(worldVersions, chunkKey) + 1);
+
+		ChunkIndex chunk = chunks(world).get(chunkKey);
+		if (chunk == null) {
+			return; // not built yet, the build will notice the version change
+		}
+		chunk.set(block.getX() & 15, block.getY(), block.getZ() & 15, thingId);
+	}
+
+	/**
+	 * Calls the visitor for every indexed block within the cuboid.
+	 * 
+	 * @param world
+	 * @param min
+	 *            smallest x, y, z
+	 * @param max
+	 *            largest x, y, z
+	 * @param thing
+	 *            only visit these or null for all indexed blocks
+	 * @param visitor
+	 */
+	public void query(World world, int[] min, int[] max, Thing thing, Visitor visitor) {
+		Map<Long, ChunkIndex> chunks = chunks(world);
+		int thingId = thing == null ? -1 : thing.id;
+		for (int cx = min[0] >> 4; cx <= max[0] >> 4; cx++) {
+			for (int cz = min[2] >> 4; cz <= max[2] >> 4; cz++) {
+				ChunkIndex chunk = chunks.get(chunkKey(cx, cz));
+				if (chunk != null) {
+					chunk.query(world, cx, cz, min, max, thingId, visitor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param chunk
+	 * @param random
+	 * @return a random indexed block of that chunk or null if there is none
+	 *         (or the chunk isn't indexed yet)
+	 */
+	public Block randomBlock(Chunk chunk, ThreadLocalRandom random) {
+		ChunkIndex index = chunks(chunk.getWorld()).get(chunkKey(chunk.getX(), chunk.getZ()));
+		if (index == null) {
+			return null;
+		}
+		int[] position = index.random(random);
+		if (position == null) {
+			return null;
+		}
+		return chunk.getBlock(position[0], position[1], position[2]);
+	}
+
+	/**
+	 * @return indexed blocks in all loaded chunks
+	 */
+	public long size() {
+		long size = 0;
+		for (Map<Long, ChunkIndex> chunks : worlds.values()) {
+			for (ChunkIndex chunk : chunks.values()) {
+				size += chunk.size();
+			}
+		}
+		return size;
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void chunkLoad(ChunkLoadEvent event) {
+		checkRules();
+		build(event.getChunk());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void chunkUnload(ChunkUnloadEvent event) {
+		Chunk chunk = event.getChunk();
+		long chunkKey = chunkKey(chunk.getX(), chunk.getZ());
+		chunks(chunk.getWorld()).remove(chunkKey);
+		versions(chunk.getWorld()).remove(chunkKey);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockPlace(BlockPlaceEvent event) {
+		update(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBreak(BlockBreakEvent event) {
+		// the block is still there during the event
+		set(event.getBlock(), -1);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBurn(BlockBurnEvent event) {
+		set(event.getBlock(), -1);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void entityExplode(EntityExplodeEvent event) {
+		for (Block block : event.blockList()) {
+			set(block, -1);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockExplode(BlockExplodeEvent event) {
+		for (Block block : event.blockList()) {
+			set(block, -1);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonExtend(BlockPistonExtendEvent event) {
+		updateNextTick(event.getBlock(), event.getBlocks());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonRetract(BlockPistonRetractEvent event) {
+		updateNextTick(event.getBlock(), event.getBlocks());
+	}
+
+	/**
+	 * Re-reads the piston (and its head, see update()), the moved blocks and
+	 * both their neighbours along the axis of the piston once they moved.
+	 */
+	private void updateNextTick(Block piston, List<Block> moved) {
+		Thing thing = BlockStates.thing(BlockStates.of(piston));
+		final List<Block> blocks = new ArrayList<Block>(moved.size() * 3 + 1);
+		blocks.add(piston);
+		for (Block block : moved) {
+			blocks.add(block);
+			if (thing != null && thing.front != null) {
+				blocks.add(block.getRelative(thing.front));
+				blocks.add(block.getRelative(thing.front.getOppositeFace()));
+			}
+		}
+		Bukkit.getScheduler().runTask(plugin, new Runnable() {
+			@Override
+			public void run() {
+				for (Block block : blocks) {
+					update(block);
+				}
+			}
+		});
+	}
+
+	private void checkRules() {
+		if (indexedTable != slimeRules.table()) {
+			rebuildAll();
+		}
+	}
+
+	/**
+	 * Takes a snapshot now and builds the index off the main thread.
+	 */
+	private void build(Chunk chunk) {
+		final ChunkSnapshot snapshot = chunk.getChunkSnapshot();
+		final World world = chunk.getWorld();
+		final long chunkKey = chunkKey(chunk.getX(), chunk.getZ());
+		final int version = version(versions(world), chunkKey);
+		final SlimeRuleTable table = indexedTable;
+
+		Bukkit.getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+			@Override
+			public void run() {
+				final ChunkIndex index = build(snapshot, table);
+				Bukkit.getScheduler().runTask(plugin, new Runnable() {
+					@Override
+					public void run() {
+						publish(world, chunkKey, version, table, index);
+					}
+				});
+			}
+		});
+	}
+
+	private void publish(World world, long chunkKey, int version, SlimeRuleTable table, ChunkIndex index) {
+		int x = (int) (chunkKey >> 32);
+		int z = (int) chunkKey;
+		if (!world.isChunkLoaded(x, z) || table != indexedTable) {
+			return; // unloaded or outdated rules, a new build is on its way
+		}
+		if (version(versions(world), chunkKey) != version) {
+			// edited while building
+			build(world.getChunkAt(x, z));
+			return;
+		}
+		chunks(world).put(chunkKey, index);
+	}
+
+	/**
+	 * Only touches the snapshot and the table, so it's safe off the main
+	 * thread.
+	 */
+	static ChunkIndex build(ChunkSnapshot snapshot, SlimeRuleTable table) {
+		ChunkIndex index = new ChunkIndex();
+		int[] states = new int[16 * 16 * 16];
+		for (int section = 0; section < SECTIONS; section++) {
+			if (snapshot.isSectionEmpty(section)) {
+				continue;
+			}
+			int minY = section << 4;
+			BlockStates.read(snapshot, 0, minY, 0, 16, minY + 16, 16, states);
+			for (int i = 0; i < states.length; i++) {
+				if (isIndexed(table, states[i])) {
+					// y, z, x order, see BlockStates.read
+					index.set(i & 15, minY + (i >> 8), (i >> 4) & 15, states[i]);
+				}
+			}
+		}
+		return index;
+	}
+
+	private static boolean isIndexed(SlimeRuleTable table, int thingId) {
+		return table.rule(thingId) != 0;
+	}
+
+	private Map<Long, ChunkIndex> chunks(World world) {
+		UUID id = world.getUID();
+		Map<Long, ChunkIndex> chunks = worlds.get(id);
+		if (chunks == null) {
+			chunks = new ConcurrentHashMap<Long, ChunkIndex>();
+			worlds.put(id, chunks);
+		}
+		return chunks;
+	}
+
+	private Map<Long, Integer> versions(World world) {
+		UUID id = world.getUID();
+		Map<Long, Integer> worldVersions = versions.get(id);
+		if (worldVersions == null) {
+			worldVersions = new ConcurrentHashMap<Long, Integer>();
+			versions.put(id, worldVersions);
+		}
+		return worldVersions;
+	}
+
+	private static int version(Map<Long, Integer> worldVersions, long chunkKey) {
+		Integer version = worldVersions.get(chunkKey);
+		return version == null ? 0 : version;
+	}
+
+	private static long chunkKey(int x, int z) {
+		return ((long) x << 32) | (z & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The indexed blocks of one chunk, one SectionIndex per 16 blocks of
+	 * height.
+	 */
+	static class ChunkIndex {
+		private final SectionIndex[] sections = new SectionIndex[SECTIONS];
+
+		void set(int x, int y, int z, int thingId) {
+			if (y < 0 || y >= SECTIONS * 16) {
+				return;
+			}
+			SectionIndex section = sections[y >> 4];
+			if (section == null) {
+				if (thingId < 0) {
+					return;
+				}
+				section = new SectionIndex();
+				sections[y >> 4] = section;
+			}
+			short position = (short) (((y & 15) << 8) | (z << 4) | x);
+			if (thingId < 0) {
+				section.remove(position);
+			}
+			else {
+				section.put(position, (char) thingId);
+			}
+		}
+
+		void query(World world, int cx, int cz, int[] min, int[] max, int thingId, Visitor visitor) {
+			int minSection = Math.max(0, min[1] >> 4);
+			int maxSection = Math.min(SECTIONS - 1, max[1] >> 4);
+			for (int s = minSection; s <= maxSection; s++) {
+				SectionIndex section = sections[s];
+				if (section != null) {
+					section.query(world, cx << 4, s << 4, cz << 4, min, max, thingId, visitor);
+				}
+			}
+		}
+
+		int[] random(ThreadLocalRandom random) {
+			int nonEmpty = 0;
+			for (SectionIndex section : sections) {
+				if (section != null && section.size() > 0) {
+					nonEmpty++;
+				}
+			}
+			if (nonEmpty == 0) {
+				return null;
+			}
+
+			int pick = random.nextInt(nonEmpty);
+			for (int s = 0; s < SECTIONS; s++) {
+				if (sections[s] != null && sections[s].size() > 0 && pick-- == 0) {
+					int position = sections[s].random(random);
+					if (position < 0) {
+						return null;
+					}
+					return new int[] { position & 15, (s << 4) + (position >> 8), (position >> 4) & 15 };
+				}
+			}
+			return null;
+		}
+
+		long size() {
+			long size = 0;
+			for (SectionIndex section : sections) {
+				if (section != null) {
+					size += section.size();
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Open addressing map from a position in a 16x16x16 section to a Thing
+	 * id, in two primitive arrays. Starts small and grows, most sections only
+	 * have a few indexed blocks.
+	 */
+	static class SectionIndex {
+		// position + 1, 0 means empty
+		private short[] keys = new short[8];
+		private char[] values = new char[8];
+		private int size;
+
+		synchronized int size() {
+			return size;
+		}
+
+		synchronized void put(short position, char thingId) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			short key = (short) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != 0) {
+				if (keys[i] == key) {
+					values[i] = thingId;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = thingId;
+			size++;
+		}
+
+		synchronized void remove(short position) {
+			short key = (short) (position + 1);
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != key) {
+				if (keys[i] == 0) {
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = 0;
+			size--;
+
+			// move following entries back so lookups still find them
+			int j = i;
+			while (true) {
+				j = (j + 1) & mask;
+				if (keys[j] == 0) {
+					return;
+				}
+				int home = hash(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					keys[j] = 0;
+					i = j;
+				}
+			}
+		}
+
+		synchronized void query(World world, int baseX, int baseY, int baseZ, int[] min, int[] max, int thingId,
+				Visitor visitor) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == 0 || (thingId >= 0 && values[i] != thingId)) {
+					continue;
+				}
+				int position = keys[i] - 1;
+				int x = baseX + (position & 15);
+				int y = baseY + (position >> 8);
+				int z = baseZ + ((position >> 4) & 15);
+				if (x >= min[0] && x <= max[0] && y >= min[1] && y <= max[1] && z >= min[2] && z <= max[2]) {
+					visitor.visit(world, x, y, z, Thing.byId(values[i]));
+				}
+			}
+		}
+
+		/**
+		 * @return a random position or -1 if empty
+		 */
+		synchronized int random(ThreadLocalRandom random) {
+			if (size == 0) {
+				return -1;
+			}
+			int i = random.nextInt(keys.length);
+			while (keys[i] == 0) {
+				i = (i + 1) & (keys.length - 1);
+			}
+			return keys[i] - 1;
+		}
+
+		private void grow() {
+			short[] oldKeys = keys;
+			char[] oldValues = values;
+			keys = new short[oldKeys.length * 2];
+			values = new char[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					put((short) (oldKeys[i] - 1), oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(short key) {
+			return (key * 0x9E3779B9) >>> 16;
+		}
+	}
+}
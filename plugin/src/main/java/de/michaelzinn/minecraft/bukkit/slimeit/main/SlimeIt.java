@@ -0,0 +1,377 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * 
+ * @author Michael Zinn (@RedNifre)
+ * 
+ */
+public class SlimeIt extends JavaPlugin {
+	public Logger log;
+	public BlockPunchListener listener;
+	public SlimeRules slimeRules;
+	public DropAggregator drops;
+	public SoundScheduler sounds;
+	public InteractionLimiter limiter;
+	/** null if disabled in the config */
+	public MossSpreader moss;
+	/** null if disabled in the config or nothing uses it */
+	public SlimeIndex index;
+	/** call protectionChanged() on this when regions change */
+	public ProtectionCache protection;
+	/** null if disabled in the config */
+	public ChangeJournal journal;
+	/** null if disabled in the config */
+	public DispenserSlimer dispensers;
+	/** null if disabled in the config */
+	public FaceSlimeStore faces;
+	/** null if disabled in the config or there is no face store */
+	public FaceRenderer particles;
+	/** null if disabled in the config */
+	public UndoHistory undo;
+	/** null if disabled in the config */
+	public Metrics metrics;
+	/** null if disabled in the config */
+	public TickWatchdog watchdog;
+	/** null if disabled in the config or there is no flight recorder */
+	public HandlerTrace trace;
+	/** null unless recording, see startRecording() */
+	public EventRecorder recorder;
+
+	@Override
+	public void onEnable() {
+		super.onEnable();
+		log = getLogger();
+		// builds the Thing registry now instead of during the first event
+		log.info("Registered " + Thing.count() + " things");
+
+		saveDefaultConfig();
+
+		if (getConfig().getBoolean("metrics.enabled", true)) {
+			metrics = new Metrics(log);
+			int interval = getConfig().getInt("metrics.log-interval-seconds", 600);
+			if (interval > 0) {
+				Bukkit.getScheduler().runTaskTimer(this, metrics, 20L * interval, 20L * interval);
+			}
+		}
+
+		if (getConfig().getBoolean("profiling.flight-recorder", true)) {
+			trace = createFlightRecorderTrace();
+		}
+		int budget = getConfig().getInt("profiling.tick-budget-micros", 2000);
+		if (budget > 0) {
+			watchdog = new TickWatchdog(log, budget, getConfig().getInt("profiling.warning-interval-seconds", 60));
+			watchdog.setTrace(trace);
+			Bukkit.getScheduler().runTaskTimer(this, watchdog, 1, 1);
+		}
+
+		slimeRules = new SlimeRules();
+		slimeRules.setMetrics(metrics);
+		if (!new File(getDataFolder(), SlimeRules.FILE_NAME).exists()) {
+			saveResource(SlimeRules.FILE_NAME, false);
+		}
+		reloadSlimeRules(null);
+
+		drops = new DropAggregator(
+				getConfig().getInt("drops.cell-size", 1),
+				getConfig().getInt("drops.max-entities-per-chunk", 4));
+		everyTick(drops, "drops");
+
+		sounds = new SoundScheduler(
+				getConfig().getInt("sounds.cell-size", 1),
+				getConfig().getInt("sounds.max-per-player-per-second", 8));
+		everyTick(sounds, "sounds");
+		Bukkit.getPluginManager().registerEvents(sounds, this);
+
+		if (getConfig().getBoolean("moss.enabled", false)) {
+			moss = new MossSpreader(slimeRules,
+					getConfig().getInt("moss.budget-micros", 250),
+					getConfig().getInt("moss.samples-per-chunk", 16),
+					getConfig().getDouble("moss.chance", 0.05));
+			everyTick(moss, "moss");
+			Bukkit.getPluginManager().registerEvents(moss, this);
+			moss.addLoadedChunks();
+		}
+
+		// only the moss reads the index, everything else just keeps it current
+		if (moss != null && getConfig().getBoolean("index.enabled", true)) {
+			index = new SlimeIndex(this, slimeRules);
+			Bukkit.getPluginManager().registerEvents(index, this);
+			index.rebuildAll();
+			moss.setIndex(index);
+		}
+
+		listener = new BlockPunchListener(this);
+
+		if (getConfig().getBoolean("limiter.enabled", true)) {
+			limiter = new InteractionLimiter(
+					getConfig().getDouble("limiter.interactions-per-second", 6),
+					getConfig().getInt("limiter.burst", 12),
+					getConfig().getInt("limiter.idle-seconds", 300));
+			// evicting doesn't need to be precise, every 30s is plenty
+			Bukkit.getScheduler().runTaskTimer(this, limiter, 20 * 30, 20 * 30);
+			listener.setLimiter(limiter);
+		}
+		listener.setIndex(index);
+
+		if (getConfig().getBoolean("journal.enabled", true)) {
+			try {
+				journal = new ChangeJournal(log, new File(getDataFolder(), "journal"),
+						getConfig().getInt("journal.buffer-records", 65536),
+						getConfig().getInt("journal.segment-size-mb", 16));
+				listener.setJournal(journal);
+			} catch (IOException e) {
+				log.log(Level.SEVERE, "Couldn't open the journal, changes won't be recorded", e);
+			}
+		}
+
+		if (getConfig().getBoolean("dispensers.enabled", true)) {
+			dispensers = new DispenserSlimer(slimeRules, drops, sounds,
+					getConfig().getInt("dispensers.max-per-chunk", 16));
+			dispensers.setIndex(index);
+			dispensers.setJournal(journal);
+			everyTick(dispensers, "dispensers");
+			Bukkit.getPluginManager().registerEvents(dispensers, this);
+		}
+
+		if (getConfig().getBoolean("faces.enabled", true)) {
+			faces = new FaceSlimeStore(log, new File(getDataFolder(), "faces"));
+			faces.loadAll(Bukkit.getWorlds());
+			faces.setDrops(drops);
+			everyTick(faces, "faces");
+			Bukkit.getPluginManager().registerEvents(faces, this);
+			listener.setFaces(faces);
+			slimeRules.setFaces(faces);
+
+			if (getConfig().getBoolean("faces.particles.enabled", true)) {
+				particles = new FaceRenderer(faces,
+						getConfig().getInt("faces.particles.radius", 16),
+						getConfig().getInt("faces.particles.period-ticks", 10),
+						getConfig().getInt("faces.particles.max-per-player-per-second", 40));
+				everyTick(particles, "particles");
+				Bukkit.getPluginManager().registerEvents(particles, this);
+			}
+		}
+
+		if (getConfig().getBoolean("undo.enabled", true)) {
+			undo = new UndoHistory(
+					getConfig().getInt("undo.depth", 256),
+					getConfig().getInt("undo.blocks-per-tick", 32));
+			undo.setIndex(index);
+			undo.setJournal(journal);
+			undo.setFaces(faces);
+			everyTick(undo, "undo");
+			Bukkit.getPluginManager().registerEvents(undo, this);
+			listener.setUndo(undo);
+		}
+		listener.setMetrics(metrics);
+		listener.setWatchdog(watchdog);
+		listener.setTrace(trace);
+
+		protection = new ProtectionCache(
+				getConfig().getInt("protection.ttl-seconds", 10),
+				getConfig().getInt("protection.cache-size", 256));
+		protection.loadProvider();
+		Bukkit.getPluginManager().registerEvents(protection, this);
+		listener.setProtection(protection);
+		if (dispensers != null) {
+			dispensers.setProtection(protection);
+		}
+		if (undo != null) {
+			undo.setProtection(protection);
+		}
+
+		Bukkit.getPluginManager().registerEvents(listener, this);
+		getCommand("slimeit").setExecutor(new SlimeItCommand(this));
+
+		if (getConfig().getBoolean("recorder.start-on-enable", false)) {
+			startRecording();
+		}
+	}
+
+	@Override
+	public void onDisable() {
+		stopRecording();
+		// the scheduler won't run them again, flush what they still hold while
+		// the journal and the face store are open
+		if (dispensers != null) {
+			dispensers.run();
+		}
+		if (drops != null) {
+			drops.run();
+		}
+		if (sounds != null) {
+			sounds.run();
+		}
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+		if (faces != null) {
+			faces.close();
+			faces = null;
+		}
+		if (protection != null) {
+			// the provider may outlive this plugin
+			protection.setProvider(null);
+		}
+		super.onDisable();
+	}
+
+	/**
+	 * Starts recording the events the listener sees into a new trace file in
+	 * the traces folder.
+	 * 
+	 * @return the recorder, null if it couldn't be started
+	 */
+	public EventRecorder startRecording() {
+		stopRecording();
+		String name = "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".bin";
+		try {
+			recorder = new EventRecorder(log, new File(new File(getDataFolder(), "traces"), name),
+					getConfig().getInt("recorder.buffer-kb", 256),
+					getConfig().getLong("recorder.max-events", 10000000));
+			listener.setRecorder(recorder);
+			log.info("Recording events into " + recorder.getFile());
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Couldn't start recording events", e);
+		}
+		return recorder;
+	}
+
+	/**
+	 * @return the stopped recorder, null if there was none
+	 */
+	public EventRecorder stopRecording() {
+		EventRecorder stopped = recorder;
+		if (stopped != null) {
+			listener.setRecorder(null);
+			recorder = null;
+			stopped.close();
+			log.info("Recorded " + stopped.getRecorded() + " events into " + stopped.getFile() + ", "
+					+ stopped.getDropped() + " dropped");
+		}
+		return stopped;
+	}
+
+	/**
+	 * Runs the task every tick, its time counts towards the tick budget.
+	 */
+	private void everyTick(Runnable task, String name) {
+		Bukkit.getScheduler().runTaskTimer(this, watchdog == null ? task : watchdog.timed(task, name), 1, 1);
+	}
+
+	/**
+	 * FlightRecorderTrace is compiled for Java 11 and loaded by name, so the
+	 * rest of the plugin still runs on Java 8.
+	 * 
+	 * @return null if there is no JFR API or the JVM is older than Java 11
+	 */
+	private static HandlerTrace createFlightRecorderTrace() {
+		try {
+			return (HandlerTrace) Class.forName(SlimeIt.class.getPackage().getName() + ".FlightRecorderTrace")
+					.newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		} catch (InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Parses the rules file off the main thread and swaps the new rules in
+	 * when done. Falls back to the built in rules if the file is broken.
+	 * 
+	 * @param sender
+	 *            gets told about the result, may be null
+	 */
+	public void reloadSlimeRules(final CommandSender sender) {
+		final File file = new File(getDataFolder(), SlimeRules.FILE_NAME);
+
+		Bukkit.getScheduler().runTaskAsynchronously(this, new Runnable() {
+			@Override
+			public void run() {
+				String message;
+				long start = System.nanoTime();
+				SlimeRuleParser parser = new SlimeRuleParser();
+				try {
+					Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+					try {
+						SlimeRuleTable table = parser.parse(reader);
+						slimeRules.use(table);
+						message = String.format("Loaded %d slime rules (%d can get slime, %d have slime) in %.2f ms",
+								parser.getRuleCount(), table.canGetSlimeCount(), table.hasSlimeCount(),
+								(System.nanoTime() - start) / 1e6);
+						log.info(message);
+					} finally {
+						reader.close();
+					}
+				} catch (IOException e) {
+					slimeRules.use(SlimeRules.builtIn());
+					message = "Couldn't read " + file + ", using the built in slime rules: " + e.getMessage();
+					log.log(Level.WARNING, message);
+				} catch (ParseException e) {
+					slimeRules.use(SlimeRules.builtIn());
+					message = "Error in " + file + ", using the built in slime rules: " + e.getMessage();
+					log.log(Level.WARNING, message);
+				}
+
+				tell(sender, message);
+				rebuildIndex();
+			}
+		});
+	}
+
+	/**
+	 * Re-indexes the loaded chunks on the main thread, the rules may have
+	 * changed.
+	 */
+	private void rebuildIndex() {
+		if (!isEnabled()) {
+			return;
+		}
+		Bukkit.getScheduler().runTask(this, new Runnable() {
+			@Override
+			public void run() {
+				if (index != null) {
+					index.rebuildAll();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sends a message on the main thread.
+	 */
+	void tell(final CommandSender sender, final String message) {
+		if (sender == null || !isEnabled()) {
+			return;
+		}
+		Bukkit.getScheduler().runTask(this, new Runnable() {
+			@Override
+			public void run() {
+				sender.sendMessage(message);
+			}
+		});
+	}
+}
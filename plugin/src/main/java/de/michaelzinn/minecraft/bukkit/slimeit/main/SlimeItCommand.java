@@ -0,0 +1,251 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Handles /slimeit and its sub commands.
+ * 
+ */
+public class SlimeItCommand implements CommandExecutor {
+
+	private final SlimeIt plugin;
+
+	public SlimeItCommand(SlimeIt plugin) {
+		this.plugin = plugin;
+	}
+
+	@Override
+	public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+		if (args.length == 0) {
+			return false;
+		}
+
+		String subCommand = args[0].toLowerCase();
+		if (subCommand.equals("undo")) {
+			return undo(sender, args);
+		}
+		if (!sender.hasPermission("slimeit.admin")) {
+			sender.sendMessage("You don't have permission to do that");
+			return true;
+		}
+
+		if (subCommand.equals("reload")) {
+			sender.sendMessage("Reloading " + SlimeRules.FILE_NAME + "...");
+			plugin.reloadSlimeRules(sender);
+			return true;
+		}
+
+		if (subCommand.equals("limits")) {
+			if (plugin.limiter == null) {
+				sender.sendMessage("The interaction limiter is disabled");
+				return true;
+			}
+			sender.sendMessage("Interaction limiter, " + plugin.limiter.trackedPlayers() + " players tracked:");
+			for (String line : plugin.limiter.report(10)) {
+				sender.sendMessage(" - " + line);
+			}
+			return true;
+		}
+
+		if (subCommand.equals("record")) {
+			if (args.length > 1 && args[1].equalsIgnoreCase("start")) {
+				EventRecorder recorder = plugin.startRecording();
+				sender.sendMessage(recorder == null ? "Couldn't start recording, see the log" : "Recording events into "
+						+ recorder.getFile());
+				return true;
+			}
+			if (args.length > 1 && args[1].equalsIgnoreCase("stop")) {
+				EventRecorder recorder = plugin.stopRecording();
+				sender.sendMessage(recorder == null ? "Not recording" : "Recorded " + recorder.getRecorded()
+						+ " events into " + recorder.getFile() + ", " + recorder.getDropped() + " dropped");
+				return true;
+			}
+			return false;
+		}
+
+		if (subCommand.equals("journal")) {
+			return journal(sender, args);
+		}
+
+		if (subCommand.equals("stats")) {
+			Metrics metrics = plugin.metrics;
+			if (metrics == null) {
+				sender.sendMessage("Metrics are disabled");
+				return true;
+			}
+			sender.sendMessage("SlimeIt stats since start:");
+			for (String line : metrics.report()) {
+				sender.sendMessage(" - " + line);
+			}
+			sender.sendMessage(" - " + metrics.ruleLookups() + " rule lookups, most hits:");
+			for (String line : metrics.ruleHits(10)) {
+				sender.sendMessage("   - " + line);
+			}
+			DispenserSlimer dispensers = plugin.dispensers;
+			if (dispensers != null) {
+				sender.sendMessage(String.format(" - dispensers: %d slimed, %d scraped, %d duplicates, %d capped",
+						dispensers.getSlimed(), dispensers.getScraped(), dispensers.getDeduplicated(),
+						dispensers.getCapped()));
+			}
+			FaceSlimeStore faces = plugin.faces;
+			if (faces != null) {
+				sender.sendMessage(String.format(" - faces: %d slimed blocks in %d loaded chunks, %d pending writes",
+						faces.size(), faces.loadedChunks(), faces.getPendingWrites()));
+			}
+			FaceRenderer particles = plugin.particles;
+			if (particles != null) {
+				sender.sendMessage(String.format(" - particles: %d drawn, %d over budget, %d skipped players",
+						particles.getDrawn(), particles.getThrottled(), particles.getSkipped()));
+			}
+			return true;
+		}
+
+		if (subCommand.equals("protection")) {
+			ProtectionCache protection = plugin.protection;
+			if (protection.getProvider() == null) {
+				sender.sendMessage("No protection provider registered, everything is allowed");
+				return true;
+			}
+			sender.sendMessage("Protection provider: " + protection.getProvider().getClass().getName());
+			sender.sendMessage(String.format(" - %d hits, %d misses, %.1f%% hit rate", protection.getHits(),
+					protection.getMisses(), protection.hitRate() * 100));
+			sender.sendMessage(" - " + protection.cachedDecisions() + " cached decisions");
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * /slimeit undo [n], reverts the player's last n slime edits.
+	 */
+	private boolean undo(CommandSender sender, String[] args) {
+		UndoHistory undo = plugin.undo;
+		if (undo == null) {
+			sender.sendMessage("Undo is disabled");
+			return true;
+		}
+		if (!(sender instanceof Player)) {
+			sender.sendMessage("Only players can undo their changes");
+			return true;
+		}
+		if (!sender.hasPermission("slimeit.undo")) {
+			sender.sendMessage("You don't have permission to do that");
+			return true;
+		}
+
+		int edits;
+		try {
+			edits = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		if (edits <= 0) {
+			return false;
+		}
+
+		int queued = undo.undo((Player) sender, edits);
+		if (queued == 0) {
+			sender.sendMessage("Nothing to undo, up to " + undo.getDepth() + " changes are remembered");
+		}
+		else if (queued < edits) {
+			sender.sendMessage("Only " + queued + " changes to undo");
+		}
+		return true;
+	}
+
+	/**
+	 * /slimeit journal [radius] [minutes], shows the latest changes around the
+	 * player. Scans the journal off the main thread.
+	 */
+	private boolean journal(final CommandSender sender, String[] args) {
+		final ChangeJournal journal = plugin.journal;
+		if (journal == null) {
+			sender.sendMessage("The journal is disabled");
+			return true;
+		}
+		if (!(sender instanceof Player)) {
+			sender.sendMessage("Only players can search around themselves, use JournalQuery on the console");
+			return true;
+		}
+
+		final int radius;
+		final int minutes;
+		try {
+			radius = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+			minutes = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+
+		final Location location = ((Player) sender).getLocation();
+		final String worldName = location.getWorld().getName();
+		final int x = location.getBlockX();
+		final int z = location.getBlockZ();
+
+		Bukkit.getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+			@Override
+			public void run() {
+				final Deque<String> latest = new ArrayDeque<String>();
+				final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+				String message;
+				try {
+					final JournalReader reader = new JournalReader(journal.getDirectory());
+					int world = reader.worldIndex(worldName);
+					long now = System.currentTimeMillis();
+					long found = world < 0 ? 0 : reader.scan(now - minutes * 60000L, now, world, x - radius, z
+							- radius, x + radius, z + radius, new JournalReader.Visitor() {
+						@Override
+						public void visit(long time, int player, int world, int x, int y, int z, int before, int after) {
+							StringBuilder line = new StringBuilder();
+							line.append(format.format(new Date(time))).append(' ').append(reader.playerName(player))
+									.append(' ').append(x).append(' ').append(y).append(' ').append(z).append(": ");
+							appendChange(line, before);
+							line.append(" -> ");
+							appendChange(line, after);
+							latest.addLast(line.toString());
+							if (latest.size() > 10) {
+								latest.removeFirst();
+							}
+						}
+					});
+					message = found + " changes within " + radius + " blocks in the last " + minutes + " minutes";
+				} catch (IOException e) {
+					message = "Couldn't read the journal: " + e.getMessage();
+				}
+
+				plugin.tell(sender, message);
+				for (String line : latest) {
+					plugin.tell(sender, " - " + line);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Appends the Thing name for block records and leaves face records to
+	 * JournalReader.appendChange.
+	 */
+	private static void appendChange(StringBuilder line, int change) {
+		if (JournalReader.isFaces(change)) {
+			JournalReader.appendChange(line, change);
+		}
+		else {
+			line.append(Thing.byId(change));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * Parses slime rules from text, see https://github.com/RedNifre/SlimeIt/issues/11
+ * 
+ * One rule per line, # starts a comment:
+ * 
+ * <pre>
+ * # without slime            with slime                 faces with slime
+ * COBBLE_STONE_BLOCK     &lt;-&gt; MOSSY_COBBLE_STONE_BLOCK
+ * CRACKED_STONE_BRICK_BLOCK -&gt; MOSSY_STONE_BRICK_BLOCK
+ * PISTON_BASE:1          &lt;-&gt; PISTON_STICKY_BASE:1        UP
+ * </pre>
+ * 
+ * "&lt;-&gt;" works both ways, "-&gt;" only adds slime. Things are either the
+ * name of a Thing constant or MATERIAL:data. Faces default to all six faces.
+ * 
+ * Only touches immutable data, so it's safe to run off the main thread.
+ * 
+ */
+public class SlimeRuleParser {
+
+	public static final String BIDIRECTIONAL = "<->";
+	public static final String UNIDIRECTIONAL = "->";
+
+	private int ruleCount;
+
+	/**
+	 * @return the number of rules parsed by the last call to parse()
+	 */
+	public int getRuleCount() {
+		return ruleCount;
+	}
+
+	/**
+	 * @param reader
+	 * @return the compiled rules
+	 * @throws ParseException
+	 *             if a line is invalid. The error offset is the line number.
+	 * @throws IOException
+	 */
+	public SlimeRuleTable parse(Reader reader) throws IOException, ParseException {
+		BufferedReader lines = new BufferedReader(reader);
+		SlimeRuleTable.Builder builder = new SlimeRuleTable.Builder();
+		ruleCount = 0;
+
+		int lineNumber = 0;
+		String line;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+			int comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			String[] words = line.split("\\s+");
+			if (words.length < 3) {
+				throw new ParseException("Line " + lineNumber + ": expected <thing> <-> <thing> [faces]", lineNumber);
+			}
+
+			Thing withoutSlime = thing(words[0], lineNumber);
+			Thing withSlime = thing(words[2], lineNumber);
+			BlockFace[] faces = faces(words, 3, lineNumber);
+
+			try {
+				if (BIDIRECTIONAL.equals(words[1])) {
+					builder.bidirectional(withoutSlime, withSlime, faces);
+				}
+				else if (UNIDIRECTIONAL.equals(words[1])) {
+					builder.unidirectional(withoutSlime, withSlime, faces);
+				}
+				else {
+					throw new ParseException("Line " + lineNumber + ": unknown relation " + words[1], lineNumber);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Line " + lineNumber + ": " + e.getMessage(), lineNumber);
+			}
+			ruleCount++;
+		}
+
+		return builder.build();
+	}
+
+	private static Thing thing(String word, int lineNumber) throws ParseException {
+		Thing thing = Thing.named(word);
+		if (thing != null) {
+			return thing;
+		}
+
+		int colon = word.indexOf(':');
+		if (colon > 0) {
+			Material material = Material.matchMaterial(word.substring(0, colon));
+			if (material != null) {
+				try {
+					int data = Integer.parseInt(word.substring(colon + 1));
+					if (data >= 0 && data < Thing.DATA_VALUES) {
+						return Thing.in(material, (byte) data);
+					}
+				} catch (NumberFormatException e) {
+					// reported below
+				}
+			}
+		}
+
+		throw new ParseException("Line " + lineNumber + ": unknown thing " + word, lineNumber);
+	}
+
+	private static BlockFace[] faces(String[] words, int from, int lineNumber) throws ParseException {
+		if (words.length <= from) {
+			return BlockFaces.ALL;
+		}
+
+		List<BlockFace> faces = new ArrayList<BlockFace>();
+		for (int i = from; i < words.length; i++) {
+			if ("ALL".equalsIgnoreCase(words[i])) {
+				return BlockFaces.ALL;
+			}
+			BlockFace face;
+			try {
+				face = BlockFace.valueOf(words[i].toUpperCase());
+			} catch (IllegalArgumentException e) {
+				face = null;
+			}
+			if (BlockFaces.index(face) < 0) {
+				throw new ParseException("Line " + lineNumber + ": unknown face " + words[i], lineNumber);
+			}
+			faces.add(face);
+		}
+		return faces.toArray(new BlockFace[faces.size()]);
+	}
+}
@@ -0,0 +1,175 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import org.bukkit.block.BlockFace;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * The compiled form of the slime rules: one packed long per Thing id, so
+ * answering any question about a block takes a single array read. Instances
+ * never change after they are built, so they can be shared between threads
+ * without locking.
+ * 
+ * Layout of a rule (0 means "no rule"):
+ * 
+ * - bits 0-19: id + 1 of the Thing you get when adding slime, 0 if you can't
+ * 
+ * - bits 20-39: id + 1 of the Thing you get when removing slime, 0 if there's
+ * no slime on it
+ * 
+ * - bits 40-45: faces that may get slime (see BlockFaces)
+ * 
+ * - bits 46-51: faces that have slime on them
+ * 
+ * Use the static methods to take a rule apart.
+ * 
+ */
+public final class SlimeRuleTable {
+
+	private static final int ID_BITS = 20;
+	private static final long ID_MASK = (1L << ID_BITS) - 1;
+	private static final int WITHOUT_SHIFT = ID_BITS;
+	private static final int CAN_FACES_SHIFT = 2 * ID_BITS;
+	private static final int HAS_FACES_SHIFT = CAN_FACES_SHIFT + 6;
+
+	private final long[] rules;
+	private final int canGetSlimeCount;
+	private final int hasSlimeCount;
+
+	private SlimeRuleTable(long[] rules, int canGetSlimeCount, int hasSlimeCount) {
+		this.rules = rules;
+		this.canGetSlimeCount = canGetSlimeCount;
+		this.hasSlimeCount = hasSlimeCount;
+	}
+
+	/**
+	 * @param thing
+	 * @return the packed rule for that thing, 0 if there is none
+	 */
+	public long rule(Thing thing) {
+		return rule(thing.id);
+	}
+
+	/**
+	 * @param thingId
+	 *            see Thing.id
+	 * @return the packed rule for that thing id, 0 if there is none
+	 */
+	public long rule(int thingId) {
+		if (thingId < 0 || thingId >= rules.length) {
+			return 0;
+		}
+		return rules[thingId];
+	}
+
+	/**
+	 * @return the number of things that can get slime on them
+	 */
+	public int canGetSlimeCount() {
+		return canGetSlimeCount;
+	}
+
+	/**
+	 * @return the number of things that have slime on them
+	 */
+	public int hasSlimeCount() {
+		return hasSlimeCount;
+	}
+
+	public static boolean canGetSlime(long rule) {
+		return (rule & ID_MASK) != 0;
+	}
+
+	public static boolean canGetSlime(long rule, BlockFace face) {
+		return ((rule >>> CAN_FACES_SHIFT) & BlockFaces.bit(face)) != 0;
+	}
+
+	public static boolean hasSlime(long rule) {
+		return ((rule >>> WITHOUT_SHIFT) & ID_MASK) != 0;
+	}
+
+	public static boolean hasSlime(long rule, BlockFace face) {
+		return ((rule >>> HAS_FACES_SHIFT) & BlockFaces.bit(face)) != 0;
+	}
+
+	/**
+	 * @param rule
+	 * @return the Thing after adding slime or null if it can't get slime
+	 */
+	public static Thing withSlime(long rule) {
+		return Thing.byId((int) (rule & ID_MASK) - 1);
+	}
+
+	/**
+	 * @param rule
+	 * @return the Thing after removing slime or null if there is no slime
+	 */
+	public static Thing withoutSlime(long rule) {
+		return Thing.byId((int) ((rule >>> WITHOUT_SHIFT) & ID_MASK) - 1);
+	}
+
+	/**
+	 * Collects slime relations and compiles them into a SlimeRuleTable.
+	 * 
+	 * Not thread safe, but the table it builds is.
+	 * 
+	 */
+	public static class Builder {
+
+		private final long[] rules = new long[Thing.count()];
+
+		/**
+		 * Adding slime to withoutSlime gives withSlime and the other way round.
+		 */
+		public Builder bidirectional(Thing withoutSlime, Thing withSlime, BlockFace... facesWithSlime) {
+			unidirectional(withoutSlime, withSlime, facesWithSlime);
+
+			long rule = rules[registered(withSlime)];
+			if (hasSlime(rule)) {
+				throw new IllegalArgumentException("Duplicate rule for removing slime from " + withSlime);
+			}
+			rules[withSlime.id] = rule
+					| ((long) (withoutSlime.id + 1) << WITHOUT_SHIFT)
+					| ((long) BlockFaces.mask(facesWithSlime) << HAS_FACES_SHIFT);
+			return this;
+		}
+
+		/**
+		 * Special case, so that e.g. a cracked stone can turn into a mossy
+		 * stone, but a mossy stone will always revert to a non-cracked stone
+		 */
+		public Builder unidirectional(Thing withoutSlime, Thing withSlime, BlockFace... facesWithSlime) {
+			long rule = rules[registered(withoutSlime)];
+			registered(withSlime);
+			if (canGetSlime(rule)) {
+				throw new IllegalArgumentException("Duplicate rule for adding slime to " + withoutSlime);
+			}
+			rules[withoutSlime.id] = rule
+					| (withSlime.id + 1)
+					| ((long) BlockFaces.mask(facesWithSlime) << CAN_FACES_SHIFT);
+			return this;
+		}
+
+		public SlimeRuleTable build() {
+			int canGetSlimeCount = 0;
+			int hasSlimeCount = 0;
+			for (long rule : rules) {
+				if (canGetSlime(rule)) {
+					canGetSlimeCount++;
+				}
+				if (hasSlime(rule)) {
+					hasSlimeCount++;
+				}
+			}
+			return new SlimeRuleTable(rules.clone(), canGetSlimeCount, hasSlimeCount);
+		}
+
+		private static int registered(Thing thing) {
+			if (thing.id < 0) {
+				throw new IllegalArgumentException(thing.material + ":" + thing.data + " is not a registered thing");
+			}
+			return thing.id;
+		}
+	}
+}
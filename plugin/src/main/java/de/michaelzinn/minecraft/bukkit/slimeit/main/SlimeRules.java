@@ -0,0 +1,226 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockFaces;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+
+/**
+ * A look up table that defines some things about blocks:
+ * 
+ * - Which blocks have "slime" on them (and on which face). Note that this
+ * plugin counts moss as slime.
+ * 
+ * - Which blocks can get slime to them.
+ * 
+ * - Which blocks turn into which other blocks when you add or remove slime to
+ * them.
+ * 
+ * - Only handles the easy cases. More complex things like breaking an extended
+ * sticky piston are handled in BlockPunchListener (which is slightly ugly, but
+ * works for now)
+ * 
+ * The rules are read from slimerules.txt (see SlimeRuleParser) and compiled
+ * into a SlimeRuleTable, so every query is one block read and one array read.
+ * A new table is swapped in atomically, so a reload never exposes a half built
+ * table. Code that asks several questions about the same
+ * block should get the rule once with rule() and use the static methods of
+ * SlimeRuleTable on it.
+ * 
+ * @author Michael Zinn (@RedNifre)
+ * 
+ */
+
+public class SlimeRules {
+
+	public static final String FILE_NAME = "slimerules.txt";
+
+	private final AtomicReference<SlimeRuleTable> table = new AtomicReference<SlimeRuleTable>(builtIn());
+
+	private Metrics metrics;
+
+	private FaceSlimeStore faces;
+
+	// useful stuff
+	private static final BlockFace[] allFaces = BlockFaces.ALL;
+
+	/**
+	 * Starts with the built in rules.
+	 */
+	public SlimeRules() {
+	}
+
+	/**
+	 * Replaces the current rules. Safe to call from any thread.
+	 * 
+	 * @param newTable
+	 */
+	public void use(SlimeRuleTable newTable) {
+		table.set(newTable);
+	}
+
+	/**
+	 * @param metrics
+	 *            counts the lookups, may be null
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param faces
+	 *            also asked by hasSlimeOnIt for blocks without a rule, may be
+	 *            null
+	 */
+	public void setFaces(FaceSlimeStore faces) {
+		this.faces = faces;
+	}
+
+	public SlimeRuleTable table() {
+		return table.get();
+	}
+
+	/**
+	 * The fallback if there is no valid rules file. Keep this in sync with the
+	 * default slimerules.txt
+	 * 
+	 * @return the built in rules
+	 */
+	public static SlimeRuleTable builtIn() {
+		SlimeRuleTable.Builder builder = new SlimeRuleTable.Builder();
+
+		// Cobble
+		builder.bidirectional(
+				Thing.COBBLE_STONE_BLOCK,
+				Thing.MOSSY_COBBLE_STONE_BLOCK, allFaces);
+		builder.bidirectional(
+				Thing.COBBLE_STONE_WALL,
+				Thing.MOSSY_COBBLE_STONE_WALL, allFaces);
+
+		// Stone bricks
+		builder.bidirectional(
+				Thing.STONE_BRICK_BLOCK,
+				Thing.MOSSY_STONE_BRICK_BLOCK, allFaces);
+		builder.unidirectional(
+				Thing.CRACKED_STONE_BRICK_BLOCK,
+				Thing.MOSSY_STONE_BRICK_BLOCK, allFaces);
+
+		// Piston bases
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_DOWN,
+				Thing.RETRACTED_STICKY_PISTON_BASE_DOWN, BlockFace.DOWN);
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_UP,
+				Thing.RETRACTED_STICKY_PISTON_BASE_UP, BlockFace.UP);
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_NORTH,
+				Thing.RETRACTED_STICKY_PISTON_BASE_NORTH, BlockFace.NORTH);
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_SOUTH,
+				Thing.RETRACTED_STICKY_PISTON_BASE_SOUTH, BlockFace.SOUTH);
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_WEST,
+				Thing.RETRACTED_STICKY_PISTON_BASE_WEST, BlockFace.WEST);
+		builder.bidirectional(
+				Thing.RETRACTED_NONSTICKY_PISTON_BASE_EAST,
+				Thing.RETRACTED_STICKY_PISTON_BASE_EAST, BlockFace.EAST);
+
+		// Piston extensions
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_DOWN,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_DOWN, BlockFace.DOWN);
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_UP,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_UP, BlockFace.UP);
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_NORTH,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_NORTH, BlockFace.NORTH);
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_SOUTH,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_SOUTH, BlockFace.SOUTH);
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_WEST,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_WEST, BlockFace.WEST);
+		builder.bidirectional(
+				Thing.EXTENDED_NONSTICKY_PISTON_EXTENSION_EAST,
+				Thing.EXTENDED_STICKY_PISTON_EXTENSION_EAST, BlockFace.EAST);
+	
+		return builder.build();
+	}
+
+	/**
+	 * @param thing
+	 * @return the packed rule, see SlimeRuleTable
+	 */
+	public long rule(Thing thing) {
+		long rule = table.get().rule(thing);
+		if (metrics != null) {
+			metrics.ruleLookup(thing, rule);
+		}
+		return rule;
+	}
+
+	/**
+	 * @param state
+	 *            see BlockStates
+	 * @return the packed rule, see SlimeRuleTable
+	 */
+	public long rule(int state) {
+		long rule = table.get().rule(state);
+		if (metrics != null) {
+			Thing thing = BlockStates.thing(state);
+			if (thing != null) {
+				metrics.ruleLookup(thing, rule);
+			}
+		}
+		return rule;
+	}
+
+	public long rule(Block block) {
+		return rule(BlockStates.of(block));
+	}
+
+	public boolean canGetSlimeOnIt(Block block) {
+		return SlimeRuleTable.canGetSlime(rule(block));
+	}
+
+	public boolean canGetSlimeOnIt(Block block, BlockFace face) {
+		return SlimeRuleTable.canGetSlime(rule(block), face);
+	}
+
+	public boolean hasSlimeOnIt(Block block) {
+		long rule = rule(block);
+		if (rule == 0 && faces != null) {
+			return faces.faces(block) != 0;
+		}
+		return SlimeRuleTable.hasSlime(rule);
+	}
+
+	public boolean hasSlimeOnIt(Block block, BlockFace face) {
+		long rule = rule(block);
+		if (rule == 0 && faces != null) {
+			return faces.hasSlime(block, face);
+		}
+		return SlimeRuleTable.hasSlime(rule, face);
+	}
+
+	public Thing withoutSlime(Block block) {
+		return SlimeRuleTable.withoutSlime(rule(block));
+	}
+
+	public Thing withoutSlime(Thing materialData) {
+		return SlimeRuleTable.withoutSlime(rule(materialData));
+	}
+
+	public Thing withSlime(Block block) {
+		return SlimeRuleTable.withSlime(rule(block));
+	}
+
+	public Thing withSlime(Thing materialData) {
+		return SlimeRuleTable.withSlime(rule(materialData));
+	}
+}
@@ -0,0 +1,147 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Plays SlimeIt's sounds without flooding everyone nearby with sound packets
+ * when someone uses an autoclicker:
+ * 
+ * - The same sound in the same cell is only played once per tick.
+ * 
+ * - Each player may cause at most maxPerPlayerPerSecond sounds per second,
+ * the rest is silently dropped.
+ * 
+ * play() may be called from any thread, run() (which plays the queued sounds)
+ * must be run on the main thread every tick.
+ * 
+ */
+public class SoundScheduler implements Runnable, Listener {
+
+	private final int cellSize;
+	private final int maxPerPlayerPerSecond;
+
+	private static final Sound[] SOUNDS = Sound.values();
+
+	private final ConcurrentHashMap<UUID, AtomicLong> budgets = new ConcurrentHashMap<UUID, AtomicLong>();
+
+	// world -> (cell + sound) -> where to play it
+	private Map<World, Map<Long, Location>> pending = new HashMap<World, Map<Long, Location>>();
+
+	/**
+	 * @param cellSize
+	 *            identical sounds within a cube of this many blocks are
+	 *            played once per tick
+	 * @param maxPerPlayerPerSecond
+	 */
+	public SoundScheduler(int cellSize, int maxPerPlayerPerSecond) {
+		this.cellSize = Math.max(1, cellSize);
+		this.maxPerPlayerPerSecond = Math.max(1, Math.min(maxPerPlayerPerSecond, 0xFFFF));
+	}
+
+	/**
+	 * Queues one of the variants, picked at random, for the end of the tick.
+	 * 
+	 * @param player
+	 *            who caused the sound, may be null
+	 * @param location
+	 * @param variants
+	 */
+	public void play(Player player, Location location, Sound... variants) {
+		if (player != null && !tryAcquire(player.getUniqueId())) {
+			return;
+		}
+
+		Sound sound = variants.length == 1 ? variants[0] : variants[ThreadLocalRandom.current().nextInt(
+				variants.length)];
+
+		long x = Math.floorDiv(location.getBlockX(), cellSize);
+		long y = Math.floorDiv(location.getBlockY(), cellSize);
+		long z = Math.floorDiv(location.getBlockZ(), cellSize);
+		long key = ((x & 0xFFFFFF) << 40) | ((z & 0xFFFFFF) << 16) | ((y & 0xFF) << 8) | sound.ordinal();
+
+		synchronized (this) {
+			Map<Long, Location> cells = pending.get(location.getWorld());
+			if (cells == null) {
+				cells = new HashMap<Long, Location>();
+				pending.put(location.getWorld(), cells);
+			}
+			if (!cells.containsKey(key)) {
+				cells.put(key, location);
+			}
+		}
+	}
+
+	/**
+	 * Plays everything that was queued since the last run.
+	 */
+	@Override
+	public void run() {
+		Map<World, Map<Long, Location>> sounds;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			sounds = pending;
+			pending = new HashMap<World, Map<Long, Location>>();
+		}
+
+		for (Map.Entry<World, Map<Long, Location>> world : sounds.entrySet()) {
+			for (Map.Entry<Long, Location> sound : world.getValue().entrySet()) {
+				world.getKey().playSound(sound.getValue(), SOUNDS[(int) (sound.getKey() & 0xFF)], 1, 1);
+			}
+		}
+	}
+
+	/**
+	 * Lock free: the budget is one long holding the current second (high
+	 * bits) and how many sounds were played in it (low 16 bits).
+	 * 
+	 * @return true if the player may cause another sound this second
+	 */
+	boolean tryAcquire(UUID player) {
+		AtomicLong budget = budgets.get(player);
+		if (budget == null) {
+			budget = new AtomicLong();
+			AtomicLong other = budgets.putIfAbsent(player, budget);
+			if (other != null) {
+				budget = other;
+			}
+		}
+
+		long second = System.currentTimeMillis() / 1000;
+		while (true) {
+			long current = budget.get();
+			long next;
+			if ((current >>> 16) != second) {
+				next = (second << 16) | 1;
+			}
+			else if ((current & 0xFFFF) >= maxPerPlayerPerSecond) {
+				return false;
+			}
+			else {
+				next = current + 1;
+			}
+			if (budget.compareAndSet(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	@EventHandler
+	public void playerQuit(PlayerQuitEvent event) {
+		budgets.remove(event.getPlayer().getUniqueId());
+	}
+}
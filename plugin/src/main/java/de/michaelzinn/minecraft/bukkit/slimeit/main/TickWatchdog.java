@@ -0,0 +1,127 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import java.util.logging.Logger;
+
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+/**
+ * Adds up the time SlimeIt takes per tick and complains when it's over
+ * budget, naming what took the longest (and which player caused it, where).
+ * 
+ * run() needs to be scheduled every tick, it checks the time recorded since
+ * its last run. Main thread only.
+ * 
+ */
+public class TickWatchdog implements Runnable {
+
+	private final Logger log;
+	private final long budgetNanos;
+	private final long warningIntervalNanos;
+
+	private HandlerTrace trace;
+
+	private long tickNanos;
+
+	// the most expensive thing this tick
+	private long worstNanos;
+	private String worst;
+	private Player worstPlayer;
+	private Block worstBlock;
+
+	private long lastWarning;
+	private int suppressed;
+
+	/**
+	 * @param log
+	 * @param budgetMicros
+	 *            time SlimeIt may take per tick
+	 * @param warningIntervalSeconds
+	 *            at most one warning per this many seconds
+	 */
+	public TickWatchdog(Logger log, int budgetMicros, int warningIntervalSeconds) {
+		this.log = log;
+		this.budgetNanos = budgetMicros * 1000L;
+		this.warningIntervalNanos = warningIntervalSeconds * 1000000000L;
+		this.lastWarning = System.nanoTime() - warningIntervalNanos;
+	}
+
+	/**
+	 * @param trace
+	 *            gets an event for every tick over budget, may be null
+	 */
+	public void setTrace(HandlerTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * @param nanos
+	 * @param what
+	 *            e.g. "playerInteract"
+	 * @param player
+	 *            may be null
+	 * @param block
+	 *            may be null
+	 */
+	public void record(long nanos, String what, Player player, Block block) {
+		tickNanos += nanos;
+		if (nanos > worstNanos) {
+			worstNanos = nanos;
+			worst = what;
+			worstPlayer = player;
+			worstBlock = block;
+		}
+	}
+
+	/**
+	 * @param task
+	 * @param name
+	 *            for the warning
+	 * @return the task, but its time counts towards the budget
+	 */
+	public Runnable timed(final Runnable task, final String name) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				task.run();
+				record(System.nanoTime() - start, name, null, null);
+			}
+		};
+	}
+
+	@Override
+	public void run() {
+		if (tickNanos > budgetNanos) {
+			overBudget();
+		}
+		tickNanos = 0;
+		worstNanos = 0;
+		worst = null;
+		worstPlayer = null;
+		worstBlock = null;
+	}
+
+	private void overBudget() {
+		String culprit = worstPlayer == null ? worst : worst + " by " + worstPlayer.getName();
+		String location = worstBlock == null ? null : worstBlock.getWorld().getName() + " " + worstBlock.getX()
+				+ ", " + worstBlock.getY() + ", " + worstBlock.getZ();
+
+		if (trace != null) {
+			trace.tickBudgetExceeded(tickNanos, budgetNanos, culprit, location);
+		}
+
+		long now = System.nanoTime();
+		if (now - lastWarning < warningIntervalNanos) {
+			suppressed++;
+			return;
+		}
+		lastWarning = now;
+
+		log.warning(String.format("SlimeIt took %.2f ms during one tick (budget %.2f ms), mostly %s (%.2f ms)%s%s",
+				tickNanos / 1e6, budgetNanos / 1e6, culprit, worstNanos / 1e6,
+				location == null ? "" : " at " + location,
+				suppressed == 0 ? "" : ", " + suppressed + " similar warnings suppressed"));
+		suppressed = 0;
+	}
+}
@@ -0,0 +1,400 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.main;
+
+import static de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BukkitPlus.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.BlockStates;
+import de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus.Thing;
+import de.michaelzinn.minecraft.bukkit.slimeit.main.ProtectionProvider.Action;
+
+/**
+ * Remembers the last edits of every player so /slimeit undo can revert them.
+ * 
+ * Every player gets a ring of two longs per edit, allocated once at the
+ * configured depth, so the memory per player is fixed no matter how much they
+ * edit: the packed position (see {@link ChangeJournal#pack(int, int, int)})
+ * and world index | Thing before | Thing after | slime balls, 16 bits each.
+ * Edits of slime on single faces (see FaceSlimeStore) have the face masks
+ * instead of the Things and the top bit of the world index set. The oldest
+ * edits get overwritten. Histories are dropped when the player quits.
+ * 
+ * Undoing reverts a block only if it is still what the edit left behind, so
+ * it never destroys anything that happened since. Slime balls the player paid
+ * are refunded and slime balls they got are taken back, a block whose ball
+ * the player doesn't have anymore stays as it is.
+ * 
+ * Undos are queued and run() reverts a limited number of blocks per tick, so
+ * it has to be scheduled every tick.
+ * 
+ * Main thread only.
+ * 
+ */
+public class UndoHistory implements Runnable, Listener {
+
+	private static final int LONGS_PER_EDIT = 2;
+
+	// set in the world index of face edits
+	private static final int FACE_EDIT = 0x8000;
+
+	private final int depth;
+	private final int blocksPerTick;
+
+	private final Map<UUID, History> histories = new HashMap<UUID, History>();
+	private final ArrayDeque<Job> jobs = new ArrayDeque<Job>();
+
+	// the worlds edits happened in, looked up by UID when undoing
+	private final List<UUID> worlds = new ArrayList<UUID>();
+	private final Map<UUID, Integer> worldIndexes = new HashMap<UUID, Integer>();
+
+	private SlimeIndex index;
+	private ChangeJournal journal;
+	private ProtectionCache protection;
+	private FaceSlimeStore faces;
+
+	/**
+	 * @param depth
+	 *            edits remembered per player
+	 * @param blocksPerTick
+	 *            blocks reverted per tick, for all players together
+	 */
+	public UndoHistory(int depth, int blocksPerTick) {
+		this.depth = Math.max(1, depth);
+		this.blocksPerTick = Math.max(1, blocksPerTick);
+	}
+
+	/**
+	 * @param index
+	 *            gets told about reverted blocks, may be null
+	 */
+	public void setIndex(SlimeIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * @param journal
+	 *            records reverted blocks, may be null
+	 */
+	public void setJournal(ChangeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @param protection
+	 *            asked before a block gets reverted, null to allow everything
+	 */
+	public void setProtection(ProtectionCache protection) {
+		this.protection = protection;
+	}
+
+	/**
+	 * @param faces
+	 *            where face edits get reverted, null to skip them
+	 */
+	public void setFaces(FaceSlimeStore faces) {
+		this.faces = faces;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Remembers an edit.
+	 * 
+	 * @param player
+	 * @param block
+	 *            after the edit
+	 * @param before
+	 *            what the block was before the edit
+	 * @param slimeBalls
+	 *            slime balls the player got from the edit, negative if they
+	 *            paid for it
+	 */
+	public void record(Player player, Block block, Thing before, int slimeBalls) {
+		record(player, block, before, Thing.in(block), slimeBalls);
+	}
+
+	/**
+	 * Like {@link #record(Player, Block, Thing, int)}, for a caller that knows
+	 * what the block is now.
+	 * 
+	 * @param after
+	 *            what the block is after the edit
+	 */
+	public void record(Player player, Block block, Thing before, Thing after, int slimeBalls) {
+		history(player).push(ChangeJournal.pack(block.getX(), block.getY(), block.getZ()),
+				encode(worldIndex(block.getWorld()), before.id, after.id, slimeBalls));
+	}
+
+	/**
+	 * Remembers an edit of slime on single faces.
+	 * 
+	 * @param before
+	 *            the face mask before the edit, see BlockFaces
+	 * @param after
+	 *            the face mask after the edit
+	 * @param slimeBalls
+	 *            like {@link #record(Player, Block, Thing, int)}
+	 */
+	public void recordFaces(Player player, Block block, int before, int after, int slimeBalls) {
+		history(player).push(ChangeJournal.pack(block.getX(), block.getY(), block.getZ()),
+				encode(FACE_EDIT | worldIndex(block.getWorld()), before, after, slimeBalls));
+	}
+
+	private History history(Player player) {
+		History history = histories.get(player.getUniqueId());
+		if (history == null) {
+			history = new History(depth);
+			histories.put(player.getUniqueId(), history);
+		}
+		return history;
+	}
+
+	/**
+	 * @return how many edits of the player can be undone
+	 */
+	public int size(Player player) {
+		History history = histories.get(player.getUniqueId());
+		return history == null ? 0 : history.size;
+	}
+
+	/**
+	 * Queues the player's last edits for reverting, newest first. The player
+	 * gets told the result when they are done.
+	 * 
+	 * @param player
+	 * @param edits
+	 *            how many edits to undo
+	 * @return how many edits got queued, fewer if the history is shorter
+	 */
+	public int undo(Player player, int edits) {
+		History history = histories.get(player.getUniqueId());
+		if (history == null || history.size == 0 || edits <= 0) {
+			return 0;
+		}
+		Job job = new Job(player, history.pop(Math.min(edits, history.size)));
+		jobs.addLast(job);
+		return job.edits.length / LONGS_PER_EDIT;
+	}
+
+	/**
+	 * @return edits waiting to be reverted
+	 */
+	public int pending() {
+		int pending = 0;
+		for (Job job : jobs) {
+			pending += (job.edits.length - job.next) / LONGS_PER_EDIT;
+		}
+		return pending;
+	}
+
+	/**
+	 * Reverts up to blocksPerTick queued edits.
+	 */
+	@Override
+	public void run() {
+		int budget = blocksPerTick;
+		while (budget > 0 && !jobs.isEmpty()) {
+			Job job = jobs.peekFirst();
+			if (!job.player.isOnline()) {
+				jobs.removeFirst();
+				continue;
+			}
+			for (; budget > 0 && job.next < job.edits.length; job.next += LONGS_PER_EDIT, budget--) {
+				if (revert(job.player, job.edits[job.next], job.edits[job.next + 1])) {
+					job.reverted++;
+				}
+				else {
+					job.skipped++;
+				}
+			}
+			if (job.next == job.edits.length) {
+				jobs.removeFirst();
+				job.report();
+			}
+		}
+	}
+
+	/**
+	 * @return false if the block couldn't be reverted
+	 */
+	private boolean revert(Player player, long position, long edit) {
+		World world = Bukkit.getWorld(worlds.get(world(edit)));
+		if (world == null) {
+			return false;
+		}
+		Block block = world.getBlockAt(ChangeJournal.unpackX(position), ChangeJournal.unpackY(position),
+				ChangeJournal.unpackZ(position));
+
+		// changed since, by someone or something else
+		boolean onFaces = isFaceEdit(edit);
+		if (onFaces && faces == null) {
+			return false;
+		}
+		int state = onFaces ? faces.faces(block) : BlockStates.of(block);
+		if (state != after(edit)) {
+			return false;
+		}
+
+		if (protection != null && !protection.mayEdit(player, block, Action.BUILD)) {
+			return false;
+		}
+
+		int slimeBalls = slimeBalls(edit);
+		ItemStack balls = new ItemStack(Material.SLIME_BALL, Math.abs(slimeBalls));
+		if (slimeBalls > 0 && !player.getInventory().containsAtLeast(balls, slimeBalls)) {
+			return false;
+		}
+
+		if (onFaces) {
+			faces.set(block, before(edit));
+		}
+		else if (!replace(block, state, Thing.byId(before(edit)))) {
+			return false;
+		}
+
+		if (slimeBalls > 0) {
+			player.getInventory().removeItem(balls);
+		}
+		else if (slimeBalls < 0) {
+			for (ItemStack leftover : player.getInventory().addItem(balls).values()) {
+				player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+			}
+		}
+
+		if (onFaces) {
+			if (journal != null) {
+				journal.recordFaces(player, block, state, before(edit));
+			}
+			return true;
+		}
+		if (index != null) {
+			index.update(block);
+		}
+		if (journal != null) {
+			journal.record(player, block, Thing.byId(state), Thing.byId(before(edit)));
+		}
+		return true;
+	}
+
+	private int worldIndex(World world) {
+		Integer index = worldIndexes.get(world.getUID());
+		if (index == null) {
+			index = worlds.size();
+			worlds.add(world.getUID());
+			worldIndexes.put(world.getUID(), index);
+		}
+		return index;
+	}
+
+	@EventHandler
+	public void playerQuit(PlayerQuitEvent event) {
+		UUID id = event.getPlayer().getUniqueId();
+		histories.remove(id);
+		for (Iterator<Job> it = jobs.iterator(); it.hasNext();) {
+			if (it.next().player.getUniqueId().equals(id)) {
+				it.remove();
+			}
+		}
+	}
+
+	// == edit encoding ==
+
+	static long encode(int world, int before, int after, int slimeBalls) {
+		return (long) (world & 0xFFFF) << 48 | (long) (before & 0xFFFF) << 32 | (long) (after & 0xFFFF) << 16
+				| slimeBalls & 0xFFFF;
+	}
+
+	static int world(long edit) {
+		return (int) (edit >>> 48) & ~FACE_EDIT;
+	}
+
+	static boolean isFaceEdit(long edit) {
+		return (edit >>> 48 & FACE_EDIT) != 0;
+	}
+
+	static int before(long edit) {
+		return (int) (edit >>> 32) & 0xFFFF;
+	}
+
+	static int after(long edit) {
+		return (int) (edit >>> 16) & 0xFFFF;
+	}
+
+	static int slimeBalls(long edit) {
+		return (short) edit;
+	}
+
+	/**
+	 * Ring of one player's edits, the newest one at next - 1.
+	 */
+	private static class History {
+		final long[] edits;
+		int next;
+		int size;
+
+		History(int depth) {
+			edits = new long[depth * LONGS_PER_EDIT];
+		}
+
+		void push(long position, long edit) {
+			edits[next] = position;
+			edits[next + 1] = edit;
+			next = (next + LONGS_PER_EDIT) % edits.length;
+			size = Math.min(size + 1, edits.length / LONGS_PER_EDIT);
+		}
+
+		/**
+		 * @return the newest n edits, newest first
+		 */
+		long[] pop(int n) {
+			long[] popped = new long[n * LONGS_PER_EDIT];
+			for (int i = 0; i < popped.length; i += LONGS_PER_EDIT) {
+				next = (next - LONGS_PER_EDIT + edits.length) % edits.length;
+				popped[i] = edits[next];
+				popped[i + 1] = edits[next + 1];
+			}
+			size -= n;
+			return popped;
+		}
+	}
+
+	private static class Job {
+		final Player player;
+		final long[] edits;
+		int next;
+		int reverted;
+		int skipped;
+
+		Job(Player player, long[] edits) {
+			this.player = player;
+			this.edits = edits;
+		}
+
+		void report() {
+			String message = "Undid " + reverted + (reverted == 1 ? " change" : " changes");
+			if (skipped > 0) {
+				message += ", " + skipped + " skipped because the block changed since, is protected"
+						+ " or you don't have the slime ball anymore";
+			}
+			player.sendMessage(message);
+		}
+	}
+}
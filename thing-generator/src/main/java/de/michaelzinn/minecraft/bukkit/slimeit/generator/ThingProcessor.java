@@ -0,0 +1,319 @@
+package de.michaelzinn.minecraft.bukkit.slimeit.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Turns things.txt into ThingDefinitions.java while bukkitplus gets compiled,
+ * so Thing doesn't need reflection to find its definitions and a typo in a
+ * tag or material fails the build.
+ * 
+ * Every line of things.txt is "NAME MATERIAL DATA". The name is the list of
+ * tags separated by _, checked against Thing.Tag, the material is checked
+ * against org.bukkit.Material. The tags get turned into the same masks and
+ * faces as before:
+ * 
+ * - DOWN, UP, NORTH, SOUTH, WEST and EAST are orientations, the last one is
+ * the front, its opposite the back. The face bits are the ones of BlockFaces.
+ * 
+ * - BLOCK also adds all orientations (DOWN, UP, NORTH, SOUTH, EAST, WEST).
+ * 
+ * Runs when the things.file option is set, see bukkitplus/pom.xml.
+ * 
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ThingProcessor.FILE_OPTION)
+public class ThingProcessor extends AbstractProcessor {
+
+	static final String FILE_OPTION = "things.file";
+
+	private static final String PACKAGE = "de.michaelzinn.minecraft.bukkit.slimeit.bukkitplus";
+	private static final String TAG_TYPE = PACKAGE + ".Thing.Tag";
+	private static final String MATERIAL_TYPE = "org.bukkit.Material";
+	private static final String CLASS_NAME = "ThingDefinitions";
+
+	// in BlockFaces bit order
+	private static final List<String> DIRECTIONS = Arrays.asList("DOWN", "UP", "NORTH", "SOUTH", "WEST", "EAST");
+	private static final int[] OPPOSITE = { 1, 0, 3, 2, 5, 4 };
+	// the order BLOCK adds them in
+	private static final String[] BLOCK_DIRECTIONS = { "DOWN", "UP", "NORTH", "SOUTH", "EAST", "WEST" };
+
+	private boolean done;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		String fileName = processingEnv.getOptions().get(FILE_OPTION);
+		if (done || fileName == null) {
+			return false;
+		}
+		done = true;
+
+		Map<String, Integer> tags = enumConstants(TAG_TYPE);
+		Map<String, Integer> materials = enumConstants(MATERIAL_TYPE);
+		if (tags == null || materials == null) {
+			return false;
+		}
+
+		File file = new File(fileName);
+		List<Definition> definitions;
+		try {
+			definitions = read(file, tags, materials);
+		} catch (IOException e) {
+			error("Couldn't read " + file + ": " + e.getMessage());
+			return false;
+		}
+		if (definitions == null) {
+			// errors are reported already
+			return false;
+		}
+
+		try {
+			write(definitions);
+		} catch (IOException e) {
+			error("Couldn't write " + CLASS_NAME + ": " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * @return constant name -> ordinal or null if the type is missing
+	 */
+	private Map<String, Integer> enumConstants(String typeName) {
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(typeName);
+		if (type == null) {
+			error("Can't find " + typeName);
+			return null;
+		}
+		Map<String, Integer> constants = new HashMap<String, Integer>();
+		for (Element element : type.getEnclosedElements()) {
+			if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+				constants.put(element.getSimpleName().toString(), constants.size());
+			}
+		}
+		return constants;
+	}
+
+	/**
+	 * @return the definitions or null if there were errors
+	 */
+	private List<Definition> read(File file, Map<String, Integer> tags, Map<String, Integer> materials)
+			throws IOException {
+		List<Definition> definitions = new ArrayList<Definition>();
+		Set<String> names = new HashSet<String>();
+		Set<String> keys = new HashSet<String>();
+		boolean ok = true;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			int lineNumber = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				String where = file.getName() + ":" + lineNumber + ": ";
+				String[] words = line.split("\\s+");
+				if (words.length != 3) {
+					error(where + "expected NAME MATERIAL DATA");
+					ok = false;
+					continue;
+				}
+
+				Definition definition = new Definition(words[0], words[1]);
+				try {
+					definition.data = Integer.parseInt(words[2]);
+				} catch (NumberFormatException e) {
+					definition.data = -1;
+				}
+				if (definition.data < 0 || definition.data > 15) {
+					error(where + "data has to be 0-15, not " + words[2]);
+					ok = false;
+				}
+				if (!materials.containsKey(definition.material)) {
+					error(where + "unknown material " + definition.material);
+					ok = false;
+				}
+				if (!names.add(definition.name)) {
+					error(where + "duplicate name " + definition.name);
+					ok = false;
+				}
+				if (!keys.add(definition.material + ":" + definition.data)) {
+					error(where + "duplicate definition of " + definition.material + ":" + definition.data);
+					ok = false;
+				}
+				for (String tag : definition.name.split("_", -1)) {
+					if (tags.containsKey(tag)) {
+						definition.tag(tag, tags);
+					}
+					else {
+						error(where + "unknown tag \"" + tag + "\" in " + definition.name);
+						ok = false;
+					}
+				}
+				definitions.add(definition);
+			}
+		} finally {
+			reader.close();
+		}
+		return ok ? definitions : null;
+	}
+
+	private void write(List<Definition> definitions) throws IOException {
+		PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(PACKAGE + "." + CLASS_NAME)
+				.openWriter());
+		try {
+			out.println("package " + PACKAGE + ";");
+			out.println();
+			out.println("import org.bukkit.Material;");
+			out.println("import org.bukkit.block.BlockFace;");
+			out.println();
+			out.println("/**");
+			out.println(" * Generated from things.txt by the thing-generator module, don't edit.");
+			out.println(" */");
+			out.println("final class " + CLASS_NAME + " {");
+			out.println();
+			out.println("\tstatic final int COUNT = " + definitions.size() + ";");
+			out.println();
+			for (int i = 0; i < definitions.size(); i++) {
+				out.println("\tstatic final int " + definitions.get(i).name + " = " + i + ";");
+			}
+			out.println();
+
+			out.println("\tstatic final String[] NAMES = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t\"" + definition.name + "\",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final Material[] MATERIALS = {");
+			for (Definition definition : definitions) {
+				out.println("\t\tMaterial." + definition.material + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final byte[] DATA = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t" + definition.data + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final long[] TAG_MASKS = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t0x" + Long.toHexString(definition.tagMask) + "L, // " + definition.name);
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\t// see BlockFaces");
+			out.println("\tstatic final int[] FRONT_FACES = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t0x" + Integer.toHexString(definition.frontFaces) + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final int[] BACK_FACES = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t0x" + Integer.toHexString(definition.backFaces) + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final BlockFace[] FRONT = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t" + face(definition.front) + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tstatic final BlockFace[] BACK = {");
+			for (Definition definition : definitions) {
+				out.println("\t\t" + face(definition.back) + ",");
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\tprivate " + CLASS_NAME + "() {");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String face(int direction) {
+		return direction < 0 ? "null" : "BlockFace." + DIRECTIONS.get(direction);
+	}
+
+	private void error(String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message);
+	}
+
+	private static class Definition {
+		final String name;
+		final String material;
+		int data;
+
+		long tagMask;
+		int frontFaces;
+		int backFaces;
+		int front = -1;
+		int back = -1;
+
+		Definition(String name, String material) {
+			this.name = name;
+			this.material = material;
+		}
+
+		void tag(String tag, Map<String, Integer> tags) {
+			tagMask |= 1L << tags.get(tag);
+			int direction = DIRECTIONS.indexOf(tag);
+			if (direction >= 0) {
+				front = direction;
+				frontFaces |= 1 << front;
+				back = OPPOSITE[direction];
+				backFaces |= 1 << back;
+			}
+			if (tag.equals("BLOCK")) {
+				for (String blockDirection : BLOCK_DIRECTIONS) {
+					tag(blockDirection, tags);
+				}
+			}
+		}
+	}
+}